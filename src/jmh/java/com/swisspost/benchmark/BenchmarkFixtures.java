@@ -0,0 +1,69 @@
+package com.swisspost.benchmark;
+
+import com.swisspost.config.SchedulerProperties;
+import com.swisspost.model.Asset;
+import com.swisspost.model.AssetStatus;
+import com.swisspost.repository.TrackedSymbolRepository;
+import com.swisspost.service.PriceFetcher;
+import com.swisspost.service.PriceSourceClient;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Shared setup for the benchmarks: a {@link PriceFetcher} fed from an in-memory CoinCap payload, so
+ * no benchmark depends on the network.
+ */
+final class BenchmarkFixtures {
+
+    private BenchmarkFixtures() {
+    }
+
+    /**
+     * @return The symbols {@code SYM0 .. SYM<symbolCount - 1>} of the synthetic payload.
+     */
+    static List<String> symbols(int symbolCount) {
+        List<String> symbols = new ArrayList<>(symbolCount);
+        for (int i = 0; i < symbolCount; i++) {
+            symbols.add("SYM" + i);
+        }
+        return symbols;
+    }
+
+    /**
+     * Create a price fetcher tracking {@code symbolCount} symbols and run one refresh tick, so every
+     * symbol has a price and a snapshot is published.
+     */
+    static PriceFetcher pricedFetcher(int symbolCount) {
+        byte[] payload = CoinCapParsingBenchmark.syntheticAssetsPayload(symbolCount).getBytes(StandardCharsets.UTF_8);
+        PriceSourceClient priceSource = path -> CompletableFuture.completedFuture(new ByteArrayInputStream(payload));
+
+        TrackedSymbolRepository trackedSymbolRepository = mock(TrackedSymbolRepository.class);
+        when(trackedSymbolRepository.findHeldSymbols()).thenReturn(symbols(symbolCount));
+
+        PriceFetcher priceFetcher = new PriceFetcher(trackedSymbolRepository, new SchedulerProperties(), priceSource,
+                new SimpleMeterRegistry());
+        priceFetcher.updatePrices();
+        return priceFetcher;
+    }
+
+    /**
+     * Create {@code assetCount} distinct purchases spread evenly over {@code symbolCount} symbols.
+     */
+    static Set<Asset> assets(int assetCount, int symbolCount) {
+        Set<Asset> assets = new HashSet<>(assetCount * 2);
+        for (int i = 0; i < assetCount; i++) {
+            assets.add(new Asset("SYM" + (i % symbolCount), 1.0 + i, 0.5 + (i % 97) * 0.25, AssetStatus.BUY));
+        }
+        return assets;
+    }
+}
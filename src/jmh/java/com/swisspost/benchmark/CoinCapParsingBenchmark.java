@@ -0,0 +1,98 @@
+package com.swisspost.benchmark;
+
+import com.swisspost.service.CoinCapResponseParser;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the streaming {@link CoinCapResponseParser} with the previous org.json DOM parsing of a
+ * {@code /v2/assets} response. Run with {@code -prof gc} to compare allocation rates.
+ * <p>
+ * Pass {@code -p payloadFile=/path/to/assets.json} to benchmark a captured response, otherwise a
+ * synthetic payload with the same shape is generated.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CoinCapParsingBenchmark {
+
+    @Param({"100", "2000"})
+    private int assetCount;
+
+    @Param({""})
+    private String payloadFile;
+
+    private byte[] payload;
+
+    @Setup
+    public void setUp() throws IOException {
+        payload = payloadFile.isEmpty()
+                ? syntheticAssetsPayload(assetCount).getBytes(StandardCharsets.UTF_8)
+                : Files.readAllBytes(Path.of(payloadFile));
+    }
+
+    @Benchmark
+    public Map<String, String> symbolToIdsWithOrgJson() {
+        JSONObject jsonResponse = new JSONObject(new String(payload, StandardCharsets.UTF_8));
+        Map<String, String> symbolToIds = new HashMap<>();
+        jsonResponse.getJSONArray("data").forEach(item -> {
+            JSONObject asset = (JSONObject) item;
+            symbolToIds.put(asset.getString("symbol").toUpperCase(), asset.getString("id"));
+        });
+        return symbolToIds;
+    }
+
+    @Benchmark
+    public Map<String, String> symbolToIdsStreaming() {
+        return CoinCapResponseParser.parseSymbolToIds(new ByteArrayInputStream(payload));
+    }
+
+    @Benchmark
+    public Map<String, Double> pricesWithOrgJson() {
+        JSONArray data = new JSONObject(new String(payload, StandardCharsets.UTF_8)).getJSONArray("data");
+        Map<String, Double> prices = new HashMap<>();
+        for (int i = 0; i < data.length(); i++) {
+            JSONObject asset = data.getJSONObject(i);
+            if (!asset.isNull("priceUsd")) {
+                prices.put(asset.getString("id"), asset.getDouble("priceUsd"));
+            }
+        }
+        return prices;
+    }
+
+    @Benchmark
+    public Map<String, Double> pricesStreaming() {
+        return CoinCapResponseParser.parsePrices(new ByteArrayInputStream(payload));
+    }
+
+    static String syntheticAssetsPayload(int assetCount) {
+        StringBuilder json = new StringBuilder("{\"data\":[");
+        for (int i = 0; i < assetCount; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append(String.format(Locale.ROOT,
+                    "{\"id\":\"asset-%d\",\"rank\":\"%d\",\"symbol\":\"SYM%d\",\"name\":\"Asset %d\"," +
+                            "\"supply\":\"%.8f\",\"maxSupply\":null,\"marketCapUsd\":\"%.8f\"," +
+                            "\"volumeUsd24Hr\":\"%.8f\",\"priceUsd\":\"%.8f\",\"changePercent24Hr\":\"%.8f\"," +
+                            "\"vwap24Hr\":\"%.8f\",\"explorer\":\"https://explorer.example.com/asset-%d\"}",
+                    i, i + 1, i, i, 1_000_000.0 + i, 5_000_000.0 * (i + 1), 250_000.0 + i,
+                    1.0 + i * 0.37, (i % 20) - 10.0, 1.0 + i * 0.36, i));
+        }
+        return json.append("],\"timestamp\":1700000000000}").toString();
+    }
+}
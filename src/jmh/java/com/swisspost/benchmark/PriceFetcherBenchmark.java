@@ -0,0 +1,83 @@
+package com.swisspost.benchmark;
+
+import com.swisspost.service.PriceFetcher;
+import com.swisspost.service.PriceSnapshot;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures price lookups through {@link PriceFetcher#fetchLatestPrice(String)}, alone and while a
+ * writer keeps publishing new prices into the same table, as a refresh tick does.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PriceFetcherBenchmark {
+
+    @Param({"100", "2000"})
+    private int symbolCount;
+
+    private PriceFetcher priceFetcher;
+
+    private String[] symbols;
+
+    private int[] symbolIds;
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        private int next;
+
+        int advance(int length) {
+            next = next + 1 == length ? 0 : next + 1;
+            return next;
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        priceFetcher = BenchmarkFixtures.pricedFetcher(symbolCount);
+
+        List<String> tracked = BenchmarkFixtures.symbols(symbolCount);
+        symbols = tracked.toArray(new String[0]);
+        symbolIds = new int[symbols.length];
+        for (int i = 0; i < symbols.length; i++) {
+            symbolIds[i] = priceFetcher.getSymbolRegistry().register(symbols[i]);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        priceFetcher.shutdown();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public double fetchLatestPrice(Cursor cursor) {
+        return priceFetcher.fetchLatestPrice(symbols[cursor.advance(symbols.length)]);
+    }
+
+    @Benchmark
+    @Group("contended")
+    @GroupThreads(3)
+    public double contendedFetchLatestPrice(Cursor cursor) {
+        return priceFetcher.fetchLatestPrice(symbols[cursor.advance(symbols.length)]);
+    }
+
+    @Benchmark
+    @Group("contended")
+    @GroupThreads(1)
+    public void contendedPublishPrice(Cursor cursor) {
+        int index = cursor.advance(symbolIds.length);
+        priceFetcher.getPriceTable().update(symbolIds[index], 1.0 + index);
+    }
+
+    @Benchmark
+    public PriceSnapshot snapshot() {
+        return priceFetcher.getPriceTable().snapshot(priceFetcher.getSymbolRegistry());
+    }
+}
@@ -0,0 +1,127 @@
+package com.swisspost.benchmark;
+
+import com.swisspost.config.ValuationProperties;
+import com.swisspost.dto.WalletAnalytics;
+import com.swisspost.model.Wallet;
+import com.swisspost.repository.WalletRepository;
+import com.swisspost.service.PriceFetcher;
+import com.swisspost.service.PriceSnapshot;
+import com.swisspost.service.WalletAggregateService;
+import com.swisspost.service.WalletValuationCache;
+import com.swisspost.service.WalletValueCalculator;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.withSettings;
+
+/**
+ * Measures the {@link WalletValueCalculator} entry points over wallets of 10 to 2000 positions. A
+ * wallet holds one position per symbol, so the largest one is about the size of the CoinCap catalog.
+ * <p>
+ * The {@code warm} benchmarks value a wallet whose aggregates are already maintained, the
+ * {@code cold} ones rebuild them from every position first, as after a restart or a missed trade. The
+ * {@code stream} benchmarks sum the positions directly with a sequential and a parallel stream, to
+ * compare both execution modes on the same data.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class WalletValuationBenchmark {
+
+    @Param({"10", "100", "2000"})
+    private int positionCount;
+
+    private PriceFetcher priceFetcher;
+
+    private PriceSnapshot prices;
+
+    private Wallet wallet;
+
+    private WalletValuationCache valuationCache;
+
+    private WalletValueCalculator calculator;
+
+    @Setup
+    public void setUp() {
+        priceFetcher = BenchmarkFixtures.pricedFetcher(positionCount);
+        prices = priceFetcher.getLatestSnapshot();
+
+        wallet = new Wallet("benchmark");
+        wallet.setId(1L);
+        wallet.setCryptoAssets(BenchmarkFixtures.assets(positionCount, positionCount));
+
+        ValuationProperties valuationProperties = new ValuationProperties();
+        valuationCache = new WalletValuationCache(valuationProperties, new SimpleMeterRegistry());
+
+        calculator = newCalculator();
+        calculator.analyze(wallet, prices);
+    }
+
+    @TearDown
+    public void tearDown() {
+        priceFetcher.shutdown();
+    }
+
+    private WalletValueCalculator newCalculator() {
+        // Stub only, so the version read of every cold rebuild does not pile up recorded invocations
+        WalletRepository walletRepository = mock(WalletRepository.class, withSettings().stubOnly());
+        return new WalletValueCalculator(priceFetcher,
+                new WalletAggregateService(new ValuationProperties(), walletRepository), valuationCache);
+    }
+
+    @Benchmark
+    public double totalWalletValueOfAssetsWarm() {
+        return calculator.totalWalletValueOfAssets(wallet, prices);
+    }
+
+    @Benchmark
+    public double totalWalletValueOfAssetsCold() {
+        return newCalculator().totalWalletValueOfAssets(wallet, prices);
+    }
+
+    @Benchmark
+    public double bestPerformingAssetWithGrowthRate() {
+        return calculator.bestPerformingAssetValue(wallet, prices);
+    }
+
+    @Benchmark
+    public double worstPerformingAssetWithGrowthRate() {
+        return calculator.worstPerformingAssetValue(wallet, prices);
+    }
+
+    @Benchmark
+    public WalletAnalytics analyzeWarm() {
+        return calculator.analyze(wallet, prices);
+    }
+
+    // Polling without trades or ticks in between, served from the valuation cache
+    @Benchmark
+    public WalletAnalytics analyzeCached() {
+        return calculator.analyze(wallet);
+    }
+
+    @Benchmark
+    public WalletAnalytics analyzeCold() {
+        return newCalculator().analyze(wallet, prices);
+    }
+
+    @Benchmark
+    public double totalValueSequentialStream() {
+        return wallet.getCryptoAssets().stream()
+                .mapToDouble(asset -> asset.getQuantity() * prices.priceOf(asset.getSymbol()))
+                .sum();
+    }
+
+    @Benchmark
+    public double totalValueParallelStream() {
+        return wallet.getCryptoAssets().parallelStream()
+                .mapToDouble(asset -> asset.getQuantity() * prices.priceOf(asset.getSymbol()))
+                .sum();
+    }
+}
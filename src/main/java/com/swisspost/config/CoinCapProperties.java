@@ -0,0 +1,126 @@
+package com.swisspost.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@ConfigurationProperties(prefix = "coincap")
+public class CoinCapProperties {
+
+    private String baseUrl = "https://api.coincap.io/v2";
+
+    // Negotiate HTTP/2 so concurrent refresh requests share a single connection
+    private boolean http2 = true;
+
+    // Timeouts in milliseconds
+    private long connectTimeout = 2000;
+
+    private long readTimeout = 5000;
+
+    // Consecutive failures of an endpoint that open its circuit
+    private int circuitFailureThreshold = 5;
+
+    // Time in milliseconds an open circuit refuses requests before letting a trial request through
+    private long circuitOpenDuration = 30_000;
+
+    // Retries of a failed request, on top of the first attempt
+    private int maxRetries = 2;
+
+    // Base delay in milliseconds before a retry, doubled per attempt and jittered
+    private long retryBackoff = 200;
+
+    // Retries earned per request sent, so retries stay a bounded share of the traffic
+    private double retryBudgetRatio = 0.1;
+
+    // Retries that can be saved up for a burst of failures
+    private int retryBudgetBurst = 10;
+
+    // Time in milliseconds all requests are paused after a 429 response without Retry-After
+    private long defaultRetryAfter = 10_000;
+
+    public String getBaseUrl() {
+        return baseUrl;
+    }
+
+    public void setBaseUrl(String baseUrl) {
+        this.baseUrl = baseUrl;
+    }
+
+    public boolean isHttp2() {
+        return http2;
+    }
+
+    public void setHttp2(boolean http2) {
+        this.http2 = http2;
+    }
+
+    public long getConnectTimeout() {
+        return connectTimeout;
+    }
+
+    public void setConnectTimeout(long connectTimeout) {
+        this.connectTimeout = connectTimeout;
+    }
+
+    public long getReadTimeout() {
+        return readTimeout;
+    }
+
+    public void setReadTimeout(long readTimeout) {
+        this.readTimeout = readTimeout;
+    }
+
+    public int getCircuitFailureThreshold() {
+        return circuitFailureThreshold;
+    }
+
+    public void setCircuitFailureThreshold(int circuitFailureThreshold) {
+        this.circuitFailureThreshold = circuitFailureThreshold;
+    }
+
+    public long getCircuitOpenDuration() {
+        return circuitOpenDuration;
+    }
+
+    public void setCircuitOpenDuration(long circuitOpenDuration) {
+        this.circuitOpenDuration = circuitOpenDuration;
+    }
+
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+
+    public void setMaxRetries(int maxRetries) {
+        this.maxRetries = maxRetries;
+    }
+
+    public long getRetryBackoff() {
+        return retryBackoff;
+    }
+
+    public void setRetryBackoff(long retryBackoff) {
+        this.retryBackoff = retryBackoff;
+    }
+
+    public double getRetryBudgetRatio() {
+        return retryBudgetRatio;
+    }
+
+    public void setRetryBudgetRatio(double retryBudgetRatio) {
+        this.retryBudgetRatio = retryBudgetRatio;
+    }
+
+    public int getRetryBudgetBurst() {
+        return retryBudgetBurst;
+    }
+
+    public void setRetryBudgetBurst(int retryBudgetBurst) {
+        this.retryBudgetBurst = retryBudgetBurst;
+    }
+
+    public long getDefaultRetryAfter() {
+        return defaultRetryAfter;
+    }
+
+    public void setDefaultRetryAfter(long defaultRetryAfter) {
+        this.defaultRetryAfter = defaultRetryAfter;
+    }
+}
@@ -0,0 +1,50 @@
+package com.swisspost.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@ConfigurationProperties(prefix = "history")
+public class PriceHistoryProperties {
+
+    // Roll every price refresh into the local price history, moves below scheduler.priceChangeThreshold included
+    private boolean enabled = true;
+
+    // Days minute candles are kept, hour candles are kept longer and day candles forever
+    private int minuteRetentionDays = 7;
+
+    private int hourRetentionDays = 180;
+
+    // Interval in milliseconds between two purges of expired candles
+    private long purgeInterval = 3_600_000;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public int getMinuteRetentionDays() {
+        return minuteRetentionDays;
+    }
+
+    public void setMinuteRetentionDays(int minuteRetentionDays) {
+        this.minuteRetentionDays = minuteRetentionDays;
+    }
+
+    public int getHourRetentionDays() {
+        return hourRetentionDays;
+    }
+
+    public void setHourRetentionDays(int hourRetentionDays) {
+        this.hourRetentionDays = hourRetentionDays;
+    }
+
+    public long getPurgeInterval() {
+        return purgeInterval;
+    }
+
+    public void setPurgeInterval(long purgeInterval) {
+        this.purgeInterval = purgeInterval;
+    }
+}
@@ -0,0 +1,138 @@
+package com.swisspost.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@ConfigurationProperties(prefix = "scheduler")
+public class SchedulerProperties {
+
+    private long fixedDelay = 10000;
+
+    // Refresh all tracked ids through chunked "?ids=a,b,c" requests instead of one request per asset
+    private boolean batchEnabled = true;
+
+    // Maximum number of asset ids sent in a single batched request
+    private int batchSize = 100;
+
+    // Size of the long-lived pool that runs the refresh requests of a tick
+    private int refreshThreads = 3;
+
+    // Refresh tasks allowed to wait for a thread before new ones are dropped
+    private int refreshQueueCapacity = 100;
+
+    // Maximum time in milliseconds a tick waits for a single refresh task
+    private long taskTimeout = 5000;
+
+    // Interval in milliseconds between two full reloads of the CoinCap asset catalog
+    private long catalogRefreshInterval = 3_600_000;
+
+    // Interval in milliseconds between two checks that stop refreshing the symbols no wallet holds any more
+    private long trackedSymbolsRefreshInterval = 300_000;
+
+    // Assets requested per catalog page, CoinCap serves at most 2000
+    private int catalogPageSize = 2000;
+
+    // Symbols missing from the catalog searched for between two full reloads, the others wait for the next reload
+    private int maxCatalogSearches = 100;
+
+    // Relative move below which a refreshed price is not published, 0.001 is 0.1%; 0 publishes every change
+    private double priceChangeThreshold = 0;
+
+    // Age in milliseconds from which a price still served from the table is reported stale
+    private long priceStaleAfter = 60_000;
+
+    public long getFixedDelay() {
+        return fixedDelay;
+    }
+
+    public void setFixedDelay(long fixedDelay) {
+        this.fixedDelay = fixedDelay;
+    }
+
+    public boolean isBatchEnabled() {
+        return batchEnabled;
+    }
+
+    public void setBatchEnabled(boolean batchEnabled) {
+        this.batchEnabled = batchEnabled;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    public int getRefreshThreads() {
+        return refreshThreads;
+    }
+
+    public void setRefreshThreads(int refreshThreads) {
+        this.refreshThreads = refreshThreads;
+    }
+
+    public int getRefreshQueueCapacity() {
+        return refreshQueueCapacity;
+    }
+
+    public void setRefreshQueueCapacity(int refreshQueueCapacity) {
+        this.refreshQueueCapacity = refreshQueueCapacity;
+    }
+
+    public long getTaskTimeout() {
+        return taskTimeout;
+    }
+
+    public void setTaskTimeout(long taskTimeout) {
+        this.taskTimeout = taskTimeout;
+    }
+
+    public long getCatalogRefreshInterval() {
+        return catalogRefreshInterval;
+    }
+
+    public void setCatalogRefreshInterval(long catalogRefreshInterval) {
+        this.catalogRefreshInterval = catalogRefreshInterval;
+    }
+
+    public long getTrackedSymbolsRefreshInterval() {
+        return trackedSymbolsRefreshInterval;
+    }
+
+    public void setTrackedSymbolsRefreshInterval(long trackedSymbolsRefreshInterval) {
+        this.trackedSymbolsRefreshInterval = trackedSymbolsRefreshInterval;
+    }
+
+    public int getCatalogPageSize() {
+        return catalogPageSize;
+    }
+
+    public void setCatalogPageSize(int catalogPageSize) {
+        this.catalogPageSize = catalogPageSize;
+    }
+
+    public int getMaxCatalogSearches() {
+        return maxCatalogSearches;
+    }
+
+    public void setMaxCatalogSearches(int maxCatalogSearches) {
+        this.maxCatalogSearches = maxCatalogSearches;
+    }
+
+    public double getPriceChangeThreshold() {
+        return priceChangeThreshold;
+    }
+
+    public void setPriceChangeThreshold(double priceChangeThreshold) {
+        this.priceChangeThreshold = priceChangeThreshold;
+    }
+
+    public long getPriceStaleAfter() {
+        return priceStaleAfter;
+    }
+
+    public void setPriceStaleAfter(long priceStaleAfter) {
+        this.priceStaleAfter = priceStaleAfter;
+    }
+}
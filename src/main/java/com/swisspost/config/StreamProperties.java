@@ -0,0 +1,62 @@
+package com.swisspost.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@ConfigurationProperties(prefix = "stream")
+public class StreamProperties {
+
+    // Time in milliseconds a live value stream stays open before the client has to reconnect
+    private long emitterTimeout = 1_800_000;
+
+    // Open live value streams allowed at once, across all wallets
+    private int maxSubscribers = 10_000;
+
+    // Time in milliseconds a single write to a subscriber may block before the subscriber is disconnected
+    private long sendTimeout = 10_000;
+
+    // Threads writing the values to the subscribers
+    private int senderThreads = 4;
+
+    // Subscribers waiting for a sender thread; the others keep their unsent value until the next tick
+    private int senderQueueCapacity = 1_000;
+
+    public long getEmitterTimeout() {
+        return emitterTimeout;
+    }
+
+    public void setEmitterTimeout(long emitterTimeout) {
+        this.emitterTimeout = emitterTimeout;
+    }
+
+    public int getMaxSubscribers() {
+        return maxSubscribers;
+    }
+
+    public void setMaxSubscribers(int maxSubscribers) {
+        this.maxSubscribers = maxSubscribers;
+    }
+
+    public long getSendTimeout() {
+        return sendTimeout;
+    }
+
+    public void setSendTimeout(long sendTimeout) {
+        this.sendTimeout = sendTimeout;
+    }
+
+    public int getSenderThreads() {
+        return senderThreads;
+    }
+
+    public void setSenderThreads(int senderThreads) {
+        this.senderThreads = senderThreads;
+    }
+
+    public int getSenderQueueCapacity() {
+        return senderQueueCapacity;
+    }
+
+    public void setSenderQueueCapacity(int senderQueueCapacity) {
+        this.senderQueueCapacity = senderQueueCapacity;
+    }
+}
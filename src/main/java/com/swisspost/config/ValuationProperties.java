@@ -0,0 +1,62 @@
+package com.swisspost.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@ConfigurationProperties(prefix = "valuation")
+public class ValuationProperties {
+
+    // Size of the dedicated pool repricing cached wallets, kept apart from ForkJoinPool.commonPool()
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+
+    // Wallets whose latest valuation is cached, 0 disables the cache
+    private int cacheMaxEntries = 10_000;
+
+    // Time in milliseconds a cached valuation is served at most, even when nothing changed
+    private long cacheTtl = 60_000;
+
+    // Wallets whose per-symbol aggregates are maintained, the least recently used ones are rebuilt when valued again
+    private int aggregatesMaxEntries = 10_000;
+
+    // Cached wallets repriced per task when a tick changes the prices of their symbols
+    private int revaluationBatchSize = 256;
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    public void setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+    }
+
+    public int getCacheMaxEntries() {
+        return cacheMaxEntries;
+    }
+
+    public void setCacheMaxEntries(int cacheMaxEntries) {
+        this.cacheMaxEntries = cacheMaxEntries;
+    }
+
+    public long getCacheTtl() {
+        return cacheTtl;
+    }
+
+    public void setCacheTtl(long cacheTtl) {
+        this.cacheTtl = cacheTtl;
+    }
+
+    public int getAggregatesMaxEntries() {
+        return aggregatesMaxEntries;
+    }
+
+    public void setAggregatesMaxEntries(int aggregatesMaxEntries) {
+        this.aggregatesMaxEntries = aggregatesMaxEntries;
+    }
+
+    public int getRevaluationBatchSize() {
+        return revaluationBatchSize;
+    }
+
+    public void setRevaluationBatchSize(int revaluationBatchSize) {
+        this.revaluationBatchSize = revaluationBatchSize;
+    }
+}
@@ -0,0 +1,83 @@
+package com.swisspost.controller;
+
+import com.swisspost.dto.PriceCandleRow;
+import com.swisspost.dto.PriceQuote;
+import com.swisspost.exception.InvalidSymbolException;
+import com.swisspost.model.PriceResolution;
+import com.swisspost.service.PriceFetcher;
+import com.swisspost.service.PriceHistoryService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.OptionalDouble;
+
+@RestController
+@RequestMapping("api/prices")
+@Tag(name = "Price API", description = "Operations related to the local price history.")
+public class PriceController {
+
+    private final PriceHistoryService priceHistoryService;
+
+    private final PriceFetcher priceFetcher;
+
+    public PriceController(PriceHistoryService priceHistoryService, PriceFetcher priceFetcher) {
+        this.priceHistoryService = priceHistoryService;
+        this.priceFetcher = priceFetcher;
+    }
+
+    @GetMapping("/{symbol}/latest")
+    @Operation(summary = "Get the latest price of a symbol",
+            description = "Returns the latest known price of the symbol with the age of its last refresh. The " +
+                    "price is still served while the price source is unavailable, flagged stale once too old.")
+    public ResponseEntity<PriceQuote> getLatestPrice(@PathVariable String symbol) {
+        try {
+            return ResponseEntity.ok(priceFetcher.quote(symbol));
+        } catch (InvalidSymbolException e) {
+            return ResponseEntity.notFound().build();
+        }
+    }
+
+    @GetMapping("/{symbol}")
+    @Operation(summary = "Get the price of a symbol at a past time",
+            description = "Returns the last recorded price of the symbol at the given time, at minute resolution. " +
+                    "Beyond the minute candle retention the price is the close of the hour, and then of the day, " +
+                    "containing the time.")
+    public ResponseEntity<Double> getPriceAt(@PathVariable String symbol,
+                                             @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME)
+                                             LocalDateTime at) {
+        OptionalDouble price = priceHistoryService.priceAt(symbol, at);
+        if (price.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(price.getAsDouble());
+    }
+
+    @GetMapping("/{symbol}/candles")
+    @Operation(summary = "Get the price candles of a symbol",
+            description = "Returns the open, high, low and close price of the symbol per minute, hour or day " +
+                    "between two times, oldest first.")
+    public ResponseEntity<List<PriceCandleRow>> getCandles(@PathVariable String symbol,
+                                                           @RequestParam(defaultValue = "hour") String resolution,
+                                                           @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME)
+                                                           LocalDateTime from,
+                                                           @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME)
+                                                           LocalDateTime to) {
+        PriceResolution priceResolution;
+        try {
+            priceResolution = PriceResolution.of(resolution);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
+        if (from.isAfter(to)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "from must not be after to");
+        }
+        return ResponseEntity.ok(priceHistoryService.candles(symbol, priceResolution, from, to));
+    }
+}
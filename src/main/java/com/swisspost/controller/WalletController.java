@@ -1,15 +1,41 @@
 package com.swisspost.controller;
 
+import com.swisspost.dto.BulkTradeResult;
+import com.swisspost.dto.KeysetPage;
+import com.swisspost.dto.PositionRow;
+import com.swisspost.dto.TradeImportResult;
+import com.swisspost.dto.TradeRow;
+import com.swisspost.dto.WalletAnalytics;
+import com.swisspost.dto.WalletSummary;
 import com.swisspost.model.Asset;
+import com.swisspost.model.PriceResolution;
 import com.swisspost.model.Wallet;
+import com.swisspost.service.KeysetSort;
+import com.swisspost.service.TradeFormat;
+import com.swisspost.service.TradeStreamService;
+import com.swisspost.service.WalletHistoryService;
+import com.swisspost.service.WalletReadService;
 import com.swisspost.service.WalletService;
+import com.swisspost.service.WalletStreamService;
 import com.swisspost.service.WalletValueCalculator;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.validation.Valid;
+import org.springframework.data.domain.Sort;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.InputStream;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.function.Function;
 
 @RestController
 @RequestMapping("api/wallet")
@@ -18,10 +44,20 @@ public class WalletController {
 
     private final WalletService walletService;
     private final WalletValueCalculator walletValueCalculator;
+    private final TradeStreamService tradeStreamService;
+    private final WalletReadService walletReadService;
+    private final WalletHistoryService walletHistoryService;
+    private final WalletStreamService walletStreamService;
 
-    public WalletController(WalletService walletService, WalletValueCalculator walletValueCalculator) {
+    public WalletController(WalletService walletService, WalletValueCalculator walletValueCalculator,
+                            TradeStreamService tradeStreamService, WalletReadService walletReadService,
+                            WalletHistoryService walletHistoryService, WalletStreamService walletStreamService) {
         this.walletService = walletService;
         this.walletValueCalculator = walletValueCalculator;
+        this.tradeStreamService = tradeStreamService;
+        this.walletReadService = walletReadService;
+        this.walletHistoryService = walletHistoryService;
+        this.walletStreamService = walletStreamService;
     }
 
     @PostMapping("/create-wallet")
@@ -34,6 +70,175 @@ public class WalletController {
         return new ResponseEntity<>(aWallet, HttpStatus.CREATED);
     }
 
+    @PostMapping("/wallets")
+    @Operation(summary = "Create the wallet of an owner",
+            description = "Creates a new wallet for the owner key, or returns the owner's existing wallet.")
+    public ResponseEntity<Wallet> createWallet(@RequestParam String ownerKey) {
+        try {
+            return new ResponseEntity<>(walletService.createWallet(ownerKey), HttpStatus.CREATED);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
+    }
+
+    @GetMapping("/wallets/{walletId}")
+    @Operation(summary = "Retrieve a wallet by id", description = "Fetches the details of the wallet with the given id.")
+    public ResponseEntity<Wallet> getWalletById(@PathVariable Long walletId) {
+        return ResponseEntity.ok(walletService.getWallet(walletId));
+    }
+
+    @GetMapping("/owners/{ownerKey}")
+    @Operation(summary = "Retrieve the wallet of an owner",
+            description = "Fetches the summary of the wallet of the given owner key.")
+    public ResponseEntity<WalletSummary> getWalletByOwner(@PathVariable String ownerKey) {
+        return ResponseEntity.ok(walletReadService.summaryByOwner(ownerKey));
+    }
+
+    @GetMapping("/wallets/{walletId}/summary")
+    @Operation(summary = "Get the summary of a wallet",
+            description = "Returns the total value and one aggregated entry per held symbol of the wallet with " +
+                    "the given id.")
+    public ResponseEntity<WalletSummary> getWalletSummary(@PathVariable Long walletId) {
+        return ResponseEntity.ok(walletReadService.summary(walletId));
+    }
+
+    @GetMapping("/wallets/{walletId}/positions")
+    @Operation(summary = "List the positions of a wallet",
+            description = "Returns one page of the positions of the wallet with the given id, sorted by id or " +
+                    "createdAt. Pass the returned nextCursor to fetch the following page.")
+    public ResponseEntity<KeysetPage<PositionRow>> getPositions(@PathVariable Long walletId,
+                                                                @RequestParam(defaultValue = "id") String sort,
+                                                                @RequestParam(defaultValue = "asc") String direction,
+                                                                @RequestParam(required = false) String cursor,
+                                                                @RequestParam(defaultValue = "50") int size) {
+        try {
+            return ResponseEntity.ok(walletReadService.positions(walletId, KeysetSort.of(sort),
+                    Sort.Direction.fromString(direction).isAscending(), cursor, size));
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
+    }
+
+    @GetMapping("/wallets/{walletId}/trades")
+    @Operation(summary = "List the trades of a wallet",
+            description = "Returns one page of the trade ledger of the wallet with the given id, sorted by id or " +
+                    "createdAt. Pass the returned nextCursor to fetch the following page.")
+    public ResponseEntity<KeysetPage<TradeRow>> getTrades(@PathVariable Long walletId,
+                                                          @RequestParam(defaultValue = "id") String sort,
+                                                          @RequestParam(defaultValue = "asc") String direction,
+                                                          @RequestParam(required = false) String cursor,
+                                                          @RequestParam(defaultValue = "50") int size) {
+        try {
+            return ResponseEntity.ok(walletReadService.trades(walletId, KeysetSort.of(sort),
+                    Sort.Direction.fromString(direction).isAscending(), cursor, size));
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
+    }
+
+    @PostMapping("/wallets/{walletId}/add-asset")
+    @Operation(summary = "Add an asset to a wallet",
+            description = "Adds a new asset to the wallet with the given id or updates the quantity if it already exists.")
+    public ResponseEntity<Wallet> addAssetToWallet(@PathVariable Long walletId, @RequestBody @Valid Asset asset) {
+        return ResponseEntity.ok(walletService.addAssetToWallet(walletId, asset));
+    }
+
+    @PutMapping("/wallets/{walletId}/remove-asset")
+    @Operation(summary = "Remove an asset from a wallet",
+            description = "Removes an asset from the wallet with the given id or reduces its quantity.")
+    public ResponseEntity<Wallet> removeAssetInWallet(@PathVariable Long walletId, @RequestBody Asset asset) {
+        return ResponseEntity.ok(walletService.removeAssetFromWallet(walletId, asset));
+    }
+
+    @PostMapping("/wallets/{walletId}/trades")
+    @Operation(summary = "Import trades into a wallet",
+            description = "Adds a batch of trades to the wallet with the given id in a single transaction, priced " +
+                    "at the same prices. Assets with status SELL are sold, all others are bought. The batch is " +
+                    "rejected as a whole when one trade is invalid.")
+    public ResponseEntity<BulkTradeResult> addTradesToWallet(@PathVariable Long walletId,
+                                                             @RequestBody List<@Valid Asset> assets) {
+        return ResponseEntity.ok(walletService.addTradesToWallet(walletId, assets));
+    }
+
+    @PostMapping("/wallets/{walletId}/trades/import")
+    @Operation(summary = "Stream trades into a wallet",
+            description = "Imports a CSV (with a header line) or NDJSON trade history line by line, committing " +
+                    "every chunkSize rows. Rows without a price get the current price. Returns the number of " +
+                    "imported rows and, if the import stopped early, the line it stopped at.")
+    public ResponseEntity<TradeImportResult> importTrades(@PathVariable Long walletId,
+                                                          @RequestParam(defaultValue = "ndjson") String format,
+                                                          @RequestParam(defaultValue = "1000") int chunkSize,
+                                                          InputStream body) {
+        TradeImportResult result = tradeStreamService.importTrades(walletId, body, tradeFormat(format), chunkSize);
+        return ResponseEntity.status(result.error() == null ? HttpStatus.OK : HttpStatus.UNPROCESSABLE_ENTITY)
+                .body(result);
+    }
+
+    @GetMapping("/wallets/{walletId}/trades/export")
+    @Operation(summary = "Stream the trades of a wallet",
+            description = "Exports the whole trade ledger of the wallet with the given id as CSV or NDJSON, " +
+                    "written page by page.")
+    public ResponseEntity<StreamingResponseBody> exportTrades(@PathVariable Long walletId,
+                                                              @RequestParam(defaultValue = "ndjson") String format) {
+        walletService.getWallet(walletId);
+        TradeFormat tradeFormat = tradeFormat(format);
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(tradeFormat.getMediaType()))
+                .header(HttpHeaders.CONTENT_DISPOSITION,
+                        "attachment; filename=wallet-" + walletId + "-trades." + tradeFormat.getFileExtension())
+                .body(out -> tradeStreamService.exportTrades(walletId, tradeFormat, out));
+    }
+
+    @GetMapping("/wallets/{walletId}/history")
+    @Operation(summary = "Stream the value history of a wallet",
+            description = "Replays the trades of the wallet with the given id against the local price history " +
+                    "and streams its value, cost basis and profit per minute, hour or day between two times as " +
+                    "NDJSON, oldest first. With positions=true every point also lists each held symbol. Minute " +
+                    "and hour prices are only kept for a limited time, older ranges need a coarser resolution; " +
+                    "values are null while a held symbol has no recorded price.")
+    public ResponseEntity<StreamingResponseBody> getWalletHistory(
+            @PathVariable Long walletId,
+            @RequestParam(defaultValue = "hour") String resolution,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+            @RequestParam(defaultValue = "false") boolean positions) {
+        walletService.getWallet(walletId);
+        PriceResolution priceResolution;
+        try {
+            priceResolution = PriceResolution.of(resolution);
+            walletHistoryService.validateRange(priceResolution, from, to);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(TradeFormat.NDJSON.getMediaType()))
+                .body(out -> walletHistoryService.writeValueSeries(walletId, priceResolution, from, to, positions, out));
+    }
+
+    @GetMapping(path = "/wallets/{walletId}/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @Operation(summary = "Stream the live value of a wallet",
+            description = "Opens a server-sent event stream of the wallet with the given id: its current value " +
+                    "right away, then its value, best and worst asset after every price update. Clients that " +
+                    "fall behind skip to the latest value and are disconnected when they fall too far behind.")
+    public SseEmitter streamWalletValue(@PathVariable Long walletId) {
+        return walletStreamService.subscribe(walletId);
+    }
+
+    @GetMapping("/wallets/{walletId}/analytics")
+    @Operation(summary = "Get the analytics of a wallet",
+            description = "Returns the total value, the best and worst performing assets and the value and profit " +
+                    "of every asset of the wallet with the given id.")
+    public ResponseEntity<WalletAnalytics> getWalletAnalytics(@PathVariable Long walletId) {
+        return ResponseEntity.ok(walletValueCalculator.analyze(walletService.getWallet(walletId)));
+    }
+
+    @GetMapping("/wallets/{walletId}/wallet-value")
+    @Operation(summary = "Get the total value of a wallet",
+            description = "Calculates the total financial value of all assets in the wallet with the given id.")
+    public ResponseEntity<Double> getWalletTotalValue(@PathVariable Long walletId) {
+        return ResponseEntity.ok(walletValueCalculator.totalWalletValueOfAssets(walletService.getWallet(walletId)));
+    }
+
     @PostMapping("/add-asset")
     @Operation(summary = "Add an asset to the wallet",
             description = "Adds a new asset to the wallet or updates the quantity if it already exists.")
@@ -69,63 +274,73 @@ public class WalletController {
         return ResponseEntity.ok(updatedWallet);
     }
 
-    @GetMapping("/wallet-value")
-    @Operation(summary = "Get total wallet value",
-            description = "Calculates and returns the total financial value of all assets in the wallet.")
-    public ResponseEntity<Double> getWalletTotalValue() {
+    @GetMapping("/analytics")
+    @Operation(summary = "Get wallet analytics",
+            description = "Returns the total value, the best and worst performing assets with their growth rates " +
+                    "and the value and profit of every asset, computed in a single pass at the same prices.")
+    public ResponseEntity<WalletAnalytics> getWalletAnalytics() {
         Wallet wallet = getWallet().getBody();
         if (wallet == null) {
             return ResponseEntity.notFound().build();
         }
-        Double value = walletValueCalculator.totalWalletValueOfAssets(wallet);
-        return ResponseEntity.ok(value);
+        return ResponseEntity.ok(walletValueCalculator.analyze(wallet));
+    }
+
+    @GetMapping("/wallet-value")
+    @Operation(summary = "Get total wallet value",
+            description = "Calculates and returns the total financial value of all assets in the wallet.")
+    public ResponseEntity<Double> getWalletTotalValue() {
+        return analyticsView(WalletAnalytics::totalValue);
     }
 
     @GetMapping("/best-asset")
     @Operation(summary = "Get best-performing asset",
             description = "Fetches the symbol of the best-performing asset in the wallet.")
     public ResponseEntity<String> getBestAsset() {
-        Wallet wallet = getWallet().getBody();
-        if (wallet == null) {
-            return ResponseEntity.notFound().build();
-        }
-        String symbol = walletValueCalculator.bestPerformingAsset(wallet);
-        return ResponseEntity.ok(symbol);
+        return analyticsView(WalletAnalytics::bestAsset);
     }
 
     @GetMapping("/best-performance")
     @Operation(summary = "Get best performance value",
             description = "Returns the growth rate of the best-performing asset in the wallet.")
     public ResponseEntity<Double> getBestPerformanceValue() {
-        Wallet wallet = getWallet().getBody();
-        if (wallet == null) {
-            return ResponseEntity.notFound().build();
-        }
-        Double value = walletValueCalculator.bestPerformingAssetValue(wallet);
-        return ResponseEntity.ok(value);
+        return analyticsView(WalletAnalytics::bestGrowthRate);
     }
 
     @GetMapping("/worst-asset")
     @Operation(summary = "Get worst-performing asset",
             description = "Fetches the symbol of the worst-performing asset in the wallet.")
     public ResponseEntity<String> getWorstAsset() {
-        Wallet wallet = getWallet().getBody();
-        if (wallet == null) {
-            return ResponseEntity.notFound().build();
-        }
-        String assetSymbol = walletValueCalculator.worstPerformingAsset(wallet);
-        return ResponseEntity.ok(assetSymbol);
+        return analyticsView(WalletAnalytics::worstAsset);
     }
 
     @GetMapping("/worst-performance")
     @Operation(summary = "Get worst performance value",
             description = "Returns the growth rate of the worst-performing asset in the wallet.")
     public ResponseEntity<Double> getWorstPerformanceValue() {
-        Wallet wallet = getWallet().getBody();
-        if (wallet == null) {
+        return analyticsView(WalletAnalytics::worstGrowthRate);
+    }
+
+    private static TradeFormat tradeFormat(String format) {
+        try {
+            return TradeFormat.of(format);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
+    }
+
+    /**
+     * Serve one field of the wallet analytics, or 404 when the wallet or the value does not exist.
+     */
+    private <T> ResponseEntity<T> analyticsView(Function<WalletAnalytics, T> field) {
+        ResponseEntity<WalletAnalytics> analytics = getWalletAnalytics();
+        if (analytics.getBody() == null) {
+            return ResponseEntity.notFound().build();
+        }
+        T value = field.apply(analytics.getBody());
+        if (value == null) {
             return ResponseEntity.notFound().build();
         }
-        Double value = walletValueCalculator.worstPerformingAssetValue(wallet);
         return ResponseEntity.ok(value);
     }
 }
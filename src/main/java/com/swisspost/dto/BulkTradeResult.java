@@ -0,0 +1,12 @@
+package com.swisspost.dto;
+
+/**
+ * Outcome of a bulk trade import.
+ *
+ * @param priceVersion The version of the price snapshot all trades were priced with.
+ */
+public record BulkTradeResult(Long walletId,
+                              int tradeCount,
+                              int positionCount,
+                              long priceVersion) {
+}
@@ -0,0 +1,18 @@
+package com.swisspost.dto;
+
+/**
+ * Quantity and cost of all holdings of one symbol, valued when the symbol has a price.
+ *
+ * @param costBasis     The purchase value in USD.
+ * @param currentValue  The value at the latest prices, or null while the symbol has no price.
+ * @param profitAndLoss The current value less the cost basis, or null while the symbol has no price.
+ * @param growthRate    The growth in percent since purchase, rounded to two decimals, or null without a
+ *                      price or a purchase value.
+ */
+public record HoldingSummary(String symbol,
+                             double quantity,
+                             double costBasis,
+                             Double currentValue,
+                             Double profitAndLoss,
+                             Double growthRate) {
+}
@@ -0,0 +1,11 @@
+package com.swisspost.dto;
+
+import java.util.List;
+
+/**
+ * One page of a keyset-paginated listing.
+ *
+ * @param nextCursor The cursor to pass for the following page, or null on the last page.
+ */
+public record KeysetPage<T>(List<T> items, String nextCursor) {
+}
@@ -0,0 +1,19 @@
+package com.swisspost.dto;
+
+import com.swisspost.model.AssetStatus;
+
+import java.time.LocalDateTime;
+
+/**
+ * Read-only projection of a wallet's position in one symbol.
+ *
+ * @param price       The average purchase price in USD.
+ * @param assetStatus The side of the last trade that changed the position.
+ */
+public record PositionRow(Long id,
+                          LocalDateTime createdAt,
+                          String symbol,
+                          AssetStatus assetStatus,
+                          double quantity,
+                          double price) {
+}
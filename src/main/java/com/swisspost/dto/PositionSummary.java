@@ -0,0 +1,15 @@
+package com.swisspost.dto;
+
+/**
+ * Value and profit of all holdings of one symbol.
+ *
+ * @param growthRate The growth in percent since purchase, rounded to two decimals, or null without a
+ *                   purchase value.
+ */
+public record PositionSummary(String symbol,
+                              double quantity,
+                              double costBasis,
+                              double currentValue,
+                              double profitAndLoss,
+                              Double growthRate) {
+}
@@ -0,0 +1,17 @@
+package com.swisspost.dto;
+
+import com.swisspost.model.PriceResolution;
+
+import java.time.LocalDateTime;
+
+/**
+ * Open, high, low and close price of a symbol over one bucket of the price history, in USD.
+ */
+public record PriceCandleRow(String symbol,
+                             PriceResolution resolution,
+                             LocalDateTime bucketStart,
+                             double open,
+                             double high,
+                             double low,
+                             double close) {
+}
@@ -0,0 +1,17 @@
+package com.swisspost.dto;
+
+import java.time.Instant;
+
+/**
+ * Latest known price of a symbol, in USD, with the age of its last successful refresh.
+ *
+ * @param refreshedAt When the price source last returned a price for the symbol, moved or not.
+ * @param stale       Whether the price is older than {@code scheduler.priceStaleAfter}, as while the
+ *                    price source is unavailable.
+ */
+public record PriceQuote(String symbol,
+                         double price,
+                         Instant refreshedAt,
+                         long ageMillis,
+                         boolean stale) {
+}
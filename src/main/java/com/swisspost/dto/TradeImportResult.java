@@ -0,0 +1,15 @@
+package com.swisspost.dto;
+
+/**
+ * Progress of a streamed trade import. Chunks are committed one by one, so the rows of all committed
+ * chunks stay imported when a later chunk fails.
+ *
+ * @param failedLine The line the failed chunk started at, or null when the import completed.
+ * @param error      The reason the failed chunk was rejected, or null when the import completed.
+ */
+public record TradeImportResult(Long walletId,
+                                long importedRows,
+                                int committedChunks,
+                                Long failedLine,
+                                String error) {
+}
@@ -0,0 +1,20 @@
+package com.swisspost.dto;
+
+import com.swisspost.model.AssetStatus;
+
+import java.time.LocalDateTime;
+
+/**
+ * One trade of the ledger as exported and imported, without the wallet it belongs to.
+ *
+ * @param id    The ledger id, ignored on import.
+ * @param side  BUY or SELL, a missing side is imported as BUY.
+ * @param price The executed price in USD; rows imported without a positive price get the current price.
+ */
+public record TradeRow(Long id,
+                       LocalDateTime createdAt,
+                       String symbol,
+                       AssetStatus side,
+                       double quantity,
+                       double price) {
+}
@@ -0,0 +1,19 @@
+package com.swisspost.dto;
+
+import java.util.List;
+
+/**
+ * Result of a single valuation pass over a wallet.
+ *
+ * @param priceVersion The version of the price snapshot the wallet was valued with.
+ * @param bestAsset    The symbol with the highest growth rate, or null when no asset has a purchase value.
+ * @param worstAsset   The symbol with the lowest growth rate, or null when no asset has a purchase value.
+ */
+public record WalletAnalytics(long priceVersion,
+                              double totalValue,
+                              String bestAsset,
+                              Double bestGrowthRate,
+                              String worstAsset,
+                              Double worstGrowthRate,
+                              List<PositionSummary> positions) {
+}
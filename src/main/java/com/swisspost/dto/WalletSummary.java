@@ -0,0 +1,18 @@
+package com.swisspost.dto;
+
+import java.util.List;
+
+/**
+ * Compact view of a wallet: its identity and one aggregated entry per held symbol.
+ *
+ * @param version      The wallet version, incremented by every trade.
+ * @param priceVersion The version of the price snapshot the positions were valued with.
+ * @param totalValue   The value of all positions, or null while one of the held symbols has no price.
+ */
+public record WalletSummary(Long walletId,
+                            String ownerKey,
+                            Long version,
+                            long priceVersion,
+                            Double totalValue,
+                            List<HoldingSummary> positions) {
+}
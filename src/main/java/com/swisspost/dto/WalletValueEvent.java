@@ -0,0 +1,20 @@
+package com.swisspost.dto;
+
+/**
+ * Live value of a wallet as pushed to its subscribers once per price tick.
+ *
+ * @param priceVersion The version of the price snapshot the wallet was valued with.
+ */
+public record WalletValueEvent(Long walletId,
+                               long priceVersion,
+                               double totalValue,
+                               String bestAsset,
+                               Double bestGrowthRate,
+                               String worstAsset,
+                               Double worstGrowthRate) {
+
+    public static WalletValueEvent of(Long walletId, WalletAnalytics analytics) {
+        return new WalletValueEvent(walletId, analytics.priceVersion(), analytics.totalValue(),
+                analytics.bestAsset(), analytics.bestGrowthRate(), analytics.worstAsset(), analytics.worstGrowthRate());
+    }
+}
@@ -0,0 +1,30 @@
+package com.swisspost.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Value of a wallet at the end of one bucket of a historical valuation.
+ *
+ * @param time          The start of the bucket; holdings include the trades up to its end and are valued
+ *                      at the close prices of the bucket.
+ * @param totalValue    The value of the holdings, or null while one of the held symbols has no recorded price.
+ * @param costBasis     The total purchase value of the holdings.
+ * @param profitAndLoss The total value less the cost basis, or null without a total value.
+ * @param positions     The value of every held symbol, or null when not requested.
+ */
+public record WalletValuePoint(LocalDateTime time,
+                               Double totalValue,
+                               double costBasis,
+                               Double profitAndLoss,
+                               @JsonInclude(JsonInclude.Include.NON_NULL) List<PositionPoint> positions) {
+
+    /**
+     * Value of the holdings of one symbol within a {@link WalletValuePoint}; value and profit are null
+     * while the symbol has no recorded price.
+     */
+    public record PositionPoint(String symbol, double quantity, Double value, Double profitAndLoss) {
+    }
+}
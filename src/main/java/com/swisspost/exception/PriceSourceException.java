@@ -0,0 +1,27 @@
+package com.swisspost.exception;
+
+public class PriceSourceException extends RuntimeException {
+
+    private final int statusCode;
+
+    // Time the price source asked to wait before the next request, -1 when it did not say
+    private final long retryAfterMillis;
+
+    public PriceSourceException(int statusCode, String message) {
+        this(statusCode, message, -1);
+    }
+
+    public PriceSourceException(int statusCode, String message, long retryAfterMillis) {
+        super(message);
+        this.statusCode = statusCode;
+        this.retryAfterMillis = retryAfterMillis;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    public long getRetryAfterMillis() {
+        return retryAfterMillis;
+    }
+}
@@ -0,0 +1,12 @@
+package com.swisspost.exception;
+
+/**
+ * A request refused without reaching the price source, because its circuit is open or the source
+ * rate limited us.
+ */
+public class PriceSourceUnavailableException extends PriceSourceException {
+
+    public PriceSourceUnavailableException(String message) {
+        super(503, message);
+    }
+}
@@ -1,16 +1,35 @@
 package com.swisspost.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import jakarta.persistence.*;
 
 import java.time.LocalDateTime;
 import java.util.Objects;
 
+/**
+ * The position of a wallet in one symbol. There is at most one asset per wallet and symbol, and
+ * trades update it in place; the trades themselves are kept in the {@link Trade} ledger.
+ */
 @Entity
+@Table(indexes = {
+        @Index(name = "idx_asset_wallet_symbol", columnList = "wallet_id, symbol", unique = true),
+        @Index(name = "idx_asset_wallet_id", columnList = "wallet_id, id"),
+        @Index(name = "idx_asset_wallet_created_at", columnList = "wallet_id, createdAt, id"),
+        @Index(name = "idx_asset_symbol", columnList = "symbol")
+})
 public class Asset {
 
+    // Pooled sequence ids keep JDBC insert batching enabled, IDENTITY would disable it
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "asset_seq")
+    @SequenceGenerator(name = "asset_seq", sequenceName = "asset_seq", allocationSize = 50)
     private Long id;
+
+    @JsonIgnore
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "wallet_id", nullable = false, foreignKey = @ForeignKey(name = "fk_asset_wallet"))
+    private Wallet wallet;
+
     private String symbol;
     private double quantity;
     private double price;
@@ -19,6 +38,9 @@ public class Asset {
     @Enumerated(EnumType.STRING)
     private AssetStatus assetStatus;
 
+    protected Asset() {
+    }
+
     public Asset(String symbol, double quantity, double price) {
         this.symbol = symbol;
         this.quantity = quantity;
@@ -34,6 +56,26 @@ public class Asset {
         this.createdAt = LocalDateTime.now();
     }
 
+    /**
+     * Open the position of a wallet, without loading the wallet's other positions.
+     */
+    public Asset(Wallet wallet, String symbol, double quantity, double price, AssetStatus status) {
+        this(symbol, quantity, price, status);
+        this.wallet = wallet;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public Wallet getWallet() {
+        return wallet;
+    }
+
+    void setWallet(Wallet wallet) {
+        this.wallet = wallet;
+    }
+
     public String getSymbol() {
         return symbol;
     }
@@ -54,19 +96,36 @@ public class Asset {
         return assetStatus;
     }
 
+    /**
+     * Add a purchase to the position, keeping the average purchase price.
+     */
+    public void buy(double boughtQuantity, double purchasePrice) {
+        double newQuantity = quantity + boughtQuantity;
+        this.price = (quantity * price + boughtQuantity * purchasePrice) / newQuantity;
+        this.quantity = newQuantity;
+        this.assetStatus = AssetStatus.BUY;
+    }
+
+    /**
+     * Reduce the position, the average purchase price of the remaining quantity is unchanged.
+     */
+    public void sell(double soldQuantity) {
+        this.quantity -= soldQuantity;
+        this.assetStatus = AssetStatus.SELL;
+    }
+
+    // Positions are mutable, so they are equal by identity until persisted and by id afterwards.
+    // Persist a position before adding it to a hashed collection.
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         Asset asset = (Asset) o;
-        return Double.compare(asset.quantity, quantity) == 0 &&
-                Double.compare(asset.price, price) == 0 &&
-                Objects.equals(symbol, asset.symbol) &&
-                assetStatus == asset.assetStatus;
+        return id != null && id.equals(asset.id);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(symbol, quantity, price, assetStatus);
+        return id != null ? Objects.hashCode(id) : System.identityHashCode(this);
     }
 }
@@ -0,0 +1,90 @@
+package com.swisspost.model;
+
+import jakarta.persistence.*;
+
+import java.time.LocalDateTime;
+
+/**
+ * Open, high, low and close price of a symbol over one bucket of the price history. Candles are
+ * written by upserts as ticks come in, the close is the latest price seen in the bucket.
+ * <p>
+ * The primary key (symbol, resolution, bucketStart) serves both the price-at-time and the range
+ * lookups.
+ */
+@Entity
+@IdClass(PriceCandleId.class)
+public class PriceCandle {
+
+    @Id
+    private String symbol;
+
+    @Id
+    @Enumerated(EnumType.STRING)
+    private PriceResolution resolution;
+
+    @Id
+    private LocalDateTime bucketStart;
+
+    @Column(nullable = false)
+    private double openPrice;
+
+    @Column(nullable = false)
+    private double highPrice;
+
+    @Column(nullable = false)
+    private double lowPrice;
+
+    @Column(nullable = false)
+    private double closePrice;
+
+    // Ticks rolled up into the candle
+    @Column(nullable = false)
+    private int samples;
+
+    protected PriceCandle() {
+    }
+
+    public PriceCandle(String symbol, PriceResolution resolution, LocalDateTime bucketStart, double openPrice,
+                       double highPrice, double lowPrice, double closePrice, int samples) {
+        this.symbol = symbol;
+        this.resolution = resolution;
+        this.bucketStart = bucketStart;
+        this.openPrice = openPrice;
+        this.highPrice = highPrice;
+        this.lowPrice = lowPrice;
+        this.closePrice = closePrice;
+        this.samples = samples;
+    }
+
+    public String getSymbol() {
+        return symbol;
+    }
+
+    public PriceResolution getResolution() {
+        return resolution;
+    }
+
+    public LocalDateTime getBucketStart() {
+        return bucketStart;
+    }
+
+    public double getOpenPrice() {
+        return openPrice;
+    }
+
+    public double getHighPrice() {
+        return highPrice;
+    }
+
+    public double getLowPrice() {
+        return lowPrice;
+    }
+
+    public double getClosePrice() {
+        return closePrice;
+    }
+
+    public int getSamples() {
+        return samples;
+    }
+}
@@ -0,0 +1,37 @@
+package com.swisspost.model;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+import java.util.Objects;
+
+/**
+ * Primary key of a {@link PriceCandle}.
+ */
+public class PriceCandleId implements Serializable {
+
+    private String symbol;
+    private PriceResolution resolution;
+    private LocalDateTime bucketStart;
+
+    protected PriceCandleId() {
+    }
+
+    public PriceCandleId(String symbol, PriceResolution resolution, LocalDateTime bucketStart) {
+        this.symbol = symbol;
+        this.resolution = resolution;
+        this.bucketStart = bucketStart;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof PriceCandleId that)) return false;
+        return Objects.equals(symbol, that.symbol) && resolution == that.resolution
+                && Objects.equals(bucketStart, that.bucketStart);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(symbol, resolution, bucketStart);
+    }
+}
@@ -0,0 +1,43 @@
+package com.swisspost.model;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+
+/**
+ * Bucket sizes of the price history. Every tick is rolled up into one candle of each resolution.
+ */
+public enum PriceResolution {
+
+    MINUTE(ChronoUnit.MINUTES),
+    HOUR(ChronoUnit.HOURS),
+    DAY(ChronoUnit.DAYS);
+
+    private final ChronoUnit unit;
+
+    PriceResolution(ChronoUnit unit) {
+        this.unit = unit;
+    }
+
+    /**
+     * @return The start of the bucket the time falls into.
+     */
+    public LocalDateTime bucketStart(LocalDateTime time) {
+        return time.truncatedTo(unit);
+    }
+
+    public ChronoUnit getUnit() {
+        return unit;
+    }
+
+    /**
+     * @param name The resolution name, in any case (e.g., minute, HOUR).
+     */
+    public static PriceResolution of(String name) {
+        for (PriceResolution resolution : values()) {
+            if (resolution.name().equalsIgnoreCase(name)) {
+                return resolution;
+            }
+        }
+        throw new IllegalArgumentException("Unsupported price resolution: " + name);
+    }
+}
@@ -0,0 +1,38 @@
+package com.swisspost.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+
+import java.time.LocalDateTime;
+
+/**
+ * A symbol held by at least one wallet at some point. A row is inserted when the first position in the
+ * symbol is opened and never removed, so discovering the symbols to refresh checks each tracked symbol
+ * for a position instead of a distinct over all positions.
+ */
+@Entity
+public class TrackedSymbol {
+
+    @Id
+    private String symbol;
+
+    @Column(nullable = false, updatable = false)
+    private LocalDateTime firstTradedAt;
+
+    protected TrackedSymbol() {
+    }
+
+    public TrackedSymbol(String symbol, LocalDateTime firstTradedAt) {
+        this.symbol = symbol;
+        this.firstTradedAt = firstTradedAt;
+    }
+
+    public String getSymbol() {
+        return symbol;
+    }
+
+    public LocalDateTime getFirstTradedAt() {
+        return firstTradedAt;
+    }
+}
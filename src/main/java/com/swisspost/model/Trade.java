@@ -0,0 +1,91 @@
+package com.swisspost.model;
+
+import jakarta.persistence.*;
+import org.hibernate.annotations.Immutable;
+
+import java.time.LocalDateTime;
+
+/**
+ * One BUY or SELL of a wallet. Trades form an append-only ledger: rows are inserted once and never
+ * updated or deleted, the current holdings are kept separately as positions.
+ */
+@Entity
+@Immutable
+@Table(indexes = {
+        @Index(name = "idx_trade_wallet_created_at", columnList = "walletId, createdAt, id"),
+        @Index(name = "idx_trade_wallet_id", columnList = "walletId, id"),
+        @Index(name = "idx_trade_symbol_created_at", columnList = "symbol, createdAt")
+})
+public class Trade {
+
+    // Pooled sequence ids keep JDBC insert batching enabled, IDENTITY would disable it
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "trade_seq")
+    @SequenceGenerator(name = "trade_seq", sequenceName = "trade_seq", allocationSize = 50)
+    private Long id;
+
+    // Mapped as a plain column so appending a trade never loads the wallet
+    @Column(nullable = false, updatable = false)
+    private Long walletId;
+
+    @Column(nullable = false, updatable = false)
+    private String symbol;
+
+    @Column(nullable = false, updatable = false)
+    private double quantity;
+
+    // Price in USD the trade was executed at
+    @Column(nullable = false, updatable = false)
+    private double price;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, updatable = false)
+    private AssetStatus side;
+
+    @Column(nullable = false, updatable = false)
+    private LocalDateTime createdAt;
+
+    protected Trade() {
+    }
+
+    public Trade(Long walletId, String symbol, double quantity, double price, AssetStatus side) {
+        this(walletId, symbol, quantity, price, side, LocalDateTime.now());
+    }
+
+    public Trade(Long walletId, String symbol, double quantity, double price, AssetStatus side, LocalDateTime createdAt) {
+        this.walletId = walletId;
+        this.symbol = symbol;
+        this.quantity = quantity;
+        this.price = price;
+        this.side = side;
+        this.createdAt = createdAt;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public Long getWalletId() {
+        return walletId;
+    }
+
+    public String getSymbol() {
+        return symbol;
+    }
+
+    public double getQuantity() {
+        return quantity;
+    }
+
+    public double getPrice() {
+        return price;
+    }
+
+    public AssetStatus getSide() {
+        return side;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+}
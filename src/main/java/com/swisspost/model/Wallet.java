@@ -6,26 +6,32 @@ import java.util.HashSet;
 import java.util.Set;
 
 @Entity
+@Table(indexes = @Index(name = "idx_wallet_owner_key", columnList = "ownerKey", unique = true))
 public class Wallet {
 
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
 
-    private static Wallet walletInstance;
+    // Incremented on every change to the wallet's assets
+    @Version
+    private Long version;
 
-    @OneToMany(cascade = CascadeType.ALL, orphanRemoval = true)
+    // Key of the customer owning the wallet, unique across all wallets
+    @Column(nullable = false, updatable = false)
+    private String ownerKey;
+
+    // One position per symbol, owned by Asset.wallet
+    @OneToMany(mappedBy = "wallet", cascade = CascadeType.ALL, orphanRemoval = true)
     private final Set<Asset> cryptoAsset;
 
-    private Wallet() {
+    protected Wallet() {
         this.cryptoAsset = new HashSet<>();
     }
 
-    public static synchronized Wallet getWalletInstance() {
-        if (walletInstance == null) {
-            walletInstance = new Wallet();
-        }
-        return walletInstance;
+    public Wallet(String ownerKey) {
+        this();
+        this.ownerKey = ownerKey;
     }
 
     public Long getId() {
@@ -36,11 +42,20 @@ public class Wallet {
         this.id = id;
     }
 
+    public String getOwnerKey() {
+        return ownerKey;
+    }
+
+    public Long getVersion() {
+        return version;
+    }
+
     public Set<Asset> getCryptoAssets() {
         return cryptoAsset;
     }
 
     public void addCryptoAsset(Asset asset) {
+        asset.setWallet(this);
         this.cryptoAsset.add(asset);
     }
 
@@ -54,6 +69,6 @@ public class Wallet {
 
     public void setCryptoAssets(Set<Asset> assets) {
         this.cryptoAsset.clear();
-        boolean status = this.getCryptoAssets().addAll(assets);
+        assets.forEach(this::addCryptoAsset);
     }
 }
@@ -1,16 +1,53 @@
 package com.swisspost.repository;
 
+import com.swisspost.dto.PositionRow;
 import com.swisspost.model.Asset;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 
 @Repository
 public interface AssetRepository extends JpaRepository<Asset, Long> {
 
-    @Query("SELECT DISTINCT a.symbol FROM Asset a")
-    List<String> findAllAssetSymbols();
+    String POSITION_ROWS = "SELECT new com.swisspost.dto.PositionRow(a.id, a.createdAt, a.symbol, a.assetStatus, " +
+            "a.quantity, a.price) FROM Asset a WHERE a.wallet.id = :walletId ";
+
+    // Served by the unique (wallet_id, symbol) index
+    Optional<Asset> findByWalletIdAndSymbol(Long walletId, String symbol);
+
+    List<Asset> findByWalletIdAndSymbolIn(Long walletId, Collection<String> symbols);
+
+    // All positions of a wallet, served by the (wallet_id, symbol) index
+    @Query(POSITION_ROWS + "ORDER BY a.symbol")
+    List<PositionRow> findPositionRows(@Param("walletId") Long walletId);
+
+    // Keyset pages of a wallet's positions, served by the (wallet_id, id) and (wallet_id, createdAt, id) indexes
+
+    @Query(POSITION_ROWS + "AND a.id > :afterId ORDER BY a.id")
+    List<PositionRow> findPositionRowsAfter(@Param("walletId") Long walletId, @Param("afterId") long afterId,
+                                            Pageable pageable);
+
+    @Query(POSITION_ROWS + "AND a.id < :beforeId ORDER BY a.id DESC")
+    List<PositionRow> findPositionRowsBefore(@Param("walletId") Long walletId, @Param("beforeId") long beforeId,
+                                             Pageable pageable);
+
+    @Query(POSITION_ROWS + "AND (a.createdAt > :createdAt OR (a.createdAt = :createdAt AND a.id > :id)) " +
+            "ORDER BY a.createdAt, a.id")
+    List<PositionRow> findPositionRowsAfterCreatedAt(@Param("walletId") Long walletId,
+                                                     @Param("createdAt") LocalDateTime createdAt,
+                                                     @Param("id") long id, Pageable pageable);
+
+    @Query(POSITION_ROWS + "AND (a.createdAt < :createdAt OR (a.createdAt = :createdAt AND a.id < :id)) " +
+            "ORDER BY a.createdAt DESC, a.id DESC")
+    List<PositionRow> findPositionRowsBeforeCreatedAt(@Param("walletId") Long walletId,
+                                                      @Param("createdAt") LocalDateTime createdAt,
+                                                      @Param("id") long id, Pageable pageable);
 
 }
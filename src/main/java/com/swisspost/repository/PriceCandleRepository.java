@@ -0,0 +1,52 @@
+package com.swisspost.repository;
+
+import com.swisspost.dto.PriceCandleRow;
+import com.swisspost.model.PriceCandle;
+import com.swisspost.model.PriceCandleId;
+import com.swisspost.model.PriceResolution;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface PriceCandleRepository extends JpaRepository<PriceCandle, PriceCandleId> {
+
+    // Opens the candle of the bucket, or rolls the price into it
+    @Modifying
+    @Query(value = "INSERT INTO price_candle (symbol, resolution, bucket_start, open_price, high_price, low_price, " +
+            "close_price, samples) VALUES (:symbol, :resolution, :bucketStart, :price, :price, :price, :price, 1) " +
+            "ON CONFLICT (symbol, resolution, bucket_start) DO UPDATE SET " +
+            "high_price = GREATEST(price_candle.high_price, EXCLUDED.high_price), " +
+            "low_price = LEAST(price_candle.low_price, EXCLUDED.low_price), " +
+            "close_price = EXCLUDED.close_price, samples = price_candle.samples + 1", nativeQuery = true)
+    int record(@Param("symbol") String symbol, @Param("resolution") String resolution,
+               @Param("bucketStart") LocalDateTime bucketStart, @Param("price") double price);
+
+    // Backward range scan of the primary key, stopping at the first row
+    Optional<PriceCandle> findFirstBySymbolAndResolutionAndBucketStartLessThanEqualOrderByBucketStartDesc(
+            String symbol, PriceResolution resolution, LocalDateTime time);
+
+    List<PriceCandle> findBySymbolAndResolutionAndBucketStartBetweenOrderByBucketStart(
+            String symbol, PriceResolution resolution, LocalDateTime from, LocalDateTime to, Pageable pageable);
+
+    // Projected rather than loaded as entities, so replaying long ranges never fills the persistence context
+    @Query("SELECT new com.swisspost.dto.PriceCandleRow(c.symbol, c.resolution, c.bucketStart, c.openPrice, " +
+            "c.highPrice, c.lowPrice, c.closePrice) FROM PriceCandle c WHERE c.symbol IN :symbols " +
+            "AND c.resolution = :resolution AND c.bucketStart >= :from AND c.bucketStart < :to ORDER BY c.bucketStart")
+    List<PriceCandleRow> findCandleRows(@Param("symbols") Collection<String> symbols,
+                                        @Param("resolution") PriceResolution resolution,
+                                        @Param("from") LocalDateTime from, @Param("to") LocalDateTime to);
+
+    @Modifying
+    @Query("DELETE FROM PriceCandle c WHERE c.resolution = :resolution AND c.bucketStart < :before")
+    int deleteOlderThan(@Param("resolution") PriceResolution resolution, @Param("before") LocalDateTime before);
+
+}
@@ -0,0 +1,26 @@
+package com.swisspost.repository;
+
+import com.swisspost.model.TrackedSymbol;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface TrackedSymbolRepository extends JpaRepository<TrackedSymbol, String> {
+
+    // The tracked symbols some wallet still holds, one probe of the asset symbol index per tracked symbol
+    @Query("SELECT s.symbol FROM TrackedSymbol s WHERE EXISTS (SELECT a.id FROM Asset a WHERE a.symbol = s.symbol)")
+    List<String> findHeldSymbols();
+
+    // A no-op when the symbol is already tracked, without a read first or a failed insert under concurrency
+    @Modifying
+    @Query(value = "INSERT INTO tracked_symbol (symbol, first_traded_at) VALUES (:symbol, :tradedAt) " +
+            "ON CONFLICT (symbol) DO NOTHING", nativeQuery = true)
+    int track(@Param("symbol") String symbol, @Param("tradedAt") LocalDateTime tradedAt);
+
+}
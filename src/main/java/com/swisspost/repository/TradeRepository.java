@@ -0,0 +1,45 @@
+package com.swisspost.repository;
+
+import com.swisspost.dto.TradeRow;
+import com.swisspost.model.Trade;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface TradeRepository extends JpaRepository<Trade, Long> {
+
+    @Query("SELECT DISTINCT t.symbol FROM Trade t WHERE t.walletId = :walletId AND t.createdAt < :before")
+    List<String> findSymbolsTradedBefore(@Param("walletId") Long walletId, @Param("before") LocalDateTime before);
+
+    String TRADE_ROWS = "SELECT new com.swisspost.dto.TradeRow(t.id, t.createdAt, t.symbol, t.side, t.quantity, " +
+            "t.price) FROM Trade t WHERE t.walletId = :walletId ";
+
+    // Keyset pages of a wallet's ledger, served by the (walletId, id) and (walletId, createdAt, id) indexes
+
+    @Query(TRADE_ROWS + "AND t.id > :afterId ORDER BY t.id")
+    List<TradeRow> findTradeRowsAfter(@Param("walletId") Long walletId, @Param("afterId") long afterId,
+                                      Pageable pageable);
+
+    @Query(TRADE_ROWS + "AND t.id < :beforeId ORDER BY t.id DESC")
+    List<TradeRow> findTradeRowsBefore(@Param("walletId") Long walletId, @Param("beforeId") long beforeId,
+                                       Pageable pageable);
+
+    @Query(TRADE_ROWS + "AND (t.createdAt > :createdAt OR (t.createdAt = :createdAt AND t.id > :id)) " +
+            "ORDER BY t.createdAt, t.id")
+    List<TradeRow> findTradeRowsAfterCreatedAt(@Param("walletId") Long walletId,
+                                               @Param("createdAt") LocalDateTime createdAt,
+                                               @Param("id") long id, Pageable pageable);
+
+    @Query(TRADE_ROWS + "AND (t.createdAt < :createdAt OR (t.createdAt = :createdAt AND t.id < :id)) " +
+            "ORDER BY t.createdAt DESC, t.id DESC")
+    List<TradeRow> findTradeRowsBeforeCreatedAt(@Param("walletId") Long walletId,
+                                                @Param("createdAt") LocalDateTime createdAt,
+                                                @Param("id") long id, Pageable pageable);
+
+}
@@ -1,10 +1,26 @@
 package com.swisspost.repository;
 
 import com.swisspost.model.Wallet;
+import jakarta.persistence.LockModeType;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Optional;
+
 @Repository
 public interface WalletRepository extends JpaRepository<Wallet, Long> {
 
+    Optional<Wallet> findByOwnerKey(String ownerKey);
+
+    // Serializes the trades of a wallet and bumps its version once per trade
+    @Lock(LockModeType.PESSIMISTIC_FORCE_INCREMENT)
+    Optional<Wallet> findWithLockById(Long id);
+
+    // The committed version, read from the database rather than the persistence context
+    @Query("SELECT w.version FROM Wallet w WHERE w.id = :id")
+    Optional<Long> findVersionById(@Param("id") Long id);
+
 }
@@ -0,0 +1,104 @@
+package com.swisspost.service;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * CoinCap asset ids of the listed symbols. A full reload replaces the whole map at once, so readers
+ * never see a partially loaded catalog; symbols found between two reloads are added one at a time.
+ */
+public class AssetCatalog {
+
+    /**
+     * Changes of a full reload against the previous catalog.
+     */
+    record Diff(int added, int removed, int changed) {
+    }
+
+    private volatile Map<String, String> symbolToId = Map.of();
+
+    // Symbols searched for and not listed, not searched for again until the next reload
+    private final Set<String> unlisted = ConcurrentHashMap.newKeySet();
+
+    private final int maxSearches;
+
+    // Searches left until the next reload; each marks at most one symbol unlisted, which bounds the set
+    private final AtomicInteger searchesLeft;
+
+    AssetCatalog(int maxSearches) {
+        this.maxSearches = Math.max(0, maxSearches);
+        this.searchesLeft = new AtomicInteger(this.maxSearches);
+    }
+
+    /**
+     * @param symbol The symbol, in any case. Upper-case symbols are resolved without allocating.
+     * @return The CoinCap asset id, or null when the symbol is not in the catalog.
+     */
+    public String assetIdOf(String symbol) {
+        Map<String, String> current = symbolToId;
+        String assetId = current.get(symbol);
+        return assetId != null ? assetId : current.get(symbol.toUpperCase());
+    }
+
+    public boolean isEmpty() {
+        return symbolToId.isEmpty();
+    }
+
+    public int size() {
+        return symbolToId.size();
+    }
+
+    /**
+     * Take one of the searches left until the next reload.
+     *
+     * @return Whether the symbol may be searched for: it was not found unlisted already and the searches
+     * are not used up.
+     */
+    boolean tryStartSearch(String symbol) {
+        return !unlisted.contains(symbol) && searchesLeft.getAndUpdate(left -> Math.max(0, left - 1)) > 0;
+    }
+
+    void markUnlisted(String symbol) {
+        unlisted.add(symbol);
+    }
+
+    /**
+     * Add a symbol found between two reloads.
+     */
+    synchronized void add(String symbol, String assetId) {
+        Map<String, String> next = new HashMap<>(symbolToId);
+        next.put(symbol, assetId);
+        symbolToId = Map.copyOf(next);
+    }
+
+    /**
+     * Replace the catalog with the result of a full reload.
+     */
+    synchronized Diff replace(Map<String, String> loaded) {
+        Map<String, String> previous = symbolToId;
+        int added = 0;
+        int changed = 0;
+        for (Map.Entry<String, String> entry : loaded.entrySet()) {
+            String previousId = previous.get(entry.getKey());
+            if (previousId == null) {
+                added++;
+            } else if (!previousId.equals(entry.getValue())) {
+                changed++;
+            }
+        }
+        int removed = 0;
+        for (String symbol : previous.keySet()) {
+            if (!loaded.containsKey(symbol)) {
+                removed++;
+            }
+        }
+
+        symbolToId = Map.copyOf(loaded);
+        unlisted.clear();
+        searchesLeft.set(maxSearches);
+        return new Diff(added, removed, changed);
+    }
+}
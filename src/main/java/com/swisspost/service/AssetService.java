@@ -2,6 +2,8 @@ package com.swisspost.service;
 
 import org.springframework.stereotype.Service;
 
+import java.util.Collection;
+
 @Service
 public class AssetService {
 
@@ -14,4 +16,23 @@ public class AssetService {
     public double getCurrentAssetPrice(String symbol) {
         return priceFetcher.fetchLatestPrice(symbol);
     }
+
+    /**
+     * Price the symbols that are not refreshed by the ticks yet. Sends requests to the price source,
+     * call it before opening the transaction of a trade.
+     */
+    public void priceSymbols(Collection<String> symbols) {
+        priceFetcher.priceSymbols(symbols);
+    }
+
+    /**
+     * Refresh the symbols with every tick, once positions holding them are committed.
+     */
+    public void trackSymbols(Collection<String> symbols) {
+        priceFetcher.trackSymbols(symbols);
+    }
+
+    public PriceSnapshot getPriceSnapshot() {
+        return priceFetcher.getLatestSnapshot();
+    }
 }
@@ -11,10 +11,14 @@ public class AssetValidator {
     static void validate(Asset asset) {
         Objects.requireNonNull(asset, "Asset cannot be null");
 
-        if (asset.getSymbol() == null || asset.getSymbol().isBlank()) {
+        validate(asset.getSymbol(), asset.getQuantity());
+    }
+
+    static void validate(String symbol, double quantity) {
+        if (symbol == null || symbol.isBlank()) {
             throw new InvalidSymbolException("Asset symbol cannot be null or blank");
         }
-        if (asset.getQuantity() <= 0) {
+        if (quantity <= 0) {
             throw new InvalidAssetQuantityException("Asset quantity must be greater than 0");
         }
     }
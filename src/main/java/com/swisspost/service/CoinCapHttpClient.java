@@ -0,0 +1,108 @@
+package com.swisspost.service;
+
+import com.swisspost.config.CoinCapProperties;
+import com.swisspost.exception.PriceSourceException;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * {@link PriceSourceClient} backed by the JDK {@link HttpClient}. The client keeps its connections
+ * alive and pooled, multiplexes concurrent requests over HTTP/2 and never blocks a thread while
+ * waiting for CoinCap. Bodies are buffered before they are handed out, so the whole response, not
+ * only its headers, arrives within {@code coincap.readTimeout} and parsers never wait on the network.
+ */
+@Component
+public class CoinCapHttpClient implements PriceSourceClient {
+
+    private final CoinCapProperties coinCapProperties;
+
+    private final HttpClient httpClient;
+
+    public CoinCapHttpClient(CoinCapProperties coinCapProperties) {
+        this.coinCapProperties = coinCapProperties;
+        this.httpClient = HttpClient.newBuilder()
+                .version(coinCapProperties.isHttp2() ? HttpClient.Version.HTTP_2 : HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofMillis(coinCapProperties.getConnectTimeout()))
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .build();
+    }
+
+    @Override
+    public CompletableFuture<InputStream> get(String path) {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(coinCapProperties.getBaseUrl() + path))
+                .timeout(Duration.ofMillis(coinCapProperties.getReadTimeout()))
+                .header("Accept", "application/json")
+                .header("Accept-Encoding", "gzip")
+                .GET()
+                .build();
+
+        CompletableFuture<HttpResponse<byte[]>> exchange =
+                httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofByteArray());
+        CompletableFuture<InputStream> response = exchange.thenApply(CoinCapHttpClient::decodeBody);
+        // The request timeout only bounds the wait for the headers, a body trickling in is cut off here
+        CompletableFuture.delayedExecutor(coinCapProperties.getReadTimeout(), TimeUnit.MILLISECONDS).execute(() -> {
+            if (response.completeExceptionally(new HttpTimeoutException(String.format(
+                    "Response from %s not received within %d ms", request.uri(), coinCapProperties.getReadTimeout())))) {
+                exchange.cancel(true);
+            }
+        });
+        return response;
+    }
+
+    private static InputStream decodeBody(HttpResponse<byte[]> response) {
+        InputStream body = new ByteArrayInputStream(response.body());
+        try {
+            if (response.statusCode() < 200 || response.statusCode() >= 300) {
+                long retryAfter = response.headers().firstValue("Retry-After")
+                        .map(CoinCapHttpClient::retryAfterMillis)
+                        .orElse(-1L);
+                throw new PriceSourceException(response.statusCode(),
+                        String.format("Price source responded with status %d for %s",
+                                response.statusCode(), response.uri()),
+                        retryAfter);
+            }
+            boolean gzipped = response.headers()
+                    .firstValue("Content-Encoding")
+                    .map("gzip"::equalsIgnoreCase)
+                    .orElse(false);
+            return gzipped ? new GZIPInputStream(body) : body;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Parse a Retry-After header, given either in seconds or as an HTTP date.
+     *
+     * @return The time to wait in milliseconds, or -1 when the header cannot be parsed.
+     */
+    static long retryAfterMillis(String retryAfter) {
+        try {
+            return Math.max(0, Long.parseLong(retryAfter.trim()) * 1000);
+        } catch (NumberFormatException e) {
+            try {
+                Instant until = ZonedDateTime.parse(retryAfter.trim(), DateTimeFormatter.RFC_1123_DATE_TIME).toInstant();
+                return Math.max(0, Duration.between(Instant.now(), until).toMillis());
+            } catch (DateTimeParseException notADate) {
+                return -1;
+            }
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.swisspost.service;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Streaming parser for CoinCap asset responses. Only the {@code id}, {@code symbol} and
+ * {@code priceUsd} fields are read straight from the response stream, every other field is skipped
+ * without building a document tree.
+ */
+public final class CoinCapResponseParser {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private CoinCapResponseParser() {
+    }
+
+    @FunctionalInterface
+    interface AssetHandler {
+
+        /**
+         * @param priceUsd The price, or {@link Double#NaN} when the asset has none.
+         */
+        void onAsset(String id, String symbol, double priceUsd);
+    }
+
+    /**
+     * Parse a {@code /assets} response into a map of upper-case symbols to CoinCap asset IDs. Assets
+     * are listed by rank, a symbol shared by several assets maps to the highest ranked one.
+     */
+    public static Map<String, String> parseSymbolToIds(InputStream body) {
+        Map<String, String> symbolToIds = new HashMap<>();
+        readAssets(body, (id, symbol, priceUsd) -> {
+            if (id != null && symbol != null) {
+                symbolToIds.putIfAbsent(symbol.toUpperCase(), id);
+            }
+        });
+        return symbolToIds;
+    }
+
+    /**
+     * Parse a {@code /assets?ids=...} response into a map of asset IDs to prices in USD.
+     * Assets without a price are left out.
+     */
+    public static Map<String, Double> parsePrices(InputStream body) {
+        Map<String, Double> prices = new HashMap<>();
+        readAssets(body, (id, symbol, priceUsd) -> {
+            if (id != null && !Double.isNaN(priceUsd)) {
+                prices.put(id, priceUsd);
+            }
+        });
+        return prices;
+    }
+
+    /**
+     * Parse a single {@code /assets/{id}} response into its price in USD.
+     */
+    public static double parsePrice(InputStream body) {
+        double[] price = {Double.NaN};
+        readAssets(body, (id, symbol, priceUsd) -> price[0] = priceUsd);
+        if (Double.isNaN(price[0])) {
+            throw new IllegalArgumentException("Response does not contain a priceUsd value");
+        }
+        return price[0];
+    }
+
+    /**
+     * Walk the {@code data} member of a CoinCap response, which is either a single asset object
+     * or an array of them, and hand every asset to the handler. The stream is always closed.
+     */
+    static void readAssets(InputStream body, AssetHandler handler) {
+        try (body; JsonParser parser = JSON_FACTORY.createParser(body)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IllegalArgumentException("Expected a JSON object response");
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken value = parser.nextToken();
+                if ("data".equals(field) && value == JsonToken.START_ARRAY) {
+                    while (parser.nextToken() == JsonToken.START_OBJECT) {
+                        readAsset(parser, handler);
+                    }
+                } else if ("data".equals(field) && value == JsonToken.START_OBJECT) {
+                    readAsset(parser, handler);
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void readAsset(JsonParser parser, AssetHandler handler) throws IOException {
+        String id = null;
+        String symbol = null;
+        double priceUsd = Double.NaN;
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            switch (field) {
+                case "id" -> id = parser.getValueAsString();
+                case "symbol" -> symbol = parser.getValueAsString();
+                case "priceUsd" -> priceUsd = value == JsonToken.VALUE_NULL
+                        ? Double.NaN
+                        : parser.getValueAsDouble(Double.NaN);
+                default -> parser.skipChildren();
+            }
+        }
+        handler.onAsset(id, symbol, priceUsd);
+    }
+}
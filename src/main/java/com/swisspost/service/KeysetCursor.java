@@ -0,0 +1,46 @@
+package com.swisspost.service;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Base64;
+
+/**
+ * Position of the last row of a keyset page. The id breaks ties between rows created at the same time,
+ * and the cursor is passed to clients as an opaque string.
+ */
+public record KeysetCursor(LocalDateTime createdAt, long id) {
+
+    // Bounds that sort before and after every stored row
+    private static final LocalDateTime EARLIEST = LocalDateTime.of(1970, 1, 1, 0, 0);
+    private static final LocalDateTime LATEST = LocalDateTime.of(9999, 12, 31, 23, 59, 59);
+
+    private static final String SEPARATOR = "~";
+
+    /**
+     * @return Whether a row created at that time is listed from the {@link #first(boolean)} cursors.
+     */
+    static boolean covers(LocalDateTime createdAt) {
+        return !createdAt.isBefore(EARLIEST) && !createdAt.isAfter(LATEST);
+    }
+
+    /**
+     * @return The cursor to start a listing from.
+     */
+    static KeysetCursor first(boolean ascending) {
+        return ascending ? new KeysetCursor(EARLIEST, 0) : new KeysetCursor(LATEST, Long.MAX_VALUE);
+    }
+
+    String encode() {
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString((createdAt + SEPARATOR + id).getBytes(StandardCharsets.UTF_8));
+    }
+
+    static KeysetCursor decode(String cursor) {
+        try {
+            String[] parts = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split(SEPARATOR);
+            return new KeysetCursor(LocalDateTime.parse(parts[0]), Long.parseLong(parts[1]));
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid cursor: " + cursor, e);
+        }
+    }
+}
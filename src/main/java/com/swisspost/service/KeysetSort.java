@@ -0,0 +1,24 @@
+package com.swisspost.service;
+
+/**
+ * Keys a paginated listing can be ordered by.
+ */
+public enum KeysetSort {
+
+    ID,
+    // Creation time, ties broken by id
+    CREATED_AT;
+
+    /**
+     * @param name The key name, in any case (e.g., id, createdAt).
+     */
+    public static KeysetSort of(String name) {
+        String normalized = name.replace("_", "");
+        for (KeysetSort sort : values()) {
+            if (sort.name().replace("_", "").equalsIgnoreCase(normalized)) {
+                return sort;
+            }
+        }
+        throw new IllegalArgumentException("Unsupported sort key: " + name);
+    }
+}
@@ -0,0 +1,21 @@
+package com.swisspost.service;
+
+/**
+ * Value of all holdings of one symbol in a wallet at one price snapshot.
+ *
+ * @param costBasis    The total purchase value of the held quantity.
+ * @param currentValue The value of the held quantity at the snapshot price.
+ */
+public record PositionValuation(String symbol, double quantity, double costBasis, double currentValue) {
+
+    public double profitAndLoss() {
+        return currentValue - costBasis;
+    }
+
+    /**
+     * @return The growth in percent since purchase, or {@link Double#NaN} without a cost basis.
+     */
+    public double growthRate() {
+        return costBasis > 0 ? ((currentValue - costBasis) * 100) / costBasis : Double.NaN;
+    }
+}
@@ -0,0 +1,24 @@
+package com.swisspost.service;
+
+import java.util.List;
+
+/**
+ * The prices one {@link PriceFetcher} publication changed, along with the full snapshot they lead to.
+ * Listeners that only handle the changed symbols can tell from the {@link #sequence()} whether they
+ * missed a delta, and must then compare the snapshot against the last one they handled instead.
+ *
+ * @param sequence       Position of the delta among all published ones, starting at 1 and increasing
+ *                       by one per delta.
+ * @param snapshot       The prices after the change.
+ * @param changedSymbols The symbols whose price changed since the previous delta, including symbols
+ *                       priced for the first time.
+ */
+public record PriceDelta(long sequence, PriceSnapshot snapshot, List<String> changedSymbols) {
+
+    /**
+     * @return Whether this delta directly follows the one with the given sequence number.
+     */
+    public boolean follows(long previousSequence) {
+        return sequence == previousSequence + 1;
+    }
+}
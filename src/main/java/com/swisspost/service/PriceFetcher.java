@@ -1,38 +1,143 @@
 package com.swisspost.service;
 
+import com.swisspost.config.SchedulerProperties;
+import com.swisspost.dto.PriceQuote;
 import com.swisspost.exception.InvalidSymbolException;
-import com.swisspost.repository.AssetRepository;
-import lombok.AllArgsConstructor;
-import org.json.JSONObject;
+import com.swisspost.exception.PriceSourceUnavailableException;
+import com.swisspost.repository.TrackedSymbolRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestTemplate;
 
+import java.io.InputStream;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 import java.util.Map;
 
 @Service
-@AllArgsConstructor
 public class PriceFetcher {
 
-    private final String COIN_CAP_API_URL = "https://api.coincap.io/v2/assets";
+    private static final String ASSETS_PATH = "/assets";
 
-    private final RestTemplate restTemplate = new RestTemplate();
+    // Search results per symbol lookup, enough for the symbol among assets of similar names
+    private static final int SEARCH_LIMIT = 20;
 
-    // Cache to store the latest prices of symbols
-    private final Map<String, Double> symbolPriceCache = new ConcurrentHashMap<>();
+    private final PriceSourceClient priceSourceClient;
 
-    private final AssetRepository assetRepository;
+    private final TrackedSymbolRepository trackedSymbolRepository;
 
-    private final List<String> assetSymbols;
+    // Dense int ids for every priced symbol, and the latest price of each id
+    private final SymbolRegistry symbolRegistry = new SymbolRegistry();
 
-    private final Map<String, String> symbolToIdMap = new ConcurrentHashMap<>();
+    private final PriceTable priceTable = new PriceTable();
 
-    public PriceFetcher(AssetRepository assetRepository) {
-        this.assetRepository = assetRepository;
-        assetSymbols = new ArrayList<>(this.assetRepository.findAllAssetSymbols());
+    // When the price source last returned the price of each symbol id, moved or not, in epoch ms
+    private final Map<Integer, Long> refreshedAt = new ConcurrentHashMap<>();
+
+    // Immutable view of the price table, published once per tick
+    private volatile PriceSnapshot latestSnapshot = PriceSnapshot.empty(symbolRegistry);
+
+    private final SchedulerProperties schedulerProperties;
+
+    // Symbols held by at least one wallet, the only ones a tick refreshes, with the sequence number they were tracked at
+    private final Map<String, Long> trackedSymbols = new ConcurrentHashMap<>();
+
+    private final AtomicLong trackingSequence = new AtomicLong();
+
+    // CoinCap asset id of every listed symbol, reloaded on its own schedule
+    private final AssetCatalog assetCatalog;
+
+    // The running or last full reload of the catalog
+    private final AtomicReference<CompletableFuture<AssetCatalog.Diff>> catalogReload = new AtomicReference<>();
+
+    // Long-lived, bounded pool that parses and applies the responses of all refresh ticks
+    private final ThreadPoolExecutor refreshExecutor;
+
+    private final AtomicBoolean refreshRunning = new AtomicBoolean();
+
+    private volatile List<? extends Future<?>> inFlightTasks = List.of();
+
+    private final Timer tickTimer;
+
+    // Refreshed prices not published because they moved less than the change threshold
+    private final Counter unchangedPrices;
+
+    // Symbols published as changed, over all deltas
+    private final Counter publishedChanges;
+
+    // Sequence number of the last published delta, guarded by publishSnapshot
+    private long deltaSequence;
+
+    // Version of the price table last compared against the published snapshot, guarded by publishSnapshot
+    private long comparedVersion;
+
+    // Notified of every published delta, in registration order
+    private final List<Consumer<PriceDelta>> deltaListeners = new CopyOnWriteArrayList<>();
+
+    // Notified of every refresh, including the prices the change threshold kept from being published
+    private final List<Consumer<PriceRefresh>> refreshListeners = new CopyOnWriteArrayList<>();
+
+    public PriceFetcher(TrackedSymbolRepository trackedSymbolRepository, SchedulerProperties schedulerProperties,
+                        PriceSourceClient priceSourceClient, MeterRegistry meterRegistry) {
+        this.schedulerProperties = schedulerProperties;
+        this.assetCatalog = new AssetCatalog(schedulerProperties.getMaxCatalogSearches());
+        this.priceSourceClient = priceSourceClient;
+        this.trackedSymbolRepository = trackedSymbolRepository;
+        trackSymbols(trackedSymbolRepository.findHeldSymbols());
+
+        int threads = Math.max(1, schedulerProperties.getRefreshThreads());
+        this.refreshExecutor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, schedulerProperties.getRefreshQueueCapacity())),
+                refreshThreadFactory());
+
+        this.tickTimer = Timer.builder("price.refresh.tick")
+                .description("Duration of a price refresh tick")
+                .register(meterRegistry);
+        this.unchangedPrices = Counter.builder("price.refresh.unchanged")
+                .description("Refreshed prices not published because they moved less than the change threshold")
+                .register(meterRegistry);
+        this.publishedChanges = Counter.builder("price.published.changes")
+                .description("Symbol prices published as changed")
+                .register(meterRegistry);
+        Gauge.builder("price.refresh.queue.depth", refreshExecutor, executor -> executor.getQueue().size())
+                .description("Price refresh tasks waiting for a thread")
+                .register(meterRegistry);
+        Gauge.builder("price.refresh.active", refreshExecutor, ThreadPoolExecutor::getActiveCount)
+                .description("Price refresh tasks currently running")
+                .register(meterRegistry);
+        Gauge.builder("price.tracked.symbols", trackedSymbols, Map::size)
+                .description("Symbols refreshed by every tick")
+                .register(meterRegistry);
+        Gauge.builder("price.catalog.size", assetCatalog, AssetCatalog::size)
+                .description("Symbols listed in the asset catalog")
+                .register(meterRegistry);
+    }
+
+    private static ThreadFactory refreshThreadFactory() {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, "price-refresh-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
     }
 
     /**
@@ -45,104 +150,555 @@ public class PriceFetcher {
         if (symbol == null || symbol.isBlank())
             throw new InvalidSymbolException("Price not available for symbol: " + symbol);
 
-        String upperCaseSymbol = symbol.toUpperCase();
-        Double price = symbolPriceCache.get(upperCaseSymbol);
-        if (price == null) {
+        double price = priceTable.get(symbolRegistry.idOf(symbol));
+        if (Double.isNaN(price)) {
             throw new InvalidSymbolException("Price not available for symbol: " + symbol);
         }
         return price;
     }
 
+    /**
+     * Fetch the latest price of a cryptocurrency with the age of its last refresh. Prices keep being
+     * served while the price source is unavailable, reported stale once older than
+     * {@code scheduler.priceStaleAfter}.
+     *
+     * @param symbol The cryptocurrency symbol (e.g., BTC, ETH).
+     */
+    public PriceQuote quote(String symbol) {
+        double price = fetchLatestPrice(symbol);
+        Long refreshed = refreshedAt.get(symbolRegistry.idOf(symbol));
+        long now = System.currentTimeMillis();
+        long age = refreshed == null ? Long.MAX_VALUE : Math.max(0, now - refreshed);
+        return new PriceQuote(symbol.toUpperCase(), price, refreshed == null ? null : Instant.ofEpochMilli(refreshed),
+                age, age > schedulerProperties.getPriceStaleAfter());
+    }
+
+    /**
+     * @return The prices published by the latest refresh tick, for valuations that must not mix
+     * prices of different ticks.
+     */
+    public PriceSnapshot getLatestSnapshot() {
+        return latestSnapshot;
+    }
+
+    public SymbolRegistry getSymbolRegistry() {
+        return symbolRegistry;
+    }
+
+    public PriceTable getPriceTable() {
+        return priceTable;
+    }
+
     /**
      * Scheduled task to update the prices of all symbols every X seconds.
      */
     @Scheduled(fixedRateString = "${scheduler.fixedDelay}")
     public void updatePrices() {
-        // Load symbol-to-ID map if it is empty
-        if (symbolToIdMap.isEmpty()) {
-            loadSymbolToIdMap();
+        // Never let two ticks overlap, a slow upstream must not make refreshes pile up
+        if (!refreshRunning.compareAndSet(false, true)) {
+            System.err.println("Skipping price refresh, the previous tick is still running.");
+            return;
+        }
+        long tickStart = System.nanoTime();
+        Map<String, Double> refreshed = new ConcurrentHashMap<>();
+        try {
+            cancelInFlightTasks();
+
+            // Only the first tick waits for the catalog, later reloads run in the background
+            if (assetCatalog.isEmpty()) {
+                try {
+                    awaitCatalog();
+                } catch (RuntimeException e) {
+                    logRefreshFailure("Skipping price refresh, the asset catalog is not loaded", e);
+                    return;
+                }
+            }
+
+            if (schedulerProperties.isBatchEnabled()) {
+                updatePricesInBatches(refreshed);
+            } else {
+                updatePricesPerAsset(refreshed);
+            }
+        } finally {
+            publishSnapshot();
+            publishRefresh(refreshed);
+            tickTimer.record(System.nanoTime() - tickStart, TimeUnit.NANOSECONDS);
+            refreshRunning.set(false);
+        }
+    }
+
+    // Ticks and newly tracked symbols both publish, a slower publisher must not replace a newer snapshot
+    private synchronized void publishSnapshot() {
+        if (priceTable.version() == comparedVersion) {
+            return;
+        }
+        PriceSnapshot snapshot = priceTable.snapshot(symbolRegistry);
+        comparedVersion = snapshot.getVersion();
+        List<String> changedSymbols = snapshot.changedSymbols(latestSnapshot);
+        // Rewritten with the same prices, the published snapshot is still exact and is only compared again
+        // once the table is written to
+        if (changedSymbols.isEmpty()) {
+            return;
         }
+        latestSnapshot = snapshot;
+        PriceDelta delta = new PriceDelta(++deltaSequence, snapshot, changedSymbols);
+        publishedChanges.increment(changedSymbols.size());
+        for (Consumer<PriceDelta> listener : deltaListeners) {
+            try {
+                listener.accept(delta);
+            } catch (RuntimeException e) {
+                System.err.println("Price delta listener failed: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Register a listener for the changes of every newly published snapshot. Listeners run on the
+     * publishing thread while publication is blocked, they must hand any slow work off to their own
+     * thread.
+     */
+    public void addDeltaListener(Consumer<PriceDelta> listener) {
+        deltaListeners.add(listener);
+    }
+
+    private void publishRefresh(Map<String, Double> refreshed) {
+        if (refreshed.isEmpty()) {
+            return;
+        }
+        PriceRefresh refresh = new PriceRefresh(Instant.now(), Map.copyOf(refreshed));
+        for (Consumer<PriceRefresh> listener : refreshListeners) {
+            try {
+                listener.accept(refresh);
+            } catch (RuntimeException e) {
+                System.err.println("Price refresh listener failed: " + e.getMessage());
+            }
+        }
+    }
 
-        ExecutorService executorService = Executors.newFixedThreadPool(3);
+    /**
+     * Register a listener for every price returned by the price source, moved past the change
+     * threshold or not. Listeners run on the refreshing thread, they must hand any slow work off to
+     * their own thread.
+     */
+    public void addRefreshListener(Consumer<PriceRefresh> listener) {
+        refreshListeners.add(listener);
+    }
+
+    /**
+     * Whether a refreshed price differs enough from the published one to be published, by more than
+     * {@code scheduler.priceChangeThreshold} relative to it. Prices of symbols without one always are.
+     */
+    private boolean hasMoved(int symbolId, double price) {
+        double published = priceTable.get(symbolId);
+        if (Double.isNaN(published)) {
+            return true;
+        }
+        if (price == published) {
+            return false;
+        }
+        double threshold = schedulerProperties.getPriceChangeThreshold();
+        return threshold <= 0 || Math.abs(price - published) >= threshold * Math.abs(published);
+    }
+
+    /**
+     * Start refreshing symbols with every tick. Only registers the symbols, without any request; call
+     * it once the positions holding them are committed.
+     */
+    public void trackSymbols(Collection<String> symbols) {
+        long sequence = trackingSequence.incrementAndGet();
+        for (String symbol : symbols) {
+            if (symbol != null && !symbol.isBlank()) {
+                trackedSymbols.putIfAbsent(symbol, sequence);
+            }
+        }
+    }
 
-        List<Callable<Void>> tasks = new ArrayList<>();
+    /**
+     * Scheduled task to stop refreshing the symbols no wallet holds any more. Symbols tracked while
+     * the held symbols were read are kept, their positions may not have been visible yet.
+     */
+    @Scheduled(fixedDelayString = "${scheduler.trackedSymbolsRefreshInterval:300000}",
+            initialDelayString = "${scheduler.trackedSymbolsRefreshInterval:300000}")
+    public void refreshTrackedSymbols() {
+        long start = trackingSequence.incrementAndGet();
+        Set<String> held = new HashSet<>(trackedSymbolRepository.findHeldSymbols());
+        trackSymbols(held);
+        List<String> untracked = new ArrayList<>();
+        trackedSymbols.forEach((symbol, trackedAt) -> {
+            if (trackedAt < start && !held.contains(symbol) && trackedSymbols.remove(symbol, trackedAt)) {
+                untracked.add(symbol);
+            }
+        });
+        if (!untracked.isEmpty()) {
+            System.out.println("Stopped refreshing " + untracked.size() + " symbols no wallet holds: " + untracked);
+        }
+    }
 
-        // Fetch prices for all symbols in the cache
-        symbolToIdMap.forEach((symbol, assetId) -> {
-            tasks.add(() -> {
+    /**
+     * Price symbols right away when they are not tracked yet or have no price, so the first trade in a
+     * symbol no wallet holds does not wait for the next tick or use an outdated price. Symbols the price
+     * source does not list are ignored. Sends requests, never call it while holding a lock or a
+     * transaction.
+     */
+    public void priceSymbols(Collection<String> symbols) {
+        Map<String, String> idToSymbol = new HashMap<>();
+        for (String symbol : symbols) {
+            if (symbol == null || symbol.isBlank()) {
+                continue;
+            }
+            if (trackedSymbols.containsKey(symbol) && !Double.isNaN(priceTable.get(symbolRegistry.idOf(symbol)))) {
+                continue;
+            }
+            if (assetCatalog.isEmpty()) {
                 try {
-                    if (getAssetSymbols().contains(symbol)) {
-                        double price = fetchPriceFromApi(assetId);
-                        symbolPriceCache.put(symbol, price);
-                    }
-                } catch (Exception e) {
-                    System.err.println("Error updating price for " + symbol + ": " + e.getMessage());
+                    awaitCatalog();
+                } catch (RuntimeException e) {
+                    System.err.println("Cannot price new symbols: " + e.getMessage());
+                    return;
                 }
-                return null;
-            });
-        });
+            }
+            String assetId = assetCatalog.assetIdOf(symbol);
+            if (assetId == null) {
+                assetId = searchAssetId(symbol);
+            }
+            if (assetId != null) {
+                idToSymbol.put(assetId, symbol);
+            }
+        }
+        if (idToSymbol.isEmpty()) {
+            return;
+        }
 
-        try {
-            List<Future<Void>> futures = executorService.invokeAll(tasks);
+        List<String> assetIds = new ArrayList<>(idToSymbol.keySet());
+        int batchSize = Math.max(1, schedulerProperties.getBatchSize());
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(schedulerProperties.getTaskTimeout());
+        List<Map<String, Double>> responses = new ArrayList<>();
+        for (int from = 0; from < assetIds.size(); from += batchSize) {
+            List<String> batch = assetIds.subList(from, Math.min(from + batchSize, assetIds.size()));
+            try {
+                responses.add(fetchPricesFromApi(batch).get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (ExecutionException | TimeoutException e) {
+                System.err.println("Error pricing new symbols " + batch + ": " + e.getMessage());
+            }
+        }
+        Map<String, Double> refreshed = new HashMap<>();
+        applyPrices(idToSymbol, responses, refreshed);
+        publishSnapshot();
+        publishRefresh(refreshed);
+    }
 
-            // Optionally: Wait for all tasks to complete (or handle results)
-            for (Future<Void> future : futures) {
-                try {
-                    future.get();
-                } catch (ExecutionException e) {
-                    System.err.println("Task execution failed: " + e.getMessage());
+    /**
+     * Refresh all tracked symbols with one request per chunk of asset ids and publish the
+     * new prices as a single version of the price table.
+     */
+    private void updatePricesInBatches(Map<String, Double> refreshed) {
+        Map<String, String> idToSymbol = trackedAssetIds();
+        if (idToSymbol.isEmpty()) {
+            return;
+        }
+
+        List<String> assetIds = new ArrayList<>(idToSymbol.keySet());
+        int batchSize = Math.max(1, schedulerProperties.getBatchSize());
+
+        // All batches are in flight at once, the client multiplexes them over its pooled connections
+        List<CompletableFuture<Map<String, Double>>> tasks = new ArrayList<>();
+        for (int from = 0; from < assetIds.size(); from += batchSize) {
+            List<String> batch = assetIds.subList(from, Math.min(from + batchSize, assetIds.size()));
+            tasks.add(fetchPricesFromApi(batch)
+                    .exceptionally(e -> {
+                        logRefreshFailure("Error updating prices for batch " + batch, e);
+                        return Map.of();
+                    }));
+        }
+
+        applyPrices(idToSymbol, awaitRefreshTasks(tasks), refreshed);
+    }
+
+    /**
+     * Write the prices of several responses that moved past the change threshold into the price table
+     * as a single version.
+     *
+     * @param idToSymbol The symbol of every requested asset id; prices of other ids are ignored.
+     * @param refreshed  Receives every refreshed price, moved or not.
+     */
+    private void applyPrices(Map<String, String> idToSymbol, List<Map<String, Double>> responses,
+                             Map<String, Double> refreshed) {
+        int[] symbolIds = new int[idToSymbol.size()];
+        double[] refreshedPrices = new double[idToSymbol.size()];
+        int count = 0;
+        for (Map<String, Double> prices : responses) {
+            for (Map.Entry<String, Double> price : prices.entrySet()) {
+                String symbol = idToSymbol.get(price.getKey());
+                if (symbol == null || count == symbolIds.length) {
+                    continue;
+                }
+                int symbolId = symbolRegistry.register(symbol);
+                refreshedAt.put(symbolId, System.currentTimeMillis());
+                refreshed.put(symbol, price.getValue());
+                if (hasMoved(symbolId, price.getValue())) {
+                    symbolIds[count] = symbolId;
+                    refreshedPrices[count] = price.getValue();
+                    count++;
+                } else {
+                    unchangedPrices.increment();
                 }
             }
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-            System.err.println("Task execution interrupted: " + e.getMessage());
-        } finally {
-            executorService.shutdown();
         }
+
+        if (count > 0) {
+            priceTable.update(symbolIds, refreshedPrices, count);
+        }
+    }
+
+    private void updatePricesPerAsset(Map<String, Double> refreshed) {
+        List<CompletableFuture<Void>> tasks = new ArrayList<>();
+
+        // Fetch prices for all tracked symbols the price source lists
+        trackedAssetIds().forEach((assetId, symbol) ->
+                tasks.add(fetchPriceFromApi(assetId)
+                        .thenAccept(price -> {
+                            int symbolId = symbolRegistry.register(symbol);
+                            refreshedAt.put(symbolId, System.currentTimeMillis());
+                            refreshed.put(symbol, price);
+                            if (hasMoved(symbolId, price)) {
+                                priceTable.update(symbolId, price);
+                            } else {
+                                unchangedPrices.increment();
+                            }
+                        })
+                        .exceptionally(e -> {
+                            logRefreshFailure("Error updating price for " + symbol, e);
+                            return null;
+                        })));
+
+        awaitRefreshTasks(tasks);
+    }
+
+    /**
+     * @return The symbol of the asset id of every tracked symbol the price source lists.
+     */
+    private Map<String, String> trackedAssetIds() {
+        Map<String, String> idToSymbol = new HashMap<>();
+        for (String symbol : trackedSymbols.keySet()) {
+            String assetId = assetCatalog.assetIdOf(symbol);
+            if (assetId != null) {
+                idToSymbol.put(assetId, symbol);
+            }
+        }
+        return idToSymbol;
+    }
+
+    /**
+     * Wait for the requests of one tick. Each request is given at most {@code scheduler.taskTimeout}
+     * and the whole tick never waits past the next scheduled run; requests that are still running
+     * by then are cancelled.
+     *
+     * @return The results of the requests that completed in time.
+     */
+    private <T> List<T> awaitRefreshTasks(List<CompletableFuture<T>> futures) {
+        inFlightTasks = List.copyOf(futures);
+
+        long tickDeadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(schedulerProperties.getFixedDelay());
+        long taskTimeout = TimeUnit.MILLISECONDS.toNanos(schedulerProperties.getTaskTimeout());
+
+        List<T> results = new ArrayList<>();
+        for (Future<T> future : futures) {
+            long wait = Math.min(taskTimeout, tickDeadline - System.nanoTime());
+            try {
+                results.add(future.get(Math.max(0, wait), TimeUnit.NANOSECONDS));
+            } catch (TimeoutException e) {
+                future.cancel(true);
+                System.err.println("Price refresh task timed out and was cancelled.");
+            } catch (ExecutionException e) {
+                System.err.println("Task execution failed: " + e.getMessage());
+            } catch (CancellationException e) {
+                System.err.println("Task was cancelled: " + e.getMessage());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                System.err.println("Task execution interrupted: " + e.getMessage());
+                cancelInFlightTasks();
+                break;
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Log a failed refresh request, unless the price source client refused it: an open circuit or a
+     * rate limit is logged once by the client, not once per request of every tick.
+     */
+    private static void logRefreshFailure(String message, Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof PriceSourceUnavailableException) {
+                return;
+            }
+        }
+        System.err.println(message + ": " + e.getMessage());
+    }
+
+    private void cancelInFlightTasks() {
+        inFlightTasks.forEach(future -> future.cancel(true));
+        inFlightTasks = List.of();
     }
 
-    public List<String> getAssetSymbols() {
-        return this.assetSymbols;
+    @PreDestroy
+    public void shutdown() {
+        refreshExecutor.shutdownNow();
     }
 
     /**
-     * Load the symbol-to-ID map by fetching all assets from the API.
+     * @return A read-only, live view of the tracked symbols.
      */
-    private void loadSymbolToIdMap() {
+    public Set<String> getAssetSymbols() {
+        return Collections.unmodifiableSet(trackedSymbols.keySet());
+    }
+
+    /**
+     * Scheduled task to reload the whole asset catalog, picking up new listings. The reload runs on the
+     * HTTP client and refresh threads, this method returns right away.
+     */
+    @Scheduled(fixedDelayString = "${scheduler.catalogRefreshInterval:3600000}",
+            initialDelayString = "${scheduler.catalogRefreshInterval:3600000}")
+    public void refreshCatalog() {
+        reloadCatalog();
+    }
+
+    /**
+     * Start a full reload of the asset catalog, page by page, and swap it in once every page is loaded.
+     *
+     * @return The running reload when one is in progress already.
+     */
+    CompletableFuture<AssetCatalog.Diff> reloadCatalog() {
+        CompletableFuture<AssetCatalog.Diff> running = catalogReload.get();
+        if (running != null && !running.isDone()) {
+            return running;
+        }
+        CompletableFuture<AssetCatalog.Diff> reload = new CompletableFuture<>();
+        if (!catalogReload.compareAndSet(running, reload)) {
+            return catalogReload.get();
+        }
+
+        long start = System.nanoTime();
+        CompletableFuture<Map<String, String>> pages;
         try {
-            String response = restTemplate.getForObject(COIN_CAP_API_URL, String.class);
-
-            // Parse the JSON response
-            JSONObject jsonResponse = new JSONObject(response);
-
-            jsonResponse.getJSONArray("data").forEach(item -> {
-                JSONObject asset = (JSONObject) item;
-                String symbol = asset.getString("symbol").toUpperCase();
-                String id = asset.getString("id");
-                symbolToIdMap.put(symbol, id);
-            });
-            System.out.println("Loaded symbol-to-ID map with " + symbolToIdMap.size() + " entries.");
+            pages = loadCatalogPages(0, new HashMap<>());
+        } catch (RuntimeException e) {
+            // Never leave a reload behind that would not complete
+            pages = CompletableFuture.failedFuture(e);
+        }
+        pages.thenApply(assetCatalog::replace)
+                .whenComplete((diff, e) -> {
+                    if (e != null) {
+                        System.err.println("Error reloading the asset catalog: " + e.getMessage());
+                        reload.completeExceptionally(e);
+                        return;
+                    }
+                    System.out.println("Reloaded the asset catalog with " + assetCatalog.size() + " entries in "
+                            + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms: " + diff.added()
+                            + " added, " + diff.removed() + " removed, " + diff.changed() + " changed.");
+                    reload.complete(diff);
+                });
+        return reload;
+    }
+
+    /**
+     * Load the catalog pages from {@code offset} on into {@code loaded}. Paging stops at the first page
+     * that is short or lists no new symbol.
+     */
+    private CompletableFuture<Map<String, String>> loadCatalogPages(int offset, Map<String, String> loaded) {
+        int pageSize = Math.max(1, schedulerProperties.getCatalogPageSize());
+        return priceSourceClient.get(ASSETS_PATH + "?limit=" + pageSize + "&offset=" + offset)
+                .thenApplyAsync(body -> readCatalogPage(body, loaded), refreshExecutor)
+                .thenCompose(page -> page.assetCount() < pageSize || page.newSymbols() == 0
+                        ? CompletableFuture.completedFuture(loaded)
+                        : loadCatalogPages(offset + pageSize, loaded));
+    }
+
+    private record CatalogPage(int assetCount, int newSymbols) {
+    }
+
+    private static CatalogPage readCatalogPage(InputStream body, Map<String, String> loaded) {
+        int[] counts = new int[2];
+        CoinCapResponseParser.readAssets(body, (id, symbol, priceUsd) -> {
+            counts[0]++;
+            // Assets are listed by rank, a symbol keeps the id of its highest ranked asset
+            if (id != null && symbol != null && loaded.putIfAbsent(symbol.toUpperCase(), id) == null) {
+                counts[1]++;
+            }
+        });
+        return new CatalogPage(counts[0], counts[1]);
+    }
+
+    /**
+     * Wait for the running reload of the catalog, or start one.
+     */
+    private void awaitCatalog() {
+        try {
+            reloadCatalog().get(schedulerProperties.getTaskTimeout(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while loading asset data from API", e);
         } catch (Exception e) {
             throw new RuntimeException("Error loading asset data from API", e);
         }
     }
 
+    /**
+     * Resolve a symbol missing from the catalog with a single search request, instead of waiting for
+     * the next full reload. At most {@code scheduler.maxCatalogSearches} symbols are searched for between
+     * two reloads, so made-up symbols can neither flood the price source nor grow the catalog.
+     *
+     * @return The asset id, or null when the price source does not list the symbol or no search is left.
+     */
+    private String searchAssetId(String symbol) {
+        String canonical = symbol.toUpperCase();
+        if (!assetCatalog.tryStartSearch(canonical)) {
+            return null;
+        }
+        try {
+            Map<String, String> found = priceSourceClient
+                    .get(ASSETS_PATH + "?search=" + URLEncoder.encode(canonical, StandardCharsets.UTF_8)
+                            + "&limit=" + SEARCH_LIMIT)
+                    .thenApply(CoinCapResponseParser::parseSymbolToIds)
+                    .get(schedulerProperties.getTaskTimeout(), TimeUnit.MILLISECONDS);
+            String assetId = found.get(canonical);
+            if (assetId == null) {
+                assetCatalog.markUnlisted(canonical);
+            } else {
+                assetCatalog.add(canonical, assetId);
+            }
+            return assetId;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException | TimeoutException e) {
+            System.err.println("Error searching the asset catalog for " + symbol + ": " + e.getMessage());
+            return null;
+        }
+    }
+
     /**
      * Fetch the price of a specific cryptocurrency asset from the API.
      *
      * @param assetId The CoinCap asset ID.
      * @return The latest price in USD.
      */
-    private double fetchPriceFromApi(String assetId) {
-        String url = COIN_CAP_API_URL + "/" + assetId;
-        try {
-            String response = restTemplate.getForObject(url, String.class);
+    private CompletableFuture<Double> fetchPriceFromApi(String assetId) {
+        return priceSourceClient.get(ASSETS_PATH + "/" + assetId)
+                .thenApplyAsync(CoinCapResponseParser::parsePrice, refreshExecutor);
+    }
 
-            JSONObject jsonResponse = new JSONObject(response);
-            JSONObject data = jsonResponse.getJSONObject("data");
-            return data.getDouble("priceUsd");
-        } catch (Exception e) {
-            throw new RuntimeException("Error fetching price for asset ID: " + assetId, e);
-        }
+    /**
+     * Fetch the prices of several cryptocurrency assets from the API in a single request.
+     *
+     * @param assetIds The CoinCap asset IDs.
+     * @return The latest prices in USD keyed by asset ID; assets without a price are left out.
+     */
+    private CompletableFuture<Map<String, Double>> fetchPricesFromApi(Collection<String> assetIds) {
+        return priceSourceClient.get(ASSETS_PATH + "?ids=" + String.join(",", assetIds))
+                .thenApplyAsync(CoinCapResponseParser::parsePrices, refreshExecutor);
     }
 }
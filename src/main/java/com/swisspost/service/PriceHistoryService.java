@@ -0,0 +1,171 @@
+package com.swisspost.service;
+
+import com.swisspost.config.PriceHistoryProperties;
+import com.swisspost.dto.PriceCandleRow;
+import com.swisspost.model.PriceCandle;
+import com.swisspost.model.PriceResolution;
+import com.swisspost.repository.PriceCandleRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalDouble;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Local history of the prices refreshed by {@link PriceFetcher}. Every changed price is rolled up
+ * into minute, hour and day candles as it is refreshed, so historical questions are answered from the
+ * database instead of going back to the price source. Moves below {@code scheduler.priceChangeThreshold}
+ * are recorded too, the threshold only limits what is published. Raw ticks are not kept, the minute
+ * candles are the finest resolution. A bucket in which a price did not move has no candle, the price is
+ * the close of the last candle before it.
+ */
+@Service
+public class PriceHistoryService {
+
+    // Candles returned by one range query at most
+    static final int MAX_CANDLES = 5000;
+
+    private final PriceCandleRepository priceCandleRepository;
+
+    private final PriceHistoryProperties priceHistoryProperties;
+
+    private final TransactionTemplate transactionTemplate;
+
+    // Writes the refreshes off the refreshing thread; when it falls behind, the oldest waiting refresh is dropped
+    private final ThreadPoolExecutor recorder = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(16), runnable -> {
+        Thread thread = new Thread(runnable, "price-history");
+        thread.setDaemon(true);
+        return thread;
+    }, new ThreadPoolExecutor.DiscardOldestPolicy());
+
+    private record RecordedPrice(Instant refreshedAt, double price) {
+    }
+
+    // Last price recorded for every symbol, only read and written by the recorder thread
+    private final Map<String, RecordedPrice> recorded = new HashMap<>();
+
+    private final Counter recordedPrices;
+
+    public PriceHistoryService(PriceFetcher priceFetcher, PriceCandleRepository priceCandleRepository,
+                               PriceHistoryProperties priceHistoryProperties,
+                               PlatformTransactionManager transactionManager, MeterRegistry meterRegistry) {
+        this.priceCandleRepository = priceCandleRepository;
+        this.priceHistoryProperties = priceHistoryProperties;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.recordedPrices = Counter.builder("price.history.recorded")
+                .description("Symbol prices rolled up into the price history")
+                .register(meterRegistry);
+
+        if (priceHistoryProperties.isEnabled()) {
+            priceFetcher.addRefreshListener(refresh -> recorder.execute(() -> record(refresh)));
+        }
+    }
+
+    /**
+     * Roll the refreshed prices that differ from the last recorded ones into the candle of every
+     * resolution, in one transaction. A refresh carries every tracked price, so one dropped while the
+     * recorder fell behind costs that refresh's moves only. Prices refreshed before the last recorded
+     * price of their symbol are skipped.
+     */
+    void record(PriceRefresh refresh) {
+        LocalDateTime time = LocalDateTime.ofInstant(refresh.refreshedAt(), ZoneId.systemDefault());
+        Map<String, Double> changed = new HashMap<>();
+        refresh.prices().forEach((symbol, price) -> {
+            RecordedPrice last = recorded.get(symbol);
+            if (last == null || (last.price() != price && !refresh.refreshedAt().isBefore(last.refreshedAt()))) {
+                changed.put(symbol, price);
+            }
+        });
+        if (changed.isEmpty()) {
+            return;
+        }
+        try {
+            transactionTemplate.executeWithoutResult(status -> changed.forEach((symbol, price) -> {
+                for (PriceResolution resolution : PriceResolution.values()) {
+                    priceCandleRepository.record(symbol, resolution.name(), resolution.bucketStart(time), price);
+                }
+            }));
+            changed.forEach((symbol, price) -> recorded.put(symbol, new RecordedPrice(refresh.refreshedAt(), price)));
+            recordedPrices.increment(changed.size());
+        } catch (RuntimeException e) {
+            System.err.println("Error recording the prices refreshed at " + refresh.refreshedAt() + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Look up the price of a symbol at a past time. Minute candles are only kept for
+     * {@code history.minuteRetentionDays} and hour candles for {@code history.hourRetentionDays}, so
+     * when no finer candle starts at or before {@code time} the hour and then the day candles answer; the
+     * close of such a candle is the last price of its whole hour or day.
+     *
+     * @return The close of the last candle starting at or before {@code time} at the finest resolution
+     * that has one, or empty when the history does not reach back that far.
+     */
+    public OptionalDouble priceAt(String symbol, LocalDateTime time) {
+        for (PriceResolution resolution : PriceResolution.values()) {
+            Optional<PriceCandle> candle = priceCandleRepository
+                    .findFirstBySymbolAndResolutionAndBucketStartLessThanEqualOrderByBucketStartDesc(
+                            symbol.toUpperCase(), resolution, time);
+            if (candle.isPresent()) {
+                return OptionalDouble.of(candle.get().getClosePrice());
+            }
+        }
+        return OptionalDouble.empty();
+    }
+
+    /**
+     * List the candles of a symbol whose bucket starts within {@code [from, to]}, oldest first and at
+     * most {@value #MAX_CANDLES}.
+     */
+    public List<PriceCandleRow> candles(String symbol, PriceResolution resolution, LocalDateTime from,
+                                        LocalDateTime to) {
+        return priceCandleRepository
+                .findBySymbolAndResolutionAndBucketStartBetweenOrderByBucketStart(symbol.toUpperCase(), resolution,
+                        resolution.bucketStart(from), to, PageRequest.of(0, MAX_CANDLES))
+                .stream()
+                .map(PriceHistoryService::toRow)
+                .toList();
+    }
+
+    private static PriceCandleRow toRow(PriceCandle candle) {
+        return new PriceCandleRow(candle.getSymbol(), candle.getResolution(), candle.getBucketStart(),
+                candle.getOpenPrice(), candle.getHighPrice(), candle.getLowPrice(), candle.getClosePrice());
+    }
+
+    /**
+     * Scheduled task to delete the minute and hour candles past their retention. Day candles are kept.
+     */
+    @Scheduled(fixedDelayString = "${history.purgeInterval:3600000}")
+    public void purgeExpiredCandles() {
+        LocalDateTime now = LocalDateTime.now();
+        int deleted = transactionTemplate.execute(status ->
+                priceCandleRepository.deleteOlderThan(PriceResolution.MINUTE,
+                        now.minusDays(priceHistoryProperties.getMinuteRetentionDays()))
+                        + priceCandleRepository.deleteOlderThan(PriceResolution.HOUR,
+                        now.minusDays(priceHistoryProperties.getHourRetentionDays())));
+        if (deleted > 0) {
+            System.out.println("Purged " + deleted + " expired price candles.");
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        recorder.shutdownNow();
+    }
+}
@@ -0,0 +1,14 @@
+package com.swisspost.service;
+
+import java.time.Instant;
+import java.util.Map;
+
+/**
+ * Every price the price source returned in one {@link PriceFetcher} refresh, whether or not it moved
+ * past {@code scheduler.priceChangeThreshold} and was published.
+ *
+ * @param refreshedAt When the responses were applied.
+ * @param prices      The refreshed price of every symbol, in USD.
+ */
+public record PriceRefresh(Instant refreshedAt, Map<String, Double> prices) {
+}
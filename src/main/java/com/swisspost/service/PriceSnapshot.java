@@ -0,0 +1,86 @@
+package com.swisspost.service;
+
+import com.swisspost.exception.InvalidSymbolException;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Immutable view of all prices as published by one {@link PriceFetcher} tick. Valuations that read
+ * a single snapshot never mix prices of different ticks, and their results can be cached per
+ * {@link #getVersion() version}.
+ */
+public final class PriceSnapshot {
+
+    private final long version;
+
+    private final Instant publishedAt;
+
+    private final SymbolRegistry symbolRegistry;
+
+    // Price of every symbol id at the time of the snapshot, NaN when missing
+    private final double[] prices;
+
+    PriceSnapshot(long version, Instant publishedAt, SymbolRegistry symbolRegistry, double[] prices) {
+        this.version = version;
+        this.publishedAt = publishedAt;
+        this.symbolRegistry = symbolRegistry;
+        this.prices = prices;
+    }
+
+    static PriceSnapshot empty(SymbolRegistry symbolRegistry) {
+        return new PriceSnapshot(0, Instant.EPOCH, symbolRegistry, new double[0]);
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public Instant getPublishedAt() {
+        return publishedAt;
+    }
+
+    public boolean hasPrice(String symbol) {
+        return !Double.isNaN(priceOrNaN(symbol));
+    }
+
+    /**
+     * @param symbol The cryptocurrency symbol (e.g., BTC, ETH).
+     * @return The price in USD at the time of this snapshot.
+     */
+    public double priceOf(String symbol) {
+        double price = priceOrNaN(symbol);
+        if (Double.isNaN(price)) {
+            throw new InvalidSymbolException("Price not available for symbol: " + symbol);
+        }
+        return price;
+    }
+
+    /**
+     * List the symbols whose price differs from an earlier snapshot of the same registry, including
+     * the symbols that gained or lost their price since.
+     *
+     * @param previous The earlier snapshot, or null to list every priced symbol.
+     */
+    List<String> changedSymbols(PriceSnapshot previous) {
+        double[] before = previous == null ? new double[0] : previous.prices;
+        List<String> changed = new ArrayList<>();
+        for (int id = 0; id < Math.max(prices.length, before.length); id++) {
+            double price = id < prices.length ? prices[id] : Double.NaN;
+            double previousPrice = id < before.length ? before[id] : Double.NaN;
+            if (Double.compare(price, previousPrice) != 0) {
+                changed.add(symbolRegistry.symbolOf(id));
+            }
+        }
+        return changed;
+    }
+
+    private double priceOrNaN(String symbol) {
+        if (symbol == null || symbol.isBlank()) {
+            return Double.NaN;
+        }
+        int id = symbolRegistry.idOf(symbol);
+        return id >= 0 && id < prices.length ? prices[id] : Double.NaN;
+    }
+}
@@ -0,0 +1,19 @@
+package com.swisspost.service;
+
+import java.io.InputStream;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Non-blocking access to the upstream price source.
+ */
+public interface PriceSourceClient {
+
+    /**
+     * Send a GET request to the price source.
+     *
+     * @param path The path and query relative to the configured base URL (e.g., /assets?ids=bitcoin).
+     * @return The decoded response body, completed exceptionally when the request fails or returns
+     * a non-2xx status. The caller is responsible for closing the stream.
+     */
+    CompletableFuture<InputStream> get(String path);
+}
@@ -0,0 +1,121 @@
+package com.swisspost.service;
+
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Primitive price store indexed by {@link SymbolRegistry} ids. Prices are kept as raw double bits in
+ * an {@link AtomicLongArray}, missing prices are {@link Double#NaN}.
+ * <p>
+ * Writes are serialized and guarded by a seqlock: the sequence is odd while a write is in progress,
+ * so readers of several prices retry until they have seen one consistent version without taking a
+ * lock or allocating.
+ */
+public class PriceTable {
+
+    private static final long MISSING = Double.doubleToRawLongBits(Double.NaN);
+
+    private final AtomicLong sequence = new AtomicLong();
+
+    private volatile AtomicLongArray prices = new AtomicLongArray(0);
+
+    /**
+     * @return The latest price of the symbol id, or {@link Double#NaN} when it has none.
+     */
+    public double get(int id) {
+        AtomicLongArray current = prices;
+        return id >= 0 && id < current.length() ? Double.longBitsToDouble(current.get(id)) : Double.NaN;
+    }
+
+    /**
+     * Read the prices of several symbol ids from one consistent version of the table.
+     *
+     * @param ids    The symbol ids to read.
+     * @param result Receives the price of {@code ids[i]} at index {@code i}, {@link Double#NaN} when missing.
+     * @return The version the prices were read from.
+     */
+    public long read(int[] ids, double[] result) {
+        while (true) {
+            long before = sequence.get();
+            if ((before & 1) != 0) {
+                Thread.onSpinWait();
+                continue;
+            }
+            for (int i = 0; i < ids.length; i++) {
+                result[i] = get(ids[i]);
+            }
+            if (sequence.get() == before) {
+                return before >>> 1;
+            }
+        }
+    }
+
+    /**
+     * Copy the whole table into an immutable snapshot of one consistent version.
+     */
+    public PriceSnapshot snapshot(SymbolRegistry symbolRegistry) {
+        while (true) {
+            long before = sequence.get();
+            if ((before & 1) != 0) {
+                Thread.onSpinWait();
+                continue;
+            }
+            AtomicLongArray current = prices;
+            double[] copy = new double[current.length()];
+            for (int i = 0; i < copy.length; i++) {
+                copy[i] = Double.longBitsToDouble(current.get(i));
+            }
+            if (sequence.get() == before) {
+                return new PriceSnapshot(before >>> 1, Instant.now(), symbolRegistry, copy);
+            }
+        }
+    }
+
+    /**
+     * Publish new prices as a single version.
+     *
+     * @param ids    The symbol ids to update.
+     * @param values The new price of {@code ids[i]} at index {@code i}.
+     * @param count  The number of entries to apply.
+     */
+    public synchronized void update(int[] ids, double[] values, int count) {
+        sequence.incrementAndGet();
+        try {
+            ensureCapacity(ids, count);
+            AtomicLongArray current = prices;
+            for (int i = 0; i < count; i++) {
+                current.set(ids[i], Double.doubleToRawLongBits(values[i]));
+            }
+        } finally {
+            sequence.incrementAndGet();
+        }
+    }
+
+    public void update(int id, double value) {
+        update(new int[]{id}, new double[]{value}, 1);
+    }
+
+    /**
+     * @return The number of updates published so far.
+     */
+    public long version() {
+        return sequence.get() >>> 1;
+    }
+
+    private void ensureCapacity(int[] ids, int count) {
+        int required = 0;
+        for (int i = 0; i < count; i++) {
+            required = Math.max(required, ids[i] + 1);
+        }
+        AtomicLongArray current = prices;
+        if (required <= current.length()) {
+            return;
+        }
+        AtomicLongArray grown = new AtomicLongArray(Math.max(required, current.length() * 2));
+        for (int i = 0; i < grown.length(); i++) {
+            grown.set(i, i < current.length() ? current.get(i) : MISSING);
+        }
+        prices = grown;
+    }
+}
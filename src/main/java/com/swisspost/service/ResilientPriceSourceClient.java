@@ -0,0 +1,316 @@
+package com.swisspost.service;
+
+import com.swisspost.config.CoinCapProperties;
+import com.swisspost.exception.PriceSourceException;
+import com.swisspost.exception.PriceSourceUnavailableException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * {@link PriceSourceClient} that shields the refresh ticks from an unhealthy price source. Every
+ * endpoint has its own circuit breaker, opened by consecutive failures and probed again with a single
+ * trial request. Failed requests are retried with jittered exponential backoff while a retry budget
+ * shared by all endpoints lasts, so retries never multiply the load of an incident. A 429 response
+ * pauses every request until its Retry-After has passed. Refused requests fail right away with a
+ * {@link PriceSourceUnavailableException}, a tick during an incident costs no upstream round trip.
+ */
+@Primary
+@Component
+public class ResilientPriceSourceClient implements PriceSourceClient {
+
+    enum CircuitState {
+        CLOSED,
+        // Refusing requests until circuitOpenDuration has passed
+        OPEN,
+        // A single trial request is in flight
+        HALF_OPEN
+    }
+
+    private final PriceSourceClient delegate;
+
+    private final CoinCapProperties coinCapProperties;
+
+    // Current time in milliseconds
+    private final LongSupplier clock;
+
+    private final Map<String, CircuitBreaker> circuitBreakers = new ConcurrentHashMap<>();
+
+    // Time before which every request is refused, after a 429 response
+    private final AtomicLong rateLimitedUntil = new AtomicLong();
+
+    // Retries that may be sent right now, guarded by itself
+    private final double[] retryBudget;
+
+    private final Counter succeededRequests;
+
+    private final Counter failedRequests;
+
+    private final Counter refusedRequests;
+
+    private final Counter retries;
+
+    private final Counter openedCircuits;
+
+    private final Counter rateLimits;
+
+    @Autowired
+    public ResilientPriceSourceClient(CoinCapHttpClient coinCapHttpClient, CoinCapProperties coinCapProperties,
+                                      MeterRegistry meterRegistry) {
+        this(coinCapHttpClient, coinCapProperties, meterRegistry, System::currentTimeMillis);
+    }
+
+    ResilientPriceSourceClient(PriceSourceClient delegate, CoinCapProperties coinCapProperties,
+                               MeterRegistry meterRegistry, LongSupplier clock) {
+        this.delegate = delegate;
+        this.coinCapProperties = coinCapProperties;
+        this.clock = clock;
+        this.retryBudget = new double[]{Math.max(0, coinCapProperties.getRetryBudgetBurst())};
+
+        this.succeededRequests = requestCounter(meterRegistry, "success", "Price source requests that succeeded");
+        this.failedRequests = requestCounter(meterRegistry, "failure",
+                "Price source requests that failed after their last attempt");
+        this.refusedRequests = requestCounter(meterRegistry, "refused",
+                "Price source requests refused by an open circuit or a rate limit");
+        this.retries = Counter.builder("price.source.retries")
+                .description("Failed price source requests sent again")
+                .register(meterRegistry);
+        this.openedCircuits = Counter.builder("price.source.circuit.opened")
+                .description("Price source endpoint circuits opened by failures")
+                .register(meterRegistry);
+        this.rateLimits = Counter.builder("price.source.rate.limited")
+                .description("Price source responses asking to slow down")
+                .register(meterRegistry);
+        Gauge.builder("price.source.circuit.open", circuitBreakers,
+                        breakers -> breakers.values().stream().filter(breaker -> !breaker.isClosed()).count())
+                .description("Price source endpoints whose circuit is not closed")
+                .register(meterRegistry);
+    }
+
+    private static Counter requestCounter(MeterRegistry meterRegistry, String result, String description) {
+        return Counter.builder("price.source.requests")
+                .description(description)
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    @Override
+    public CompletableFuture<InputStream> get(String path) {
+        long now = clock.getAsLong();
+        long pausedUntil = rateLimitedUntil.get();
+        if (now < pausedUntil) {
+            return refuse("Price source rate limit, requests resume in " + (pausedUntil - now) + " ms");
+        }
+        CircuitBreaker circuitBreaker = circuitBreakers.computeIfAbsent(endpointOf(path), CircuitBreaker::new);
+        if (!circuitBreaker.tryAcquire(now)) {
+            return refuse("Price source circuit of " + circuitBreaker.endpoint + " is open");
+        }
+
+        synchronized (retryBudget) {
+            retryBudget[0] = Math.min(Math.max(0, coinCapProperties.getRetryBudgetBurst()),
+                    retryBudget[0] + coinCapProperties.getRetryBudgetRatio());
+        }
+        CompletableFuture<InputStream> result = new CompletableFuture<>();
+        attempt(path, circuitBreaker, 0, result);
+        return result;
+    }
+
+    private CompletableFuture<InputStream> refuse(String message) {
+        refusedRequests.increment();
+        return CompletableFuture.failedFuture(new PriceSourceUnavailableException(message));
+    }
+
+    private void attempt(String path, CircuitBreaker circuitBreaker, int attempt, CompletableFuture<InputStream> result) {
+        CompletableFuture<InputStream> request;
+        try {
+            request = delegate.get(path);
+        } catch (RuntimeException e) {
+            request = CompletableFuture.failedFuture(e);
+        }
+        request.whenComplete((body, e) -> {
+            if (e == null) {
+                circuitBreaker.onSuccess();
+                succeededRequests.increment();
+                // Nobody waits for the body any more when the caller gave up
+                if (!result.complete(body)) {
+                    closeQuietly(body);
+                }
+                return;
+            }
+
+            Throwable cause = unwrap(e);
+            if (cause instanceof PriceSourceException failure && failure.getStatusCode() == 429) {
+                long wait = failure.getRetryAfterMillis() >= 0
+                        ? failure.getRetryAfterMillis()
+                        : coinCapProperties.getDefaultRetryAfter();
+                rateLimitedUntil.accumulateAndGet(clock.getAsLong() + wait, Math::max);
+                rateLimits.increment();
+                circuitBreaker.onRateLimited();
+                System.err.println("Price source rate limit reached, pausing requests for " + wait + " ms.");
+                fail(result, cause);
+                return;
+            }
+            if (!isSourceFailure(cause)) {
+                // The request was wrong, the source itself answered
+                circuitBreaker.onSuccess();
+                fail(result, cause);
+                return;
+            }
+
+            circuitBreaker.onFailure(clock.getAsLong());
+            if (attempt < coinCapProperties.getMaxRetries() && !result.isDone() && circuitBreaker.isClosed()
+                    && tryWithdrawRetry()) {
+                retries.increment();
+                CompletableFuture.delayedExecutor(backoff(attempt), TimeUnit.MILLISECONDS)
+                        .execute(() -> attempt(path, circuitBreaker, attempt + 1, result));
+            } else {
+                fail(result, cause);
+            }
+        });
+    }
+
+    private void fail(CompletableFuture<InputStream> result, Throwable cause) {
+        failedRequests.increment();
+        result.completeExceptionally(cause);
+    }
+
+    /**
+     * Whether a failure means the source is unhealthy: no response at all, or a 5xx status.
+     */
+    private static boolean isSourceFailure(Throwable cause) {
+        return !(cause instanceof PriceSourceException failure) || failure.getStatusCode() >= 500;
+    }
+
+    private boolean tryWithdrawRetry() {
+        synchronized (retryBudget) {
+            if (retryBudget[0] < 1) {
+                return false;
+            }
+            retryBudget[0] -= 1;
+            return true;
+        }
+    }
+
+    /**
+     * @return The delay before retry {@code attempt + 1}: half of the doubled base delay, plus up to as
+     * much again at random, so clients that failed together do not retry together.
+     */
+    long backoff(int attempt) {
+        long ceiling = Math.max(1, coinCapProperties.getRetryBackoff()) << Math.min(attempt, 16);
+        return ceiling / 2 + ThreadLocalRandom.current().nextLong(ceiling / 2 + 1);
+    }
+
+    /**
+     * Group paths by endpoint, {@code /assets/bitcoin} as {@code /assets/{id}} and
+     * {@code /assets?ids=a,b} as {@code /assets?ids}.
+     */
+    static String endpointOf(String path) {
+        int query = path.indexOf('?');
+        if (query >= 0) {
+            int value = path.indexOf('=', query);
+            return value < 0 ? path : path.substring(0, value);
+        }
+        int slash = path.indexOf('/', 1);
+        return slash < 0 ? path : path.substring(0, slash) + "/{id}";
+    }
+
+    CircuitState circuitState(String path) {
+        CircuitBreaker circuitBreaker = circuitBreakers.get(endpointOf(path));
+        return circuitBreaker == null ? CircuitState.CLOSED : circuitBreaker.state();
+    }
+
+    private static Throwable unwrap(Throwable e) {
+        return (e instanceof CompletionException || e instanceof ExecutionException) && e.getCause() != null
+                ? e.getCause()
+                : e;
+    }
+
+    private static void closeQuietly(InputStream body) {
+        try {
+            body.close();
+        } catch (IOException ignored) {
+            // The body was never read
+        }
+    }
+
+    private final class CircuitBreaker {
+
+        private final String endpoint;
+
+        private CircuitState state = CircuitState.CLOSED;
+
+        private int consecutiveFailures;
+
+        private long openedAt;
+
+        private CircuitBreaker(String endpoint) {
+            this.endpoint = endpoint;
+        }
+
+        /**
+         * @return Whether a request may be sent now; an open circuit lets one trial through once its
+         * open duration has passed.
+         */
+        synchronized boolean tryAcquire(long now) {
+            if (state == CircuitState.CLOSED) {
+                return true;
+            }
+            if (state == CircuitState.OPEN && now - openedAt >= coinCapProperties.getCircuitOpenDuration()) {
+                state = CircuitState.HALF_OPEN;
+                return true;
+            }
+            return false;
+        }
+
+        synchronized void onSuccess() {
+            if (state != CircuitState.CLOSED) {
+                System.out.println("Price source circuit of " + endpoint + " closed.");
+            }
+            state = CircuitState.CLOSED;
+            consecutiveFailures = 0;
+        }
+
+        synchronized void onFailure(long now) {
+            consecutiveFailures++;
+            if (state == CircuitState.HALF_OPEN
+                    || (state == CircuitState.CLOSED
+                    && consecutiveFailures >= Math.max(1, coinCapProperties.getCircuitFailureThreshold()))) {
+                state = CircuitState.OPEN;
+                openedAt = now;
+                openedCircuits.increment();
+                System.err.println("Price source circuit of " + endpoint + " opened after " + consecutiveFailures
+                        + " consecutive failures.");
+            }
+        }
+
+        // The rate limit pauses every endpoint already, a trial that hit it must not keep the circuit half-open
+        synchronized void onRateLimited() {
+            if (state == CircuitState.HALF_OPEN) {
+                state = CircuitState.OPEN;
+            }
+        }
+
+        synchronized boolean isClosed() {
+            return state == CircuitState.CLOSED;
+        }
+
+        synchronized CircuitState state() {
+            return state;
+        }
+    }
+}
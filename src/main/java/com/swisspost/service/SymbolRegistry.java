@@ -0,0 +1,64 @@
+package com.swisspost.service;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Interns cryptocurrency symbols to dense int ids, so prices can be kept in primitive arrays indexed
+ * by id. Ids are assigned once and never reused.
+ */
+public class SymbolRegistry {
+
+    private final Map<String, Integer> symbolToId = new ConcurrentHashMap<>();
+
+    // Canonical symbol of every id, replaced as a whole when a symbol is registered
+    private volatile String[] idToSymbol = new String[0];
+
+    /**
+     * Register a symbol, or return its id when it is already known.
+     *
+     * @param symbol The cryptocurrency symbol, in any case.
+     * @return The id of the upper-case symbol.
+     */
+    public int register(String symbol) {
+        int id = idOf(symbol);
+        if (id >= 0) {
+            return id;
+        }
+        synchronized (this) {
+            String canonical = symbol.toUpperCase();
+            Integer existing = symbolToId.get(canonical);
+            if (existing != null) {
+                return existing;
+            }
+            int newId = idToSymbol.length;
+            String[] symbols = Arrays.copyOf(idToSymbol, newId + 1);
+            symbols[newId] = canonical;
+            idToSymbol = symbols;
+            symbolToId.put(canonical, newId);
+            return newId;
+        }
+    }
+
+    /**
+     * Look up the id of a symbol. Upper-case symbols are resolved without allocating.
+     *
+     * @return The id, or -1 when the symbol was never registered.
+     */
+    public int idOf(String symbol) {
+        Integer id = symbolToId.get(symbol);
+        if (id == null) {
+            id = symbolToId.get(symbol.toUpperCase());
+        }
+        return id == null ? -1 : id;
+    }
+
+    public String symbolOf(int id) {
+        return idToSymbol[id];
+    }
+
+    public int size() {
+        return idToSymbol.length;
+    }
+}
@@ -0,0 +1,41 @@
+package com.swisspost.service;
+
+/**
+ * Line-oriented formats trades are imported and exported in.
+ */
+public enum TradeFormat {
+
+    // Comma separated values with a header line naming the columns
+    CSV("text/csv", "csv"),
+    // One JSON object per line
+    NDJSON("application/x-ndjson", "ndjson");
+
+    private final String mediaType;
+
+    private final String fileExtension;
+
+    TradeFormat(String mediaType, String fileExtension) {
+        this.mediaType = mediaType;
+        this.fileExtension = fileExtension;
+    }
+
+    public String getMediaType() {
+        return mediaType;
+    }
+
+    public String getFileExtension() {
+        return fileExtension;
+    }
+
+    /**
+     * @param name The format name, in any case (e.g., csv, NDJSON).
+     */
+    public static TradeFormat of(String name) {
+        for (TradeFormat format : values()) {
+            if (format.name().equalsIgnoreCase(name)) {
+                return format;
+            }
+        }
+        throw new IllegalArgumentException("Unsupported trade format: " + name);
+    }
+}
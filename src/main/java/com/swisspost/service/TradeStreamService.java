@@ -0,0 +1,279 @@
+package com.swisspost.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.swisspost.dto.TradeImportResult;
+import com.swisspost.dto.TradeRow;
+import com.swisspost.model.AssetStatus;
+import com.swisspost.repository.TradeRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.persistence.EntityManager;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Streams the trade ledger of a wallet in and out as CSV or NDJSON. Imports read one line at a time
+ * and commit every chunk in its own transaction; exports page through the ledger by id. Neither ever
+ * holds more than one chunk or page of trades in memory.
+ *
+ * <p>CSV follows RFC 4180: fields may be quoted, with doubled quotes inside, so that commas and quotes
+ * survive the round trip. Every record must fit on one line, a quoted field spanning lines is rejected
+ * as a malformed row.
+ */
+@Service
+public class TradeStreamService {
+
+    static final String CSV_HEADER = "id,createdAt,symbol,side,quantity,price";
+
+    static final int MAX_CHUNK_SIZE = 10_000;
+
+    private static final int EXPORT_PAGE_SIZE = 1000;
+
+    private final WalletService walletService;
+
+    private final TradeRepository tradeRepository;
+
+    private final ObjectMapper objectMapper;
+
+    private final EntityManager entityManager;
+
+    private final Counter importedTrades;
+
+    public TradeStreamService(WalletService walletService, TradeRepository tradeRepository, ObjectMapper objectMapper,
+                              EntityManager entityManager, MeterRegistry meterRegistry) {
+        this.walletService = walletService;
+        this.tradeRepository = tradeRepository;
+        this.objectMapper = objectMapper;
+        this.entityManager = entityManager;
+        this.importedTrades = Counter.builder("wallet.trades.imported")
+                .description("Trades committed by streamed imports")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Import trades into a wallet, committing every {@code chunkSize} rows. The import stops at the
+     * first chunk that cannot be parsed or applied; the chunks committed before it stay imported.
+     *
+     * @param body      The CSV or NDJSON lines, read incrementally and closed by the caller.
+     * @param chunkSize The number of rows per transaction, at most {@value #MAX_CHUNK_SIZE}.
+     */
+    public TradeImportResult importTrades(Long walletId, InputStream body, TradeFormat format, int chunkSize) {
+        // Fails with WalletNotFoundException before anything is read
+        walletService.getWallet(walletId);
+
+        int rowsPerChunk = Math.max(1, Math.min(chunkSize, MAX_CHUNK_SIZE));
+        BufferedReader reader = new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8));
+        List<TradeRow> chunk = new ArrayList<>(rowsPerChunk);
+        Map<String, Integer> csvColumns = null;
+        long importedRows = 0;
+        int committedChunks = 0;
+        long lineNumber = 0;
+        long chunkStartLine = 0;
+
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.isBlank()) {
+                    continue;
+                }
+                if (format == TradeFormat.CSV && csvColumns == null) {
+                    chunkStartLine = lineNumber;
+                    csvColumns = parseCsvHeader(line);
+                    continue;
+                }
+                if (chunk.isEmpty()) {
+                    chunkStartLine = lineNumber;
+                }
+                try {
+                    chunk.add(validated(format == TradeFormat.CSV ? parseCsvRow(line, csvColumns) : parseJsonRow(line)));
+                } catch (RuntimeException e) {
+                    // The rows parsed before it in the chunk are not committed either, resume from its start
+                    return new TradeImportResult(walletId, importedRows, committedChunks, chunkStartLine,
+                            "Cannot parse line " + lineNumber + ": " + e.getMessage());
+                }
+
+                if (chunk.size() == rowsPerChunk) {
+                    importedRows += commitChunk(walletId, chunk, importedRows);
+                    committedChunks++;
+                }
+            }
+            if (!chunk.isEmpty()) {
+                importedRows += commitChunk(walletId, chunk, importedRows);
+                committedChunks++;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (RuntimeException e) {
+            return new TradeImportResult(walletId, importedRows, committedChunks, chunkStartLine, e.getMessage());
+        }
+        return new TradeImportResult(walletId, importedRows, committedChunks, null, null);
+    }
+
+    /**
+     * Import one chunk in its own transaction and report the progress.
+     *
+     * @return The number of rows committed.
+     */
+    private int commitChunk(Long walletId, List<TradeRow> chunk, long importedBefore) {
+        walletService.importTrades(walletId, List.copyOf(chunk));
+        // The persistence context may span the whole request, drop the committed entities
+        entityManager.clear();
+        int rows = chunk.size();
+        chunk.clear();
+        importedTrades.increment(rows);
+        System.out.println("Imported " + (importedBefore + rows) + " trades into wallet " + walletId + ".");
+        return rows;
+    }
+
+    /**
+     * Write the whole ledger of a wallet in id order, one page at a time.
+     */
+    public void exportTrades(Long walletId, TradeFormat format, OutputStream out) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        if (format == TradeFormat.CSV) {
+            writer.write(CSV_HEADER);
+            writer.write('\n');
+        }
+
+        long afterId = 0;
+        List<TradeRow> page;
+        do {
+            page = tradeRepository.findTradeRowsAfter(walletId, afterId, PageRequest.of(0, EXPORT_PAGE_SIZE));
+            for (TradeRow row : page) {
+                writer.write(format == TradeFormat.CSV ? toCsv(row) : objectMapper.writeValueAsString(row));
+                writer.write('\n');
+            }
+            writer.flush();
+            if (!page.isEmpty()) {
+                afterId = page.get(page.size() - 1).id();
+            }
+        } while (page.size() == EXPORT_PAGE_SIZE);
+    }
+
+    /**
+     * Reject trades the time-ordered ledger listings and the history replay would never reach.
+     */
+    private static TradeRow validated(TradeRow row) {
+        if (row.createdAt() != null && !KeysetCursor.covers(row.createdAt())) {
+            throw new IllegalArgumentException("createdAt " + row.createdAt() + " is before 1970 or after 9999");
+        }
+        return row;
+    }
+
+    private TradeRow parseJsonRow(String line) {
+        try {
+            return objectMapper.readValue(line, TradeRow.class);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException(e.getOriginalMessage(), e);
+        }
+    }
+
+    private static Map<String, Integer> parseCsvHeader(String line) {
+        Map<String, Integer> columns = new HashMap<>();
+        List<String> names = parseCsvLine(line);
+        for (int i = 0; i < names.size(); i++) {
+            if (columns.put(names.get(i).trim(), i) != null) {
+                throw new IllegalArgumentException("CSV header names the " + names.get(i).trim() + " column twice");
+            }
+        }
+        if (!columns.containsKey("symbol") || !columns.containsKey("quantity")) {
+            throw new IllegalArgumentException("CSV header must name the symbol and quantity columns");
+        }
+        return columns;
+    }
+
+    private static TradeRow parseCsvRow(String line, Map<String, Integer> columns) {
+        List<String> values = parseCsvLine(line);
+        if (values.size() != columns.size()) {
+            throw new IllegalArgumentException("expected " + columns.size() + " fields but found " + values.size());
+        }
+        String createdAt = column(values, columns, "createdAt");
+        String side = column(values, columns, "side");
+        String price = column(values, columns, "price");
+        return new TradeRow(null,
+                createdAt.isEmpty() ? null : LocalDateTime.parse(createdAt),
+                column(values, columns, "symbol"),
+                side.isEmpty() ? null : AssetStatus.valueOf(side.toUpperCase()),
+                Double.parseDouble(column(values, columns, "quantity")),
+                price.isEmpty() ? 0 : Double.parseDouble(price));
+    }
+
+    private static String column(List<String> values, Map<String, Integer> columns, String name) {
+        Integer index = columns.get(name);
+        return index == null ? "" : values.get(index).trim();
+    }
+
+    /**
+     * Split one CSV record into its fields, unquoting the quoted ones.
+     *
+     * @throws IllegalArgumentException If a quote is left open or is followed by anything but a comma.
+     */
+    static List<String> parseCsvLine(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        int i = 0;
+        while (true) {
+            if (i < line.length() && line.charAt(i) == '"') {
+                i++;
+                while (true) {
+                    if (i >= line.length()) {
+                        throw new IllegalArgumentException("unterminated quoted field");
+                    }
+                    char c = line.charAt(i++);
+                    if (c != '"') {
+                        field.append(c);
+                    } else if (i < line.length() && line.charAt(i) == '"') {
+                        field.append('"');
+                        i++;
+                    } else {
+                        break;
+                    }
+                }
+                if (i < line.length() && line.charAt(i) != ',') {
+                    throw new IllegalArgumentException("unexpected character after quoted field at column " + (i + 1));
+                }
+            } else {
+                while (i < line.length() && line.charAt(i) != ',') {
+                    char c = line.charAt(i++);
+                    if (c == '"') {
+                        throw new IllegalArgumentException("unexpected quote in unquoted field at column " + i);
+                    }
+                    field.append(c);
+                }
+            }
+            fields.add(field.toString());
+            field.setLength(0);
+            if (i >= line.length()) {
+                return fields;
+            }
+            // Skip the comma
+            i++;
+        }
+    }
+
+    /**
+     * Quote a field when it holds a comma, a quote or a line break, doubling the quotes inside.
+     */
+    static String csvField(Object value) {
+        String text = String.valueOf(value);
+        if (text.indexOf(',') < 0 && text.indexOf('"') < 0 && text.indexOf('\n') < 0 && text.indexOf('\r') < 0) {
+            return text;
+        }
+        return '"' + text.replace("\"", "\"\"") + '"';
+    }
+
+    private static String toCsv(TradeRow row) {
+        return csvField(row.id()) + "," + csvField(row.createdAt()) + "," + csvField(row.symbol()) + ","
+                + csvField(row.side()) + "," + csvField(row.quantity()) + "," + csvField(row.price());
+    }
+}
@@ -0,0 +1,68 @@
+package com.swisspost.service;
+
+import com.swisspost.config.ValuationProperties;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.function.Consumer;
+
+/**
+ * Runs the batched work of wallet valuation, such as repricing the cached wallets on a price tick, on a
+ * dedicated and bounded {@link ForkJoinPool}, so a spike of valuations never drains
+ * {@link ForkJoinPool#commonPool()}. The aggregates of a single wallet are always built on the calling
+ * thread: a wallet holds one position per symbol, far too few for a parallel aggregation to pay off.
+ */
+@Component
+public class ValuationExecutor {
+
+    private final ForkJoinPool valuationPool;
+
+    public ValuationExecutor(ValuationProperties valuationProperties, MeterRegistry meterRegistry) {
+        this.valuationPool = new ForkJoinPool(Math.max(1, valuationProperties.getParallelism()),
+                valuationThreadFactory(), null, false);
+
+        Gauge.builder("wallet.valuation.pool.active", valuationPool, ForkJoinPool::getActiveThreadCount)
+                .description("Valuation pool threads currently running")
+                .register(meterRegistry);
+    }
+
+    private static ForkJoinPool.ForkJoinWorkerThreadFactory valuationThreadFactory() {
+        return pool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName("wallet-valuation-" + thread.getPoolIndex());
+            return thread;
+        };
+    }
+
+    /**
+     * Run an action over a list in batches of at most {@code batchSize} items on the valuation pool,
+     * returning once every batch is done. A list that fits a single batch runs on the calling thread.
+     */
+    <T> void forEachBatch(List<T> items, int batchSize, Consumer<List<T>> action) {
+        int size = Math.max(1, batchSize);
+        if (items.size() <= size) {
+            action.accept(items);
+            return;
+        }
+        List<ForkJoinTask<?>> batches = new ArrayList<>();
+        for (int from = 0; from < items.size(); from += size) {
+            List<T> batch = items.subList(from, Math.min(from + size, items.size()));
+            batches.add(valuationPool.submit(() -> action.accept(batch)));
+        }
+        for (ForkJoinTask<?> batch : batches) {
+            batch.join();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        valuationPool.shutdownNow();
+    }
+}
@@ -0,0 +1,146 @@
+package com.swisspost.service;
+
+import com.swisspost.config.ValuationProperties;
+import com.swisspost.model.AssetStatus;
+import com.swisspost.model.Trade;
+import com.swisspost.model.Wallet;
+import com.swisspost.repository.WalletRepository;
+import org.springframework.stereotype.Service;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps the {@link WalletAggregates} of every wallet that has been valued. Aggregates are built from
+ * the wallet on first use and then maintained by the trades recorded by {@link WalletService}; each
+ * one is stamped with the wallet version it reflects so a missed or out-of-order trade leads to a
+ * rebuild rather than a wrong valuation. At most {@code valuation.aggregatesMaxEntries} wallets are
+ * kept, the least recently used one is dropped and rebuilt when it is valued again.
+ */
+@Service
+public class WalletAggregateService {
+
+    // Access-ordered, so the eldest entry is the least recently used wallet; guarded by itself
+    private final LinkedHashMap<Long, WalletAggregates> aggregatesByWallet = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, WalletAggregates> eldest) {
+            return size() > Math.max(0, valuationProperties.getAggregatesMaxEntries());
+        }
+    };
+
+    private final ValuationProperties valuationProperties;
+
+    private final WalletRepository walletRepository;
+
+    public WalletAggregateService(ValuationProperties valuationProperties, WalletRepository walletRepository) {
+        this.valuationProperties = valuationProperties;
+        this.walletRepository = walletRepository;
+    }
+
+    /**
+     * Return the maintained aggregates of a wallet, or build them from its assets outside the lock.
+     * <p>
+     * The assets are loaded lazily after the version was read, so a trade committing in between would
+     * end up in aggregates stamped with the version before it, and be applied a second time when it is
+     * recorded. The committed version is read again once the assets are loaded; when it moved, the
+     * rebuilt aggregates still value this request but are not kept.
+     */
+    WalletAggregates aggregatesFor(Wallet wallet) {
+        long walletVersion = versionOf(wallet.getVersion());
+        WalletAggregates cached = cachedAggregates(wallet.getId());
+        if (cached != null && cached.getWalletVersion() >= walletVersion) {
+            return cached;
+        }
+        WalletAggregates rebuilt = WalletAggregates.of(walletVersion, wallet.getCryptoAssets());
+        if (wallet.getId() == null
+                || versionOf(walletRepository.findVersionById(wallet.getId()).orElse(null)) != walletVersion) {
+            return rebuilt;
+        }
+        synchronized (aggregatesByWallet) {
+            return aggregatesByWallet.merge(wallet.getId(), rebuilt,
+                    (existing, candidate) -> existing.getWalletVersion() >= candidate.getWalletVersion() ? existing : candidate);
+        }
+    }
+
+    /**
+     * Return the aggregates of a wallet as currently maintained, without loading the wallet.
+     *
+     * @return The aggregates, or null when the wallet has not been valued, was dropped or must be rebuilt.
+     */
+    WalletAggregates cachedAggregates(Long walletId) {
+        synchronized (aggregatesByWallet) {
+            return aggregatesByWallet.get(walletId);
+        }
+    }
+
+    int size() {
+        synchronized (aggregatesByWallet) {
+            return aggregatesByWallet.size();
+        }
+    }
+
+    private void remove(Long walletId, WalletAggregates aggregates) {
+        synchronized (aggregatesByWallet) {
+            aggregatesByWallet.remove(walletId, aggregates);
+        }
+    }
+
+    public void recordBuy(Long walletId, Long newWalletVersion, String symbol, double quantity, double price) {
+        WalletAggregates aggregates = cachedAggregates(walletId);
+        if (aggregates == null) {
+            return;
+        }
+        synchronized (aggregates) {
+            long version = versionOf(newWalletVersion);
+            if (aggregates.getWalletVersion() == version - 1) {
+                aggregates.buy(version, symbol, quantity, price);
+            } else if (aggregates.getWalletVersion() < version) {
+                remove(walletId, aggregates);
+            }
+        }
+    }
+
+    public void recordSell(Long walletId, Long newWalletVersion, String symbol, double quantity) {
+        WalletAggregates aggregates = cachedAggregates(walletId);
+        if (aggregates == null) {
+            return;
+        }
+        synchronized (aggregates) {
+            long version = versionOf(newWalletVersion);
+            if (aggregates.getWalletVersion() == version - 1) {
+                aggregates.sell(version, symbol, quantity);
+            } else if (aggregates.getWalletVersion() < version) {
+                remove(walletId, aggregates);
+            }
+        }
+    }
+
+    /**
+     * Apply all trades of a bulk import, which advanced the wallet by a single version.
+     */
+    public void recordTrades(Long walletId, Long newWalletVersion, List<Trade> trades) {
+        WalletAggregates aggregates = cachedAggregates(walletId);
+        if (aggregates == null) {
+            return;
+        }
+        synchronized (aggregates) {
+            long version = versionOf(newWalletVersion);
+            if (aggregates.getWalletVersion() == version - 1) {
+                for (Trade trade : trades) {
+                    if (trade.getSide() == AssetStatus.SELL) {
+                        aggregates.sell(version, trade.getSymbol(), trade.getQuantity());
+                    } else {
+                        aggregates.buy(version, trade.getSymbol(), trade.getQuantity(), trade.getPrice());
+                    }
+                }
+            } else if (aggregates.getWalletVersion() < version) {
+                remove(walletId, aggregates);
+            }
+        }
+    }
+
+    private static long versionOf(Long version) {
+        return version == null ? 0 : version;
+    }
+}
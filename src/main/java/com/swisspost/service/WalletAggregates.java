@@ -0,0 +1,122 @@
+package com.swisspost.service;
+
+import com.swisspost.model.Asset;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Running per-symbol quantity and cost basis of one wallet. Trades update the aggregates in place and
+ * current values are only recomputed when a different price snapshot is requested, so valuations cost
+ * O(symbols) instead of O(assets).
+ */
+class WalletAggregates {
+
+    private static final class SymbolAggregate {
+        private double quantity;
+        private double costBasis;
+        private double currentValue;
+    }
+
+    private final Map<String, SymbolAggregate> bySymbol = new HashMap<>();
+
+    // Version of the wallet entity these aggregates reflect
+    private long walletVersion;
+
+    // Version of the price snapshot the current values were computed with, -1 when stale
+    private long pricedVersion = -1;
+
+    private double totalValue;
+
+    WalletAggregates(long walletVersion) {
+        this.walletVersion = walletVersion;
+    }
+
+    static WalletAggregates of(long walletVersion, Iterable<Asset> assets) {
+        WalletAggregates aggregates = new WalletAggregates(walletVersion);
+        for (Asset asset : assets) {
+            aggregates.add(asset);
+        }
+        return aggregates;
+    }
+
+    synchronized void add(Asset asset) {
+        add(asset.getSymbol(), asset.getQuantity(), asset.getPrice());
+    }
+
+    /**
+     * Add the holdings of aggregates built from another part of the same wallet.
+     */
+    synchronized void merge(WalletAggregates other) {
+        synchronized (other) {
+            other.bySymbol.forEach((symbol, aggregate) -> {
+                SymbolAggregate merged = bySymbol.computeIfAbsent(symbol, s -> new SymbolAggregate());
+                merged.quantity += aggregate.quantity;
+                merged.costBasis += aggregate.costBasis;
+            });
+            pricedVersion = -1;
+        }
+    }
+
+    synchronized long getWalletVersion() {
+        return walletVersion;
+    }
+
+    synchronized void buy(long newWalletVersion, String symbol, double quantity, double price) {
+        add(symbol, quantity, price);
+        walletVersion = newWalletVersion;
+    }
+
+    /**
+     * Reduce a holding at its average cost.
+     */
+    synchronized void sell(long newWalletVersion, String symbol, double quantity) {
+        SymbolAggregate aggregate = bySymbol.get(symbol);
+        if (aggregate != null) {
+            double averageCost = aggregate.quantity > 0 ? aggregate.costBasis / aggregate.quantity : 0;
+            aggregate.quantity -= quantity;
+            aggregate.costBasis -= averageCost * quantity;
+            if (aggregate.quantity <= 0) {
+                bySymbol.remove(symbol);
+            }
+            pricedVersion = -1;
+        }
+        walletVersion = newWalletVersion;
+    }
+
+    synchronized double totalValue(PriceSnapshot prices) {
+        repriceIfNeeded(prices);
+        return totalValue;
+    }
+
+    synchronized List<PositionValuation> valuations(PriceSnapshot prices) {
+        repriceIfNeeded(prices);
+        List<PositionValuation> valuations = new ArrayList<>(bySymbol.size());
+        bySymbol.forEach((symbol, aggregate) -> valuations.add(
+                new PositionValuation(symbol, aggregate.quantity, aggregate.costBasis, aggregate.currentValue)));
+        return valuations;
+    }
+
+    private void add(String symbol, double quantity, double price) {
+        SymbolAggregate aggregate = bySymbol.computeIfAbsent(symbol, s -> new SymbolAggregate());
+        aggregate.quantity += quantity;
+        aggregate.costBasis += quantity * price;
+        pricedVersion = -1;
+    }
+
+    private void repriceIfNeeded(PriceSnapshot prices) {
+        if (pricedVersion == prices.getVersion()) {
+            return;
+        }
+        double total = 0;
+        for (Map.Entry<String, SymbolAggregate> entry : bySymbol.entrySet()) {
+            SymbolAggregate aggregate = entry.getValue();
+            aggregate.currentValue = aggregate.quantity * prices.priceOf(entry.getKey());
+            total += aggregate.currentValue;
+        }
+        totalValue = total;
+        pricedVersion = prices.getVersion();
+    }
+}
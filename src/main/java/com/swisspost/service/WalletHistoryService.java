@@ -0,0 +1,275 @@
+package com.swisspost.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.swisspost.config.PriceHistoryProperties;
+import com.swisspost.dto.PriceCandleRow;
+import com.swisspost.dto.TradeRow;
+import com.swisspost.dto.WalletValuePoint;
+import com.swisspost.model.AssetStatus;
+import com.swisspost.model.PriceResolution;
+import com.swisspost.repository.PriceCandleRepository;
+import com.swisspost.repository.TradeRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.LocalDateTime;
+import java.util.*;
+
+/**
+ * Values a wallet over a past time range by replaying its trade ledger against the local price
+ * history. Trades and candles are both read in time order, a page or window at a time, and merged in
+ * a single pass; every point is written out as soon as it is computed, so no range is ever held in
+ * memory as a whole.
+ */
+@Service
+public class WalletHistoryService {
+
+    // Points of one series at most, about ten years of minutes
+    static final long MAX_POINTS = 5_000_000;
+
+    private static final int TRADE_PAGE_SIZE = 1000;
+
+    // Buckets of candles read per query
+    private static final int CANDLE_WINDOW = 1000;
+
+    // Points written between two flushes of the output
+    private static final int FLUSH_EVERY = 1000;
+
+    private final TradeRepository tradeRepository;
+
+    private final PriceCandleRepository priceCandleRepository;
+
+    private final ObjectMapper objectMapper;
+
+    private final PriceHistoryProperties priceHistoryProperties;
+
+    private final Clock clock;
+
+    @Autowired
+    public WalletHistoryService(TradeRepository tradeRepository, PriceCandleRepository priceCandleRepository,
+                                ObjectMapper objectMapper, PriceHistoryProperties priceHistoryProperties) {
+        this(tradeRepository, priceCandleRepository, objectMapper, priceHistoryProperties, Clock.systemDefaultZone());
+    }
+
+    WalletHistoryService(TradeRepository tradeRepository, PriceCandleRepository priceCandleRepository,
+                         ObjectMapper objectMapper, PriceHistoryProperties priceHistoryProperties, Clock clock) {
+        this.tradeRepository = tradeRepository;
+        this.priceCandleRepository = priceCandleRepository;
+        this.objectMapper = objectMapper;
+        this.priceHistoryProperties = priceHistoryProperties;
+        this.clock = clock;
+    }
+
+    /**
+     * Fail fast on a range that cannot be served, before a response is committed. Ranges starting before
+     * the candles of the resolution are kept are rejected, rather than valued without prices.
+     */
+    public void validateRange(PriceResolution resolution, LocalDateTime from, LocalDateTime to) {
+        if (from.isAfter(to)) {
+            throw new IllegalArgumentException("from must not be after to");
+        }
+        int retentionDays = switch (resolution) {
+            case MINUTE -> priceHistoryProperties.getMinuteRetentionDays();
+            case HOUR -> priceHistoryProperties.getHourRetentionDays();
+            case DAY -> -1;
+        };
+        if (retentionDays >= 0 && from.isBefore(LocalDateTime.now(clock).minusDays(retentionDays))) {
+            throw new IllegalArgumentException(resolution.name().toLowerCase() + " prices are kept for "
+                    + retentionDays + " days, use a coarser resolution for older ranges");
+        }
+        if (resolution.getUnit().between(resolution.bucketStart(from), to) >= MAX_POINTS) {
+            throw new IllegalArgumentException("The range spans more than " + MAX_POINTS + " " + resolution.name().toLowerCase()
+                    + " points, use a coarser resolution");
+        }
+    }
+
+    /**
+     * Write the value of a wallet at every bucket of {@code [from, to]} as NDJSON. A symbol is valued
+     * at the latest close recorded up to the bucket; while a held symbol has no recorded price yet, its
+     * value and the wallet's value are null instead of a made-up loss.
+     *
+     * @param withPositions Whether every point lists the value of each held symbol.
+     */
+    public void writeValueSeries(Long walletId, PriceResolution resolution, LocalDateTime from, LocalDateTime to,
+                                 boolean withPositions, OutputStream out) throws IOException {
+        validateRange(resolution, from, to);
+        LocalDateTime start = resolution.bucketStart(from);
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+
+        // Price history is kept under upper-case symbols
+        List<String> symbols = tradeRepository
+                .findSymbolsTradedBefore(walletId, resolution.bucketStart(to).plus(1, resolution.getUnit()))
+                .stream()
+                .map(String::toUpperCase)
+                .distinct()
+                .toList();
+        Map<String, Double> closes = openingCloses(symbols, resolution, start);
+        // Quantity and cost basis of every held symbol
+        Map<String, double[]> holdings = new TreeMap<>();
+        TradeReplay trades = new TradeReplay(walletId);
+        CandleReplay candles = new CandleReplay(symbols, resolution);
+
+        int written = 0;
+        for (LocalDateTime bucket = start; !bucket.isAfter(to); bucket = bucket.plus(1, resolution.getUnit())) {
+            LocalDateTime bucketEnd = bucket.plus(1, resolution.getUnit());
+            trades.applyUntil(bucketEnd, holdings);
+            candles.applyBucket(bucket, closes);
+
+            writer.write(objectMapper.writeValueAsString(point(bucket, holdings, closes, withPositions)));
+            writer.write('\n');
+            if (++written % FLUSH_EVERY == 0) {
+                writer.flush();
+            }
+        }
+        writer.flush();
+    }
+
+    /**
+     * @return The latest close of every symbol before the first bucket.
+     */
+    private Map<String, Double> openingCloses(List<String> symbols, PriceResolution resolution, LocalDateTime start) {
+        Map<String, Double> closes = new HashMap<>();
+        LocalDateTime beforeStart = start.minusNanos(1);
+        for (String symbol : symbols) {
+            priceCandleRepository
+                    .findFirstBySymbolAndResolutionAndBucketStartLessThanEqualOrderByBucketStartDesc(
+                            symbol, resolution, beforeStart)
+                    .ifPresent(candle -> closes.put(symbol, candle.getClosePrice()));
+        }
+        return closes;
+    }
+
+    private static WalletValuePoint point(LocalDateTime bucket, Map<String, double[]> holdings,
+                                          Map<String, Double> closes, boolean withPositions) {
+        double totalValue = 0;
+        double totalCost = 0;
+        boolean allPriced = true;
+        List<WalletValuePoint.PositionPoint> positions = withPositions ? new ArrayList<>(holdings.size()) : null;
+        for (Map.Entry<String, double[]> holding : holdings.entrySet()) {
+            double quantity = holding.getValue()[0];
+            double costBasis = holding.getValue()[1];
+            Double close = closes.get(holding.getKey());
+            Double value = close == null ? null : quantity * close;
+            totalCost += costBasis;
+            if (value == null) {
+                allPriced = false;
+            } else {
+                totalValue += value;
+            }
+            if (positions != null) {
+                positions.add(new WalletValuePoint.PositionPoint(holding.getKey(), quantity, value,
+                        value == null ? null : value - costBasis));
+            }
+        }
+        return new WalletValuePoint(bucket, allPriced ? totalValue : null, totalCost,
+                allPriced ? totalValue - totalCost : null, positions);
+    }
+
+    /**
+     * Replays the trade ledger of a wallet in time order, one keyset page at a time.
+     */
+    private final class TradeReplay {
+
+        private final Long walletId;
+
+        private List<TradeRow> page = List.of();
+
+        private int next;
+
+        private KeysetCursor cursor = KeysetCursor.first(true);
+
+        private boolean exhausted;
+
+        TradeReplay(Long walletId) {
+            this.walletId = walletId;
+        }
+
+        /**
+         * Apply every trade executed before {@code end} to the holdings.
+         */
+        void applyUntil(LocalDateTime end, Map<String, double[]> holdings) {
+            while (true) {
+                if (next == page.size()) {
+                    if (exhausted) {
+                        return;
+                    }
+                    page = tradeRepository.findTradeRowsAfterCreatedAt(walletId, cursor.createdAt(), cursor.id(),
+                            PageRequest.of(0, TRADE_PAGE_SIZE));
+                    next = 0;
+                    exhausted = page.size() < TRADE_PAGE_SIZE;
+                    if (page.isEmpty()) {
+                        return;
+                    }
+                    TradeRow last = page.get(page.size() - 1);
+                    cursor = new KeysetCursor(last.createdAt(), last.id());
+                }
+                TradeRow trade = page.get(next);
+                if (!trade.createdAt().isBefore(end)) {
+                    return;
+                }
+                apply(trade, holdings);
+                next++;
+            }
+        }
+
+        private static void apply(TradeRow trade, Map<String, double[]> holdings) {
+            String symbol = trade.symbol().toUpperCase();
+            double[] holding = holdings.computeIfAbsent(symbol, key -> new double[2]);
+            if (trade.side() == AssetStatus.SELL) {
+                // Sold at the average cost of the holding, like the live positions
+                double averageCost = holding[0] > 0 ? holding[1] / holding[0] : 0;
+                holding[0] -= trade.quantity();
+                holding[1] -= averageCost * trade.quantity();
+                if (holding[0] <= 0) {
+                    holdings.remove(symbol);
+                }
+            } else {
+                holding[0] += trade.quantity();
+                holding[1] += trade.quantity() * trade.price();
+            }
+        }
+    }
+
+    /**
+     * Reads the candles of the traded symbols in bucket order, one window of buckets at a time.
+     */
+    private final class CandleReplay {
+
+        private final List<String> symbols;
+
+        private final PriceResolution resolution;
+
+        private List<PriceCandleRow> window = List.of();
+
+        private int next;
+
+        private LocalDateTime windowEnd;
+
+        CandleReplay(List<String> symbols, PriceResolution resolution) {
+            this.symbols = symbols;
+            this.resolution = resolution;
+        }
+
+        /**
+         * Take the close of every candle of the bucket as the latest price of its symbol.
+         */
+        void applyBucket(LocalDateTime bucket, Map<String, Double> closes) {
+            if (symbols.isEmpty()) {
+                return;
+            }
+            if (windowEnd == null || !bucket.isBefore(windowEnd)) {
+                windowEnd = bucket.plus(CANDLE_WINDOW, resolution.getUnit());
+                window = priceCandleRepository.findCandleRows(symbols, resolution, bucket, windowEnd);
+                next = 0;
+            }
+            while (next < window.size() && !window.get(next).bucketStart().isAfter(bucket)) {
+                PriceCandleRow candle = window.get(next++);
+                closes.put(candle.symbol(), candle.close());
+            }
+        }
+    }
+}
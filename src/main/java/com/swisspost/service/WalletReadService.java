@@ -0,0 +1,152 @@
+package com.swisspost.service;
+
+import com.swisspost.dto.HoldingSummary;
+import com.swisspost.dto.KeysetPage;
+import com.swisspost.dto.PositionRow;
+import com.swisspost.dto.TradeRow;
+import com.swisspost.dto.WalletSummary;
+import com.swisspost.model.Wallet;
+import com.swisspost.repository.AssetRepository;
+import com.swisspost.repository.TradeRepository;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Read-only views of a wallet that stay cheap for wallets with many positions and trades. Listings
+ * are keyset-paginated, so every page is an index range scan whatever its depth, and return
+ * projections instead of entities, so nothing is loaded into the persistence context.
+ */
+@Service
+public class WalletReadService {
+
+    static final int DEFAULT_PAGE_SIZE = 50;
+
+    static final int MAX_PAGE_SIZE = 500;
+
+    private final WalletService walletService;
+
+    private final AssetRepository assetRepository;
+
+    private final TradeRepository tradeRepository;
+
+    private final AssetService assetService;
+
+    public WalletReadService(WalletService walletService, AssetRepository assetRepository,
+                             TradeRepository tradeRepository, AssetService assetService) {
+        this.walletService = walletService;
+        this.assetRepository = assetRepository;
+        this.tradeRepository = tradeRepository;
+        this.assetService = assetService;
+    }
+
+    /**
+     * List one page of the positions of a wallet.
+     *
+     * @param cursor The {@link KeysetPage#nextCursor()} of the previous page, or null for the first page.
+     * @param size   The page size, at most {@value #MAX_PAGE_SIZE}.
+     */
+    public KeysetPage<PositionRow> positions(Long walletId, KeysetSort sort, boolean ascending, String cursor,
+                                             int size) {
+        walletService.getWallet(walletId);
+        KeysetCursor from = cursor == null || cursor.isBlank() ? KeysetCursor.first(ascending) : KeysetCursor.decode(cursor);
+        Pageable limit = PageRequest.of(0, pageSize(size) + 1);
+
+        List<PositionRow> rows;
+        if (sort == KeysetSort.ID) {
+            rows = ascending
+                    ? assetRepository.findPositionRowsAfter(walletId, from.id(), limit)
+                    : assetRepository.findPositionRowsBefore(walletId, from.id(), limit);
+        } else {
+            rows = ascending
+                    ? assetRepository.findPositionRowsAfterCreatedAt(walletId, from.createdAt(), from.id(), limit)
+                    : assetRepository.findPositionRowsBeforeCreatedAt(walletId, from.createdAt(), from.id(), limit);
+        }
+        return page(rows, pageSize(size), row -> new KeysetCursor(row.createdAt(), row.id()));
+    }
+
+    /**
+     * List one page of the trade ledger of a wallet.
+     *
+     * @param cursor The {@link KeysetPage#nextCursor()} of the previous page, or null for the first page.
+     * @param size   The page size, at most {@value #MAX_PAGE_SIZE}.
+     */
+    public KeysetPage<TradeRow> trades(Long walletId, KeysetSort sort, boolean ascending, String cursor, int size) {
+        walletService.getWallet(walletId);
+        KeysetCursor from = cursor == null || cursor.isBlank() ? KeysetCursor.first(ascending) : KeysetCursor.decode(cursor);
+        Pageable limit = PageRequest.of(0, pageSize(size) + 1);
+
+        List<TradeRow> rows;
+        if (sort == KeysetSort.ID) {
+            rows = ascending
+                    ? tradeRepository.findTradeRowsAfter(walletId, from.id(), limit)
+                    : tradeRepository.findTradeRowsBefore(walletId, from.id(), limit);
+        } else {
+            rows = ascending
+                    ? tradeRepository.findTradeRowsAfterCreatedAt(walletId, from.createdAt(), from.id(), limit)
+                    : tradeRepository.findTradeRowsBeforeCreatedAt(walletId, from.createdAt(), from.id(), limit);
+        }
+        return page(rows, pageSize(size), row -> new KeysetCursor(row.createdAt(), row.id()));
+    }
+
+    /**
+     * Summarize a wallet with one aggregated entry per held symbol instead of its individual assets.
+     * Quantities and cost come from the positions table; symbols without a price, before the first
+     * refresh or once delisted, are listed without a value instead of failing the summary.
+     */
+    public WalletSummary summary(Long walletId) {
+        return summary(walletService.getWallet(walletId));
+    }
+
+    public WalletSummary summaryByOwner(String ownerKey) {
+        return summary(walletService.getWalletByOwner(ownerKey));
+    }
+
+    private WalletSummary summary(Wallet wallet) {
+        PriceSnapshot prices = assetService.getPriceSnapshot();
+        List<PositionRow> rows = assetRepository.findPositionRows(wallet.getId());
+        List<HoldingSummary> holdings = new ArrayList<>(rows.size());
+        double totalValue = 0;
+        boolean allPriced = true;
+        for (PositionRow row : rows) {
+            HoldingSummary holding = holding(row.symbol(), row.quantity(), row.quantity() * row.price(), prices);
+            if (holding.currentValue() == null) {
+                allPriced = false;
+            } else {
+                totalValue += holding.currentValue();
+            }
+            holdings.add(holding);
+        }
+        return new WalletSummary(wallet.getId(), wallet.getOwnerKey(), wallet.getVersion(), prices.getVersion(),
+                allPriced ? totalValue : null, holdings);
+    }
+
+    private static HoldingSummary holding(String symbol, double quantity, double costBasis, PriceSnapshot prices) {
+        if (!prices.hasPrice(symbol)) {
+            return new HoldingSummary(symbol, quantity, costBasis, null, null, null);
+        }
+        PositionValuation valuation = new PositionValuation(symbol, quantity, costBasis,
+                quantity * prices.priceOf(symbol));
+        return new HoldingSummary(symbol, quantity, costBasis, valuation.currentValue(), valuation.profitAndLoss(),
+                WalletValueCalculator.roundedGrowthRate(valuation));
+    }
+
+    private static int pageSize(int size) {
+        return size <= 0 ? DEFAULT_PAGE_SIZE : Math.min(size, MAX_PAGE_SIZE);
+    }
+
+    /**
+     * Trim the one row fetched beyond the page, whose presence tells that another page follows.
+     */
+    private static <T> KeysetPage<T> page(List<T> rows, int size, Function<T, KeysetCursor> cursorOf) {
+        if (rows.size() <= size) {
+            return new KeysetPage<>(rows, null);
+        }
+        List<T> items = rows.subList(0, size);
+        return new KeysetPage<>(List.copyOf(items), cursorOf.apply(items.get(size - 1)).encode());
+    }
+}
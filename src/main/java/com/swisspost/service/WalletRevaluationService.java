@@ -0,0 +1,164 @@
+package com.swisspost.service;
+
+import com.swisspost.config.ValuationProperties;
+import com.swisspost.dto.WalletAnalytics;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Reprices the cached wallet valuations on every {@link PriceDelta}. Only the symbols whose price
+ * changed are looked up in the symbol index of {@link WalletValuationCache}, and only the wallets
+ * holding one of them are repriced, from their in-memory {@link WalletAggregates} and in parallel
+ * batches on the valuation pool. A tick therefore costs in proportion to the positions it moved, not to the number
+ * of wallets, and never reads the database.
+ */
+@Service
+public class WalletRevaluationService {
+
+    private final WalletAggregateService walletAggregateService;
+
+    private final WalletValueCalculator walletValueCalculator;
+
+    private final WalletValuationCache walletValuationCache;
+
+    private final ValuationExecutor valuationExecutor;
+
+    private final ValuationProperties valuationProperties;
+
+    private final List<Consumer<PriceSnapshot>> revaluationListeners = new CopyOnWriteArrayList<>();
+
+    // Reprices off the publishing thread; a tick still waiting when the next one arrives is dropped
+    private final ThreadPoolExecutor revaluationThread = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(1), runnable -> {
+        Thread thread = new Thread(runnable, "wallet-revaluation");
+        thread.setDaemon(true);
+        return thread;
+    }, new ThreadPoolExecutor.DiscardOldestPolicy());
+
+    // Only read and written by the revaluation thread
+    private PriceSnapshot lastRevalued;
+
+    private long lastSequence;
+
+    private final Timer tickTimer;
+
+    private final Counter changedSymbols;
+
+    private final Counter revaluedWallets;
+
+    public WalletRevaluationService(PriceFetcher priceFetcher, WalletAggregateService walletAggregateService,
+                                    WalletValueCalculator walletValueCalculator,
+                                    WalletValuationCache walletValuationCache, ValuationExecutor valuationExecutor,
+                                    ValuationProperties valuationProperties, MeterRegistry meterRegistry) {
+        this.walletAggregateService = walletAggregateService;
+        this.walletValueCalculator = walletValueCalculator;
+        this.walletValuationCache = walletValuationCache;
+        this.valuationExecutor = valuationExecutor;
+        this.valuationProperties = valuationProperties;
+        this.tickTimer = Timer.builder("wallet.revaluation.tick")
+                .description("Time to reprice the cached wallets affected by a price tick")
+                .register(meterRegistry);
+        this.changedSymbols = Counter.builder("wallet.revaluation.symbols")
+                .description("Symbols whose price changed between two revalued ticks")
+                .register(meterRegistry);
+        this.revaluedWallets = Counter.builder("wallet.revaluation.wallets")
+                .description("Cached wallets repriced because a price they hold changed")
+                .register(meterRegistry);
+
+        priceFetcher.addDeltaListener(delta -> revaluationThread.execute(() -> revalue(delta)));
+    }
+
+    /**
+     * Register a listener called with every snapshot once the cached valuations have been repriced
+     * for it, on the revaluation thread.
+     */
+    public void addRevaluationListener(Consumer<PriceSnapshot> listener) {
+        revaluationListeners.add(listener);
+    }
+
+    /**
+     * Reprice the cached wallets holding a symbol whose price changed since the last revalued snapshot
+     * and publish them to the cache. The changes are those of the delta, or after a dropped delta the
+     * difference to the last revalued snapshot.
+     */
+    void revalue(PriceDelta delta) {
+        PriceSnapshot snapshot = delta.snapshot();
+        if (lastRevalued != null && snapshot.getVersion() <= lastRevalued.getVersion()) {
+            return;
+        }
+        long start = System.nanoTime();
+        boolean skippedDeltas = !delta.follows(lastSequence);
+        List<String> changed = skippedDeltas ? snapshot.changedSymbols(lastRevalued) : delta.changedSymbols();
+        List<Long> walletIds = new ArrayList<>(walletValuationCache.walletsHolding(changed));
+
+        Map<Long, WalletValuationCache.Revaluation> revaluations = new ConcurrentHashMap<>();
+        try {
+            valuationExecutor.forEachBatch(walletIds, valuationProperties.getRevaluationBatchSize(),
+                    batch -> batch.forEach(walletId -> {
+                        WalletValuationCache.Revaluation revaluation = revalue(walletId, snapshot);
+                        if (revaluation != null) {
+                            revaluations.put(walletId, revaluation);
+                        }
+                    }));
+        } catch (RuntimeException e) {
+            System.err.println("Error repricing wallets for price snapshot " + snapshot.getVersion() + ": "
+                    + e.getMessage());
+        }
+        // The wallets not repriced are dropped from the cache and valued again on their next read
+        walletValuationCache.publishRevaluation(snapshot.getVersion(), skippedDeltas, changed, revaluations);
+        lastRevalued = snapshot;
+        lastSequence = delta.sequence();
+
+        changedSymbols.increment(changed.size());
+        revaluedWallets.increment(revaluations.size());
+        tickTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+
+        for (Consumer<PriceSnapshot> listener : revaluationListeners) {
+            try {
+                listener.accept(snapshot);
+            } catch (RuntimeException e) {
+                System.err.println("Wallet revaluation listener failed: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Reprice one wallet from its aggregates.
+     *
+     * @return The repriced valuation, or null when the wallet has no aggregates in memory, traded while
+     * it was repriced or holds a symbol without a price.
+     */
+    private WalletValuationCache.Revaluation revalue(Long walletId, PriceSnapshot snapshot) {
+        WalletAggregates aggregates = walletAggregateService.cachedAggregates(walletId);
+        if (aggregates == null) {
+            return null;
+        }
+        try {
+            long walletVersion = aggregates.getWalletVersion();
+            WalletAnalytics analytics = walletValueCalculator.analyze(aggregates, snapshot);
+            return aggregates.getWalletVersion() == walletVersion
+                    ? new WalletValuationCache.Revaluation(walletVersion, analytics)
+                    : null;
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        revaluationThread.shutdownNow();
+    }
+}
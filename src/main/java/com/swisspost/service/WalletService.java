@@ -1,123 +1,342 @@
 package com.swisspost.service;
 
+import com.swisspost.dto.BulkTradeResult;
+import com.swisspost.dto.TradeRow;
 import com.swisspost.exception.AssetNotFoundException;
 import com.swisspost.exception.InvalidAssetQuantityException;
 import com.swisspost.exception.WalletNotFoundException;
 import com.swisspost.model.Asset;
 import com.swisspost.model.AssetStatus;
+import com.swisspost.model.Trade;
 import com.swisspost.model.Wallet;
 import com.swisspost.repository.AssetRepository;
+import com.swisspost.repository.TradeRepository;
+import com.swisspost.repository.TrackedSymbolRepository;
 import com.swisspost.repository.WalletRepository;
+import org.hibernate.Hibernate;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.time.LocalDateTime;
 import java.util.*;
-import java.util.stream.Collectors;
 
 @Service
 public class WalletService {
 
+    // Owner of the wallet served by the endpoints that do not name a wallet
+    public static final String DEFAULT_OWNER_KEY = "default";
+
     private final WalletRepository walletRepository;
     private final AssetRepository assetRepository;
+    private final TradeRepository tradeRepository;
+    private final TrackedSymbolRepository trackedSymbolRepository;
 
     private final AssetService assetService;
 
-    public WalletService(WalletRepository walletRepository, AssetRepository assetRepository, AssetService assetService) {
+    private final WalletAggregateService walletAggregateService;
+
+    private final WalletValuationCache walletValuationCache;
+
+    // Buys price new symbols first and only then open the transaction that locks the wallet
+    private final TransactionTemplate transactionTemplate;
+
+    public WalletService(WalletRepository walletRepository, AssetRepository assetRepository,
+                         TradeRepository tradeRepository, TrackedSymbolRepository trackedSymbolRepository,
+                         AssetService assetService, WalletAggregateService walletAggregateService,
+                         WalletValuationCache walletValuationCache, PlatformTransactionManager transactionManager) {
         this.walletRepository = walletRepository;
         this.assetRepository = assetRepository;
+        this.tradeRepository = tradeRepository;
+        this.trackedSymbolRepository = trackedSymbolRepository;
         this.assetService = assetService;
+        this.walletAggregateService = walletAggregateService;
+        this.walletValuationCache = walletValuationCache;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
     }
 
-    @Transactional
     public Wallet createWallet() {
-        List<Wallet> foundWallets = walletRepository.findAll();
-        if (foundWallets.size() == 0) {
-            Wallet walletInstance = Wallet.getWalletInstance();
-            return walletRepository.save(walletInstance);
+        return createWallet(DEFAULT_OWNER_KEY);
+    }
+
+    /**
+     * Create the wallet of an owner, or return it when the owner already has one. Not transactional:
+     * the insert commits on its own, so when a concurrent request created the wallet first, the unique
+     * owner key index rejects it and the winner's wallet is read in a fresh transaction.
+     *
+     * @throws IllegalArgumentException If the owner key is null or blank.
+     */
+    public Wallet createWallet(String ownerKey) {
+        if (ownerKey == null || ownerKey.isBlank()) {
+            throw new IllegalArgumentException("Owner key cannot be null or blank");
+        }
+        Optional<Wallet> existing = walletRepository.findByOwnerKey(ownerKey);
+        if (existing.isPresent()) {
+            return existing.get();
+        }
+        try {
+            return walletRepository.save(new Wallet(ownerKey));
+        } catch (DataIntegrityViolationException e) {
+            return walletRepository.findByOwnerKey(ownerKey).orElseThrow(() -> e);
         }
-        return foundWallets.get(0);
     }
 
-    @Transactional
     public Wallet addAssetToWallet(Wallet aWallet, Asset asset) {
-        Wallet foundWallet = walletRepository.findById(aWallet.getId())
-                .orElseThrow(() -> new WalletNotFoundException(
-                        String.format("Wallet %s was not found.", aWallet.getId())));
+        return addAssetToWallet(aWallet.getId(), asset);
+    }
 
+    /**
+     * Buy an asset: append a BUY trade to the ledger and update the wallet's position in the symbol
+     * in place, without loading the wallet's other positions.
+     */
+    public Wallet addAssetToWallet(Long walletId, Asset asset) {
         AssetValidator.validate(asset);
+        // A symbol no wallet held before gets priced now instead of at the next tick, before the wallet is locked
+        assetService.priceSymbols(List.of(asset.getSymbol()));
+        return transactionTemplate.execute(status -> buy(walletId, asset));
+    }
 
-        double currentPrice =  assetService.getCurrentAssetPrice(asset.getSymbol());
+    private Wallet buy(Long walletId, Asset asset) {
+        Wallet foundWallet = lockWalletForTrade(walletId);
 
-        Asset newAsset = new Asset(asset.getSymbol(), asset.getQuantity(), currentPrice, AssetStatus.BUY);
-        assetRepository.save(newAsset);
+        double currentPrice =  assetService.getCurrentAssetPrice(asset.getSymbol());
+        tradeRepository.save(new Trade(walletId, asset.getSymbol(), asset.getQuantity(), currentPrice, AssetStatus.BUY));
 
-        Map<String, Asset> assetMap = foundWallet.getCryptoAssets()
-                                        .stream()
-                                        .collect(Collectors.toMap(Asset::getSymbol, a -> a));
+        Optional<Asset> existingPosition = assetRepository.findByWalletIdAndSymbol(walletId, asset.getSymbol());
+        if (existingPosition.isPresent()) {
+            // updating the quantity and the average purchase price of the existing position
+            existingPosition.get().buy(asset.getQuantity(), currentPrice);
+        } else {
+            Asset position = assetRepository.save(
+                    new Asset(foundWallet, asset.getSymbol(), asset.getQuantity(), currentPrice, AssetStatus.BUY));
+            trackedSymbolRepository.track(asset.getSymbol(), position.getCreatedAt());
+            if (Hibernate.isInitialized(foundWallet.getCryptoAssets())) {
+                foundWallet.addCryptoAsset(position);
+            }
+        }
 
-        assetMap.compute(asset.getSymbol(), (symbol, existingAsset) -> {
-           if (existingAsset != null) {
-               // updating the quantity of the existing asset in the wallet
-               double newQuantity = existingAsset.getQuantity() + newAsset.getQuantity();
-               return new Asset(existingAsset.getSymbol(), newQuantity, existingAsset.getPrice(), AssetStatus.BUY);
-           }
-           return newAsset;
+        afterCommit(() -> {
+            assetService.trackSymbols(List.of(asset.getSymbol()));
+            walletAggregateService.recordBuy(foundWallet.getId(), foundWallet.getVersion(),
+                    asset.getSymbol(), asset.getQuantity(), currentPrice);
+            walletValuationCache.invalidate(foundWallet.getId());
         });
-
-        foundWallet.setCryptoAssets(new HashSet<>(assetMap.values()));
-        return walletRepository.save(foundWallet);
+        return foundWallet;
     }
 
     @Transactional
     public Wallet removeAssetFromWallet(Wallet aWallet, Asset asset) {
-        Wallet foundWallet = walletRepository.findById(aWallet.getId())
-                .orElseThrow(() -> new WalletNotFoundException(
-                        String.format("Wallet %s was not found.", aWallet.getId())));
+        return removeAssetFromWallet(aWallet.getId(), asset);
+    }
 
-        AssetValidator.validate(asset);
+    /**
+     * Sell an asset: append a SELL trade to the ledger and reduce the wallet's position in the symbol
+     * in place, or delete the position when it is sold entirely.
+     */
+    @Transactional
+    public Wallet removeAssetFromWallet(Long walletId, Asset asset) {
+        Wallet foundWallet = lockWalletForTrade(walletId);
 
-        // Create a map for efficient lookup of assets in the wallet
-        Map<String, Asset> assetMap = foundWallet.getCryptoAssets()
-                .stream()
-                .collect(Collectors.toMap(Asset::getSymbol, a -> a));
+        AssetValidator.validate(asset);
 
-        // Check if the asset exists in the wallet
-        Asset existingAsset = assetMap.get(asset.getSymbol());
-        if (existingAsset == null) {
-            throw new AssetNotFoundException(String.format("Asset %s not found in the wallet.", asset.getSymbol()));
-        }
+        Asset position = assetRepository.findByWalletIdAndSymbol(walletId, asset.getSymbol())
+                .orElseThrow(() -> new AssetNotFoundException(
+                        String.format("Asset %s not found in the wallet.", asset.getSymbol())));
 
         // Calculate the new quantity after removal
-        double newQuantity = existingAsset.getQuantity() - asset.getQuantity();
+        double newQuantity = position.getQuantity() - asset.getQuantity();
 
         if (newQuantity < 0) {
             throw new InvalidAssetQuantityException(
                     String.format("Cannot remove more quantity than available for asset %s. Current quantity: %.2f",
-                            asset.getSymbol(), existingAsset.getQuantity()));
+                            asset.getSymbol(), position.getQuantity()));
         } else if (newQuantity == 0) {
-            // If the new quantity is zero, remove the asset entirely from the wallet
-            assetMap.remove(existingAsset.getSymbol());
-            foundWallet.removeCryptoAsset(existingAsset);
+            // If the new quantity is zero, remove the position entirely from the wallet
+            if (Hibernate.isInitialized(foundWallet.getCryptoAssets())) {
+                foundWallet.removeCryptoAsset(position);
+            }
+            assetRepository.delete(position);
         } else {
-            // Update the asset with the reduced quantity
-            Asset updatedAsset = new Asset(existingAsset.getSymbol(), newQuantity, existingAsset.getPrice(), AssetStatus.SELL);
-            assetMap.put(existingAsset.getSymbol(), updatedAsset);
+            position.sell(asset.getQuantity());
         }
 
-        foundWallet.setCryptoAssets(new HashSet<>(assetMap.values()));
-
         double currentPrice =  assetService.getCurrentAssetPrice(asset.getSymbol());
-        Asset newAsset = new Asset(asset.getSymbol(), asset.getQuantity(), currentPrice, AssetStatus.SELL);
-        assetRepository.save(newAsset);
+        tradeRepository.save(new Trade(walletId, asset.getSymbol(), asset.getQuantity(), currentPrice, AssetStatus.SELL));
+
+        afterCommit(() -> {
+            walletAggregateService.recordSell(foundWallet.getId(), foundWallet.getVersion(),
+                    asset.getSymbol(), asset.getQuantity());
+            walletValuationCache.invalidate(foundWallet.getId());
+        });
+        return foundWallet;
+    }
+
+    /**
+     * Import a batch of trades into a wallet in one transaction. The whole batch is validated and
+     * priced from a single price snapshot before anything is written; positions of all symbols are
+     * loaded with one query and trades and positions are written with JDBC batching. A trade without
+     * {@link AssetStatus#SELL} status is a buy. New symbols are priced before the transaction starts.
+     *
+     * @return The number of trades and positions written, and the price version used.
+     */
+    public BulkTradeResult addTradesToWallet(Long walletId, List<Asset> assets) {
+        assets.forEach(AssetValidator::validate);
+        assetService.priceSymbols(assets.stream().map(Asset::getSymbol).distinct().toList());
+        return transactionTemplate.execute(status -> applyTradesOf(walletId, assets));
+    }
+
+    private BulkTradeResult applyTradesOf(Long walletId, List<Asset> assets) {
+        Wallet foundWallet = lockWalletForTrade(walletId);
 
-        return walletRepository.save(foundWallet);
+        PriceSnapshot prices = assetService.getPriceSnapshot();
+        List<Trade> trades = new ArrayList<>(assets.size());
+        for (Asset asset : assets) {
+            AssetStatus side = asset.getAssetStatus() == AssetStatus.SELL ? AssetStatus.SELL : AssetStatus.BUY;
+            trades.add(new Trade(walletId, asset.getSymbol(), asset.getQuantity(), prices.priceOf(asset.getSymbol()), side));
+        }
+
+        int positionCount = applyTrades(foundWallet, trades);
+        return new BulkTradeResult(walletId, trades.size(), positionCount, prices.getVersion());
+    }
+
+    /**
+     * Import historical trades into a wallet in one transaction, like
+     * {@link #addTradesToWallet(Long, List)}. Trades keep the price and time they were executed at;
+     * only rows without a price are priced from the current snapshot.
+     */
+    public BulkTradeResult importTrades(Long walletId, List<TradeRow> rows) {
+        rows.forEach(row -> AssetValidator.validate(row.symbol(), row.quantity()));
+        assetService.priceSymbols(rows.stream().map(TradeRow::symbol).distinct().toList());
+        return transactionTemplate.execute(status -> importRows(walletId, rows));
+    }
+
+    private BulkTradeResult importRows(Long walletId, List<TradeRow> rows) {
+        Wallet foundWallet = lockWalletForTrade(walletId);
+
+        PriceSnapshot prices = assetService.getPriceSnapshot();
+        List<Trade> trades = new ArrayList<>(rows.size());
+        for (TradeRow row : rows) {
+            double price = row.price() > 0 ? row.price() : prices.priceOf(row.symbol());
+            AssetStatus side = row.side() == AssetStatus.SELL ? AssetStatus.SELL : AssetStatus.BUY;
+            LocalDateTime createdAt = row.createdAt() != null ? row.createdAt() : LocalDateTime.now();
+            trades.add(new Trade(walletId, row.symbol(), row.quantity(), price, side, createdAt));
+        }
+
+        int positionCount = applyTrades(foundWallet, trades);
+        return new BulkTradeResult(walletId, trades.size(), positionCount, prices.getVersion());
+    }
+
+    /**
+     * Apply trades to the positions of a locked wallet and write trades and positions in batches.
+     *
+     * @return The number of positions the trades touched.
+     */
+    private int applyTrades(Wallet foundWallet, List<Trade> trades) {
+        Long walletId = foundWallet.getId();
+        Set<String> symbols = new HashSet<>();
+        trades.forEach(trade -> symbols.add(trade.getSymbol()));
+        Map<String, Asset> positions = new HashMap<>();
+        assetRepository.findByWalletIdAndSymbolIn(walletId, symbols)
+                .forEach(position -> positions.put(position.getSymbol(), position));
+
+        List<Asset> newPositions = new ArrayList<>();
+        for (Trade trade : trades) {
+            Asset position = positions.get(trade.getSymbol());
+            if (trade.getSide() == AssetStatus.BUY) {
+                if (position == null) {
+                    position = new Asset(foundWallet, trade.getSymbol(), trade.getQuantity(), trade.getPrice(), AssetStatus.BUY);
+                    positions.put(trade.getSymbol(), position);
+                    newPositions.add(position);
+                } else {
+                    position.buy(trade.getQuantity(), trade.getPrice());
+                }
+            } else {
+                if (position == null) {
+                    throw new AssetNotFoundException(String.format("Asset %s not found in the wallet.", trade.getSymbol()));
+                }
+                if (position.getQuantity() < trade.getQuantity()) {
+                    throw new InvalidAssetQuantityException(
+                            String.format("Cannot remove more quantity than available for asset %s. Current quantity: %.2f",
+                                    trade.getSymbol(), position.getQuantity()));
+                }
+                position.sell(trade.getQuantity());
+            }
+        }
+
+        // Positions sold out are only removed at the end, a later trade of the batch may buy them again
+        List<Asset> soldOut = new ArrayList<>();
+        positions.values().forEach(position -> {
+            if (position.getQuantity() <= 0) {
+                soldOut.add(position);
+            }
+        });
+        newPositions.removeAll(soldOut);
+        soldOut.removeIf(position -> position.getId() == null);
+
+        tradeRepository.saveAll(trades);
+        assetRepository.saveAll(newPositions);
+        assetRepository.deleteAll(soldOut);
+        newPositions.forEach(position -> trackedSymbolRepository.track(position.getSymbol(), position.getCreatedAt()));
+        if (Hibernate.isInitialized(foundWallet.getCryptoAssets())) {
+            newPositions.forEach(foundWallet::addCryptoAsset);
+            soldOut.forEach(foundWallet::removeCryptoAsset);
+        }
+
+        afterCommit(() -> {
+            assetService.trackSymbols(trades.stream()
+                    .filter(trade -> trade.getSide() == AssetStatus.BUY)
+                    .map(Trade::getSymbol)
+                    .distinct()
+                    .toList());
+            walletAggregateService.recordTrades(foundWallet.getId(), foundWallet.getVersion(), trades);
+            walletValuationCache.invalidate(foundWallet.getId());
+        });
+        return positions.size();
     }
 
     public Wallet getWallet() {
-        List<Wallet> walletList = walletRepository.findAll();
-        if (walletList.size() > 0) {
-            return walletList.get(0);
+        return getWalletByOwner(DEFAULT_OWNER_KEY);
+    }
+
+    public Wallet getWallet(Long walletId) {
+        return walletRepository.findById(walletId)
+                .orElseThrow(() -> new WalletNotFoundException(
+                        String.format("Wallet %s was not found.", walletId)));
+    }
+
+    /**
+     * Load a wallet for a trade. The row lock serializes concurrent trades of the wallet and its
+     * version is incremented once per trade, which keeps the incremental aggregates in order.
+     */
+    private Wallet lockWalletForTrade(Long walletId) {
+        return walletRepository.findWithLockById(walletId)
+                .orElseThrow(() -> new WalletNotFoundException(
+                        String.format("Wallet %s was not found.", walletId)));
+    }
+
+    public Wallet getWalletByOwner(String ownerKey) {
+        return walletRepository.findByOwnerKey(ownerKey)
+                .orElseThrow(() -> new WalletNotFoundException(
+                        String.format("Wallet of owner %s was not found.", ownerKey)));
+    }
+
+    /**
+     * Run the action once the current transaction has committed, or right away outside a transaction.
+     */
+    private static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
         }
-        throw new WalletNotFoundException("Wallet does not exist");
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
     }
 }
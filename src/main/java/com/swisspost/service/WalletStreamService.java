@@ -0,0 +1,320 @@
+package com.swisspost.service;
+
+import com.swisspost.config.StreamProperties;
+import com.swisspost.dto.WalletValueEvent;
+import com.swisspost.exception.StreamCapacityException;
+import com.swisspost.exception.WalletNotFoundException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Pushes the live value of wallets to their subscribers as server-sent events. On every price tick
+ * each subscribed wallet is valued once, however many clients follow it, and the value is handed to
+ * every subscriber. A subscriber only ever holds the latest unsent value: a slow client skips the
+ * values it could not keep up with, and is disconnected once one of its writes has been blocked for
+ * more than {@code stream.sendTimeout}. Waiting for a sender thread does not count against a
+ * subscriber, so clients stalled in a write never get healthy ones disconnected.
+ */
+@Service
+public class WalletStreamService {
+
+    static final String EVENT_NAME = "wallet-value";
+
+    private final WalletService walletService;
+
+    private final WalletValueCalculator walletValueCalculator;
+
+    private final StreamProperties streamProperties;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final Map<Long, List<Subscriber>> subscribersByWallet = new ConcurrentHashMap<>();
+
+    private final AtomicInteger subscriberCount = new AtomicInteger();
+
+    // Values the subscribed wallets off the publishing thread; a tick still waiting when the next one arrives is dropped
+    private final ThreadPoolExecutor valuationThread = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(1), runnable -> {
+        Thread thread = new Thread(runnable, "wallet-stream-valuation");
+        thread.setDaemon(true);
+        return thread;
+    }, new ThreadPoolExecutor.DiscardOldestPolicy());
+
+    // Writes the events, so a client stalled in a socket write never delays the next tick
+    private final ExecutorService senders;
+
+    private final Supplier<SseEmitter> emitterFactory;
+
+    // Monotonic time in nanoseconds, to measure how long a write has been blocked
+    private final LongSupplier nanoClock;
+
+    private final Counter sentEvents;
+
+    private final Counter conflatedEvents;
+
+    private final Counter slowSubscribers;
+
+    @Autowired
+    public WalletStreamService(WalletRevaluationService walletRevaluationService, WalletService walletService,
+                               WalletValueCalculator walletValueCalculator,
+                               PlatformTransactionManager transactionManager, StreamProperties streamProperties,
+                               MeterRegistry meterRegistry) {
+        this(walletRevaluationService, walletService, walletValueCalculator, transactionManager, streamProperties,
+                meterRegistry, senders(streamProperties),
+                () -> new SseEmitter(streamProperties.getEmitterTimeout()), System::nanoTime);
+    }
+
+    WalletStreamService(WalletRevaluationService walletRevaluationService, WalletService walletService,
+                        WalletValueCalculator walletValueCalculator, PlatformTransactionManager transactionManager,
+                        StreamProperties streamProperties, MeterRegistry meterRegistry, ExecutorService senders,
+                        Supplier<SseEmitter> emitterFactory, LongSupplier nanoClock) {
+        this.walletService = walletService;
+        this.walletValueCalculator = walletValueCalculator;
+        this.streamProperties = streamProperties;
+        this.senders = senders;
+        this.emitterFactory = emitterFactory;
+        this.nanoClock = nanoClock;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        // The assets of a wallet are loaded lazily while it is valued
+        this.transactionTemplate.setReadOnly(true);
+
+        Gauge.builder("wallet.stream.subscribers", subscriberCount, AtomicInteger::get)
+                .description("Open live wallet value streams")
+                .register(meterRegistry);
+        this.sentEvents = Counter.builder("wallet.stream.events.sent")
+                .description("Wallet values written to subscribers")
+                .register(meterRegistry);
+        this.conflatedEvents = Counter.builder("wallet.stream.events.conflated")
+                .description("Wallet values replaced by a newer one before they were sent")
+                .register(meterRegistry);
+        this.slowSubscribers = Counter.builder("wallet.stream.subscribers.dropped")
+                .description("Subscribers disconnected for a write blocked longer than the send timeout")
+                .register(meterRegistry);
+
+        // After the tick has repriced the cached valuations, which most wallets are then read from
+        walletRevaluationService.addRevaluationListener(snapshot -> valuationThread.execute(this::publishTick));
+    }
+
+    // A full queue rejects the drain and leaves the value pending, so memory stays bounded however many clients stall
+    private static ExecutorService senders(StreamProperties streamProperties) {
+        int threads = Math.max(1, streamProperties.getSenderThreads());
+        return new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, streamProperties.getSenderQueueCapacity())), runnable -> {
+            Thread thread = new Thread(runnable, "wallet-stream-sender");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Open a live value stream of a wallet. The current value is sent right away, then one value per
+     * price tick.
+     *
+     * @throws WalletNotFoundException  If the wallet does not exist.
+     * @throws StreamCapacityException If {@code stream.maxSubscribers} streams are already open.
+     */
+    public SseEmitter subscribe(Long walletId) {
+        // Refused before the wallet is valued, so a full server does no work for the streams it turns away
+        if (subscriberCount.incrementAndGet() > streamProperties.getMaxSubscribers()) {
+            subscriberCount.decrementAndGet();
+            throw new StreamCapacityException("Too many live wallet streams are open, retry later.");
+        }
+        WalletValueEvent current;
+        try {
+            current = valueOf(walletId);
+        } catch (RuntimeException e) {
+            subscriberCount.decrementAndGet();
+            throw e;
+        }
+
+        SseEmitter emitter = emitterFactory.get();
+        Subscriber subscriber = new Subscriber(walletId, emitter);
+        subscribersByWallet.compute(walletId, (id, subscribers) -> {
+            List<Subscriber> walletSubscribers = subscribers == null ? new CopyOnWriteArrayList<>() : subscribers;
+            walletSubscribers.add(subscriber);
+            return walletSubscribers;
+        });
+        emitter.onCompletion(() -> remove(subscriber));
+        emitter.onTimeout(() -> remove(subscriber));
+        emitter.onError(e -> remove(subscriber));
+
+        subscriber.offer(current);
+        return emitter;
+    }
+
+    /**
+     * Value every subscribed wallet once at the latest prices and hand the value to its subscribers.
+     */
+    void publishTick() {
+        for (Map.Entry<Long, List<Subscriber>> entry : subscribersByWallet.entrySet()) {
+            WalletValueEvent event;
+            try {
+                event = valueOf(entry.getKey());
+            } catch (WalletNotFoundException e) {
+                entry.getValue().forEach(this::disconnect);
+                continue;
+            } catch (RuntimeException e) {
+                System.err.println("Error valuing streamed wallet " + entry.getKey() + ": " + e.getMessage());
+                continue;
+            }
+            for (Subscriber subscriber : entry.getValue()) {
+                subscriber.offer(event);
+            }
+        }
+    }
+
+    private WalletValueEvent valueOf(Long walletId) {
+        return transactionTemplate.execute(status ->
+                WalletValueEvent.of(walletId, walletValueCalculator.analyze(walletService.getWallet(walletId))));
+    }
+
+    int subscriberCount() {
+        return subscriberCount.get();
+    }
+
+    /**
+     * Forget a subscriber whose stream has ended.
+     *
+     * @return Whether the subscriber was still open.
+     */
+    private boolean remove(Subscriber subscriber) {
+        if (!subscriber.closed.compareAndSet(false, true)) {
+            return false;
+        }
+        subscribersByWallet.computeIfPresent(subscriber.walletId, (id, subscribers) -> {
+            subscribers.remove(subscriber);
+            return subscribers.isEmpty() ? null : subscribers;
+        });
+        subscriberCount.decrementAndGet();
+        return true;
+    }
+
+    /**
+     * End the stream of a subscriber from the server side.
+     */
+    private void disconnect(Subscriber subscriber) {
+        if (remove(subscriber)) {
+            subscriber.emitter.complete();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        valuationThread.shutdownNow();
+        subscribersByWallet.values().forEach(subscribers -> subscribers.forEach(this::disconnect));
+        senders.shutdown();
+    }
+
+    private final class Subscriber {
+
+        private final Long walletId;
+
+        private final SseEmitter emitter;
+
+        // The latest value not yet sent, replaced by every tick the subscriber has not kept up with
+        private final AtomicReference<WalletValueEvent> pending = new AtomicReference<>();
+
+        // Whether a sender is draining this subscriber, so its events are written one at a time and in order
+        private final AtomicBoolean draining = new AtomicBoolean();
+
+        // When the write in flight started, by the nano clock, or 0 while no write is in flight
+        private volatile long sendStartedAt;
+
+        // Whether the subscriber was cut off while a write was blocked, which leaves completing it to the sender
+        private volatile boolean cutOff;
+
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        private Subscriber(Long walletId, SseEmitter emitter) {
+            this.walletId = walletId;
+            this.emitter = emitter;
+        }
+
+        private void offer(WalletValueEvent event) {
+            if (closed.get()) {
+                return;
+            }
+            if (isStalled()) {
+                cutOff = true;
+                if (remove(this)) {
+                    slowSubscribers.increment();
+                    System.out.println("Disconnected a slow live stream of wallet " + walletId + ".");
+                }
+                return;
+            }
+            if (pending.getAndSet(event) != null) {
+                conflatedEvents.increment();
+            }
+            scheduleDrain();
+        }
+
+        private boolean isStalled() {
+            long startedAt = sendStartedAt;
+            return startedAt != 0
+                    && nanoClock.getAsLong() - startedAt > TimeUnit.MILLISECONDS.toNanos(streamProperties.getSendTimeout());
+        }
+
+        private void scheduleDrain() {
+            if (draining.compareAndSet(false, true)) {
+                try {
+                    senders.execute(this::drain);
+                } catch (RejectedExecutionException e) {
+                    draining.set(false);
+                }
+            }
+        }
+
+        private void drain() {
+            try {
+                WalletValueEvent event;
+                while (!closed.get() && (event = pending.getAndSet(null)) != null) {
+                    sendStartedAt = nanoClock.getAsLong();
+                    emitter.send(SseEmitter.event()
+                            .name(EVENT_NAME)
+                            .id(String.valueOf(event.priceVersion()))
+                            .data(event));
+                    sendStartedAt = 0;
+                    sentEvents.increment();
+                }
+            } catch (IOException | IllegalStateException e) {
+                // The client went away or the emitter has already completed
+                remove(this);
+            } finally {
+                sendStartedAt = 0;
+                draining.set(false);
+            }
+            if (cutOff) {
+                // Completed here: the emitter is locked by a blocked write, so no other thread can complete it
+                emitter.complete();
+                return;
+            }
+            // A value offered after the last poll but before the flag was cleared
+            if (!closed.get() && pending.get() != null) {
+                scheduleDrain();
+            }
+        }
+    }
+}
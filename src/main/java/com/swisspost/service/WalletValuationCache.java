@@ -0,0 +1,244 @@
+package com.swisspost.service;
+
+import com.swisspost.config.ValuationProperties;
+import com.swisspost.dto.PositionSummary;
+import com.swisspost.dto.WalletAnalytics;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * Latest analytics of recently valued wallets. An entry is only served for the wallet version it was
+ * computed at, and for the price snapshot it was computed at or the latest one
+ * {@link WalletRevaluationService} has published: each tick reprices the entries holding a symbol
+ * whose price changed, so every other entry is still exact. A trade evicts the entry of its wallet.
+ * The cache is bounded, evicting the least recently used wallet, and entries expire after
+ * {@code valuation.cacheTtl}.
+ */
+@Component
+public class WalletValuationCache {
+
+    private record Entry(long walletVersion, long priceVersion, long expiresAt, WalletAnalytics analytics) {
+    }
+
+    /**
+     * A wallet repriced by a tick.
+     *
+     * @param walletVersion The wallet version of the aggregates it was repriced from.
+     */
+    record Revaluation(long walletVersion, WalletAnalytics analytics) {
+    }
+
+    private final ValuationProperties valuationProperties;
+
+    // Access-ordered, so the eldest entry is the least recently used
+    private final LinkedHashMap<Long, Entry> entries = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Entry> eldest) {
+            boolean evict = size() > Math.max(0, valuationProperties.getCacheMaxEntries());
+            if (evict) {
+                evictions.increment();
+                unindex(eldest.getKey(), eldest.getValue());
+            }
+            return evict;
+        }
+    };
+
+    // Cached wallets by held symbol, to find the entries a price change affects; guarded by entries
+    private final Map<String, Set<Long>> walletsBySymbol = new HashMap<>();
+
+    // Latest snapshot every entry has been repriced for, see publishRevaluation; guarded by entries
+    private long revaluedVersion;
+
+    private final Counter hits;
+
+    private final Counter misses;
+
+    private final Counter evictions;
+
+    public WalletValuationCache(ValuationProperties valuationProperties, MeterRegistry meterRegistry) {
+        this.valuationProperties = valuationProperties;
+        this.hits = Counter.builder("wallet.valuation.cache")
+                .description("Wallet valuations served from the cache")
+                .tag("result", "hit")
+                .register(meterRegistry);
+        this.misses = Counter.builder("wallet.valuation.cache")
+                .description("Wallet valuations computed because the cache had none")
+                .tag("result", "miss")
+                .register(meterRegistry);
+        this.evictions = Counter.builder("wallet.valuation.cache.evictions")
+                .description("Cached wallet valuations evicted to stay within the size bound")
+                .register(meterRegistry);
+        Gauge.builder("wallet.valuation.cache.size", this, WalletValuationCache::size)
+                .description("Wallet valuations currently cached")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Return the cached analytics of a wallet at the given versions, or compute and cache them.
+     * The computation runs outside the lock; concurrent misses of the same wallet each compute once.
+     */
+    public WalletAnalytics get(Long walletId, long walletVersion, long priceVersion, Supplier<WalletAnalytics> valuation) {
+        if (walletId == null || valuationProperties.getCacheMaxEntries() <= 0) {
+            return valuation.get();
+        }
+        long now = System.nanoTime();
+        synchronized (entries) {
+            Entry entry = entries.get(walletId);
+            if (entry != null && entry.walletVersion() == walletVersion && isCurrent(entry, priceVersion)
+                    && now - entry.expiresAt() < 0) {
+                hits.increment();
+                return entry.analytics();
+            }
+        }
+
+        misses.increment();
+        WalletAnalytics analytics = valuation.get();
+        Entry computed = new Entry(walletVersion, priceVersion,
+                now + valuationProperties.getCacheTtl() * 1_000_000L, analytics);
+        synchronized (entries) {
+            // Prices the revaluation has already moved past, the entry would never be repriced
+            if (priceVersion < revaluedVersion) {
+                return analytics;
+            }
+            Entry current = entries.get(walletId);
+            // Never replace the valuation of newer versions computed concurrently
+            if (current == null || current.walletVersion() < walletVersion
+                    || (current.walletVersion() == walletVersion && current.priceVersion() <= priceVersion)) {
+                store(walletId, computed);
+            }
+        }
+        return analytics;
+    }
+
+    private boolean isCurrent(Entry entry, long priceVersion) {
+        return entry.priceVersion() == priceVersion
+                || (priceVersion == revaluedVersion && entry.priceVersion() < priceVersion);
+    }
+
+    /**
+     * Find the cached wallets holding any of the given symbols.
+     */
+    Set<Long> walletsHolding(Collection<String> symbols) {
+        Set<Long> walletIds = new HashSet<>();
+        synchronized (entries) {
+            for (String symbol : symbols) {
+                Set<Long> holders = walletsBySymbol.get(symbol);
+                if (holders != null) {
+                    walletIds.addAll(holders);
+                }
+            }
+        }
+        return walletIds;
+    }
+
+    /**
+     * Publish the repricing of a tick. The entries of the revalued wallets are replaced, the affected
+     * ones that could not be revalued are dropped; every other entry holds none of the changed symbols
+     * and is served at the new snapshot too. Revalued entries keep their expiry, so wallets nobody
+     * reads still leave the cache.
+     *
+     * @param priceVersion    The snapshot the wallets were repriced at.
+     * @param skippedDeltas   Whether snapshots were published since the last one published here.
+     * @param changedSymbols  The symbols whose price changed since the last snapshot published here.
+     * @param revaluations    The wallets repriced at the new snapshot, a wallet cached since it was
+     *                        looked up by {@link #walletsHolding} is dropped.
+     */
+    void publishRevaluation(long priceVersion, boolean skippedDeltas, Collection<String> changedSymbols,
+                            Map<Long, Revaluation> revaluations) {
+        synchronized (entries) {
+            if (priceVersion <= revaluedVersion) {
+                return;
+            }
+            if (skippedDeltas) {
+                // Entries valued at the skipped snapshots may hold prices that have changed back since
+                Iterator<Map.Entry<Long, Entry>> iterator = entries.entrySet().iterator();
+                while (iterator.hasNext()) {
+                    Map.Entry<Long, Entry> cached = iterator.next();
+                    long cachedVersion = cached.getValue().priceVersion();
+                    if (cachedVersion > revaluedVersion && cachedVersion < priceVersion
+                            && !revaluations.containsKey(cached.getKey())) {
+                        unindex(cached.getKey(), cached.getValue());
+                        iterator.remove();
+                    }
+                }
+            }
+            for (Long walletId : walletsHolding(changedSymbols)) {
+                Entry current = entries.get(walletId);
+                Revaluation revaluation = revaluations.get(walletId);
+                // A trade may have replaced the entry with a newer wallet version at the old prices
+                if (revaluation == null || revaluation.walletVersion() < current.walletVersion()) {
+                    remove(walletId);
+                } else {
+                    store(walletId, new Entry(revaluation.walletVersion(), priceVersion, current.expiresAt(),
+                            revaluation.analytics()));
+                }
+            }
+            revaluedVersion = priceVersion;
+        }
+    }
+
+    /**
+     * Drop the valuation of a wallet, after a trade changed its holdings.
+     */
+    public void invalidate(Long walletId) {
+        synchronized (entries) {
+            remove(walletId);
+        }
+    }
+
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+            walletsBySymbol.clear();
+        }
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    private void store(Long walletId, Entry entry) {
+        Entry previous = entries.put(walletId, entry);
+        if (previous != null) {
+            unindex(walletId, previous);
+        }
+        // Evicted right away when the cache holds no entries at all
+        if (entries.containsKey(walletId)) {
+            for (PositionSummary position : entry.analytics().positions()) {
+                walletsBySymbol.computeIfAbsent(position.symbol(), symbol -> new HashSet<>()).add(walletId);
+            }
+        }
+    }
+
+    private void remove(Long walletId) {
+        Entry removed = entries.remove(walletId);
+        if (removed != null) {
+            unindex(walletId, removed);
+        }
+    }
+
+    private void unindex(Long walletId, Entry entry) {
+        for (PositionSummary position : entry.analytics().positions()) {
+            Set<Long> holders = walletsBySymbol.get(position.symbol());
+            if (holders != null) {
+                holders.remove(walletId);
+                if (holders.isEmpty()) {
+                    walletsBySymbol.remove(position.symbol());
+                }
+            }
+        }
+    }
+}
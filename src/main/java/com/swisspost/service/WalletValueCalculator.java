@@ -1,122 +1,134 @@
 package com.swisspost.service;
 
-import com.swisspost.model.Asset;
+import com.swisspost.dto.PositionSummary;
+import com.swisspost.dto.WalletAnalytics;
+import com.swisspost.exception.AssetNotFoundException;
 import com.swisspost.model.Wallet;
 import org.springframework.stereotype.Service;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
+import java.util.ArrayList;
 import java.util.Comparator;
-import java.util.Map;
-import java.util.Set;
-import java.util.stream.Collectors;
+import java.util.List;
 
 @Service
 public class WalletValueCalculator {
 
     private final PriceFetcher priceFetcher;
 
-    public WalletValueCalculator(PriceFetcher priceFetcher) {
+    private final WalletAggregateService walletAggregateService;
+
+    private final WalletValuationCache walletValuationCache;
+
+    public WalletValueCalculator(PriceFetcher priceFetcher, WalletAggregateService walletAggregateService,
+                                 WalletValuationCache walletValuationCache) {
         this.priceFetcher = priceFetcher;
+        this.walletAggregateService = walletAggregateService;
+        this.walletValuationCache = walletValuationCache;
     }
 
-    private Map<String, Double> totalValueOfAssetAtPurchasePrice(Wallet wallet) {
-        Set<Asset> walletCryptoAssets = wallet.getCryptoAssets();
-        return walletCryptoAssets.parallelStream()
-                .collect(Collectors.groupingBy(
-                        Asset::getSymbol,
-                        Collectors.summingDouble(asset -> asset.getQuantity() * asset.getPrice())
-                ));
+    /**
+     * Value the wallet at the latest prices, served from the cache until the wallet trades or a new
+     * snapshot is published.
+     */
+    public WalletAnalytics analyze(Wallet wallet) {
+        PriceSnapshot prices = priceFetcher.getLatestSnapshot();
+        long walletVersion = wallet.getVersion() == null ? 0 : wallet.getVersion();
+        return walletValuationCache.get(wallet.getId(), walletVersion, prices.getVersion(),
+                () -> analyze(wallet, prices));
     }
 
-    private Map<String, Double> totalValueOfAssetAtCurrentPrice(Wallet wallet) {
-        Set<Asset> walletCryptoAssets = wallet.getCryptoAssets();
-        return walletCryptoAssets.parallelStream()
-                .collect(Collectors.groupingBy(
-                        Asset::getSymbol,
-                        Collectors.summingDouble(asset ->
-                                asset.getQuantity() * priceFetcher.fetchLatestPrice(asset.getSymbol())
-                )));
+    /**
+     * Value the wallet in a single pass: total value, best and worst performing asset and the value
+     * and profit of every symbol, all at the same price snapshot.
+     */
+    public WalletAnalytics analyze(Wallet wallet, PriceSnapshot prices) {
+        return analyze(walletAggregateService.aggregatesFor(wallet), prices);
+    }
+
+    WalletAnalytics analyze(WalletAggregates aggregates, PriceSnapshot prices) {
+        List<PositionValuation> valuations = aggregates.valuations(prices);
+
+        double totalValue = 0;
+        PositionValuation best = null;
+        PositionValuation worst = null;
+        List<PositionSummary> positions = new ArrayList<>(valuations.size());
+
+        for (PositionValuation valuation : valuations) {
+            totalValue += valuation.currentValue();
+            positions.add(new PositionSummary(valuation.symbol(), valuation.quantity(), valuation.costBasis(),
+                    valuation.currentValue(), valuation.profitAndLoss(), roundedGrowthRate(valuation)));
+
+            if (valuation.costBasis() > 0) {
+                if (best == null || valuation.growthRate() > best.growthRate()) {
+                    best = valuation;
+                }
+                if (worst == null || valuation.growthRate() < worst.growthRate()) {
+                    worst = valuation;
+                }
+            }
+        }
+        positions.sort(Comparator.comparing(PositionSummary::symbol));
+
+        return new WalletAnalytics(prices.getVersion(), totalValue,
+                best == null ? null : best.symbol(), best == null ? null : roundedGrowthRate(best),
+                worst == null ? null : worst.symbol(), worst == null ? null : roundedGrowthRate(worst),
+                positions);
     }
 
     public double totalWalletValueOfAssets(Wallet wallet) {
-        Map<String, Double> assetsAtCurrentPrice = totalValueOfAssetAtCurrentPrice(wallet);
-        return assetsAtCurrentPrice.values()
-                .stream()
-                .mapToDouble(Double::doubleValue)
-                .sum();
-    }
-
-    private Map.Entry<String, Double> bestPerformingAssetWithGrowthRate(Wallet wallet) {
-        Map<String, Double> initialValueMap = totalValueOfAssetAtPurchasePrice(wallet);
-        Map<String, Double> currentValueMap = totalValueOfAssetAtCurrentPrice(wallet);
-
-        return currentValueMap.entrySet().stream()
-                .filter(entry -> {
-                    Double initialValue = initialValueMap.get(entry.getKey());
-                    return initialValue != null && initialValue > 0;
-                })
-                .max(Comparator.comparingDouble(entry -> {
-                    String symbol = entry.getKey();
-                    double currentValue = entry.getValue();
-                    double initialValue = initialValueMap.get(symbol);
-
-                    return ((currentValue - initialValue) * 100) / initialValue;
-                }))
-                .map(entry -> {
-                    String symbol = entry.getKey();
-                    double currentValue = entry.getValue();
-                    double initialValue = initialValueMap.get(symbol);
-                    double growthRate = ((currentValue - initialValue) * 100) / initialValue;
-
-                    BigDecimal roundedGrowthRate = new BigDecimal(growthRate).setScale(2, RoundingMode.HALF_UP);
-
-                    return Map.entry(symbol, roundedGrowthRate.doubleValue());
-                })
-                .orElse(null); // Return null if no valid asset is found
+        return analyze(wallet).totalValue();
+    }
+
+    public double totalWalletValueOfAssets(Wallet wallet, PriceSnapshot prices) {
+        return walletAggregateService.aggregatesFor(wallet).totalValue(prices);
     }
 
     public String bestPerformingAsset(Wallet wallet) {
-        return bestPerformingAssetWithGrowthRate(wallet).getKey();
+        return requirePerformer(analyze(wallet).bestAsset());
+    }
+
+    public String bestPerformingAsset(Wallet wallet, PriceSnapshot prices) {
+        return requirePerformer(analyze(wallet, prices).bestAsset());
     }
 
     public double bestPerformingAssetValue(Wallet wallet) {
-        return bestPerformingAssetWithGrowthRate(wallet).getValue();
+        return requirePerformer(analyze(wallet).bestGrowthRate());
     }
 
-    private Map.Entry<String, Double> worstPerformingAssetWithGrowthRate(Wallet wallet) {
-        Map<String, Double> initialValueMap = totalValueOfAssetAtPurchasePrice(wallet);
-        Map<String, Double> currentValueMap = totalValueOfAssetAtCurrentPrice(wallet);
+    public double bestPerformingAssetValue(Wallet wallet, PriceSnapshot prices) {
+        return requirePerformer(analyze(wallet, prices).bestGrowthRate());
+    }
 
-        return currentValueMap.entrySet().stream()
-                .filter(entry -> {
-                    Double initialValue = initialValueMap.get(entry.getKey());
-                    return initialValue != null && initialValue > 0;
-                })
-                .min(Comparator.comparingDouble(entry -> {
-                    String symbol = entry.getKey();
-                    double currentValue = entry.getValue();
-                    double initialValue = initialValueMap.get(symbol);
-                    return ((currentValue - initialValue) * 100) / initialValue;
-                }))
-                .map(entry -> {
-                    String symbol = entry.getKey();
-                    double currentValue = entry.getValue();
-                    double initialValue = initialValueMap.get(symbol);
-                    double growthRate = ((currentValue - initialValue) * 100) / initialValue;
+    public String worstPerformingAsset(Wallet wallet) {
+        return requirePerformer(analyze(wallet).worstAsset());
+    }
+
+    public String worstPerformingAsset(Wallet wallet, PriceSnapshot prices) {
+        return requirePerformer(analyze(wallet, prices).worstAsset());
+    }
 
-                    BigDecimal roundedGrowthRate = new BigDecimal(growthRate).setScale(2, RoundingMode.HALF_UP);
+    public double worstPerformingAssetValue(Wallet wallet) {
+        return requirePerformer(analyze(wallet).worstGrowthRate());
+    }
 
-                    return Map.entry(symbol, roundedGrowthRate.doubleValue());
-                })
-                .orElse(null);
+    public double worstPerformingAssetValue(Wallet wallet, PriceSnapshot prices) {
+        return requirePerformer(analyze(wallet, prices).worstGrowthRate());
     }
 
-    public String worstPerformingAsset(Wallet wallet) {
-        return worstPerformingAssetWithGrowthRate(wallet).getKey();
+    private static <T> T requirePerformer(T value) {
+        if (value == null) {
+            throw new AssetNotFoundException("No asset with a purchase value found in the wallet.");
+        }
+        return value;
     }
 
-    public double worstPerformingAssetValue(Wallet wallet) {
-        return worstPerformingAssetWithGrowthRate(wallet).getValue();
+    static Double roundedGrowthRate(PositionValuation valuation) {
+        if (valuation.costBasis() <= 0) {
+            return null;
+        }
+        BigDecimal roundedGrowthRate = new BigDecimal(valuation.growthRate()).setScale(2, RoundingMode.HALF_UP);
+        return roundedGrowthRate.doubleValue();
     }
 }
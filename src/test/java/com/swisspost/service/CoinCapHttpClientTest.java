@@ -0,0 +1,138 @@
+package com.swisspost.service;
+
+import com.sun.net.httpserver.HttpServer;
+import com.swisspost.config.CoinCapProperties;
+import com.swisspost.exception.PriceSourceException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.http.HttpTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CoinCapHttpClientTest {
+
+    private HttpServer stubServer;
+
+    private CoinCapHttpClient coinCapHttpClient;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        stubServer = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        stubServer.start();
+
+        CoinCapProperties properties = new CoinCapProperties();
+        properties.setBaseUrl("http://localhost:" + stubServer.getAddress().getPort() + "/v2");
+        properties.setHttp2(false);
+        properties.setReadTimeout(500);
+        coinCapHttpClient = new CoinCapHttpClient(properties);
+    }
+
+    @AfterEach
+    void tearDown() {
+        stubServer.stop(0);
+    }
+
+    @Test
+    void get_GzippedResponse_ShouldBeDecoded() throws Exception {
+        String body = "{\"data\":[{\"id\":\"bitcoin\",\"symbol\":\"BTC\",\"priceUsd\":\"50000.0\"}]}";
+        stubServer.createContext("/v2/assets", exchange -> {
+            assertEquals("gzip", exchange.getRequestHeaders().getFirst("Accept-Encoding"));
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+            try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+                gzip.write(body.getBytes(StandardCharsets.UTF_8));
+            }
+            exchange.getResponseHeaders().add("Content-Encoding", "gzip");
+            exchange.sendResponseHeaders(200, compressed.size());
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(compressed.toByteArray());
+            }
+        });
+
+        try (InputStream response = coinCapHttpClient.get("/assets").get(2, TimeUnit.SECONDS)) {
+            assertEquals(body, new String(response.readAllBytes(), StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    void get_ErrorStatus_ShouldFailWithPriceSourceException() {
+        stubServer.createContext("/v2/assets", exchange -> {
+            exchange.sendResponseHeaders(503, -1);
+            exchange.close();
+        });
+
+        ExecutionException exception = assertThrows(ExecutionException.class,
+                () -> coinCapHttpClient.get("/assets").get(2, TimeUnit.SECONDS));
+
+        PriceSourceException cause = assertInstanceOf(PriceSourceException.class, exception.getCause());
+        assertEquals(503, cause.getStatusCode());
+        assertEquals(-1, cause.getRetryAfterMillis());
+    }
+
+    @Test
+    void get_TooManyRequests_ShouldCarryRetryAfter() {
+        stubServer.createContext("/v2/assets", exchange -> {
+            exchange.getResponseHeaders().add("Retry-After", "7");
+            exchange.sendResponseHeaders(429, -1);
+            exchange.close();
+        });
+
+        ExecutionException exception = assertThrows(ExecutionException.class,
+                () -> coinCapHttpClient.get("/assets").get(2, TimeUnit.SECONDS));
+
+        PriceSourceException cause = assertInstanceOf(PriceSourceException.class, exception.getCause());
+        assertEquals(429, cause.getStatusCode());
+        assertEquals(7000, cause.getRetryAfterMillis());
+        assertEquals(-1, CoinCapHttpClient.retryAfterMillis("soon"));
+    }
+
+    @Test
+    void get_SlowResponse_ShouldTimeOut() {
+        stubServer.createContext("/v2/assets", exchange -> {
+            try {
+                Thread.sleep(2000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            exchange.close();
+        });
+
+        ExecutionException exception = assertThrows(ExecutionException.class,
+                () -> coinCapHttpClient.get("/assets").get(5, TimeUnit.SECONDS));
+
+        assertInstanceOf(HttpTimeoutException.class, exception.getCause());
+    }
+
+    @Test
+    void get_StalledBody_ShouldTimeOut() {
+        stubServer.createContext("/v2/assets", exchange -> {
+            exchange.sendResponseHeaders(200, 0);
+            OutputStream out = exchange.getResponseBody();
+            out.write("{\"data\":[".getBytes(StandardCharsets.UTF_8));
+            out.flush();
+            try {
+                Thread.sleep(2000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            exchange.close();
+        });
+
+        long start = System.nanoTime();
+        ExecutionException exception = assertThrows(ExecutionException.class,
+                () -> coinCapHttpClient.get("/assets").get(5, TimeUnit.SECONDS));
+
+        assertInstanceOf(HttpTimeoutException.class, exception.getCause());
+        assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(1500));
+    }
+}
@@ -0,0 +1,67 @@
+package com.swisspost.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CoinCapResponseParserTest {
+
+    private static InputStream body(String json) {
+        return new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void parsePrices_ShouldSkipUnknownFieldsAndAssetsWithoutAPrice() {
+        String json = """
+                {"data":[
+                  {"id":"bitcoin","rank":"1","symbol":"BTC","supply":{"max":21000000},"priceUsd":"50000.5",
+                   "tags":["pow",{"nested":true}]},
+                  {"id":"ethereum","symbol":"ETH","priceUsd":null},
+                  {"id":"solana","symbol":"SOL","priceUsd":"100"}
+                ],"timestamp":1714567890000}
+                """;
+
+        assertEquals(Map.of("bitcoin", 50000.5, "solana", 100.0), CoinCapResponseParser.parsePrices(body(json)));
+    }
+
+    @Test
+    void parsePrice_SingleAsset_ShouldReturnItsPrice() {
+        String json = """
+                {"timestamp":1714567890000,"data":{"id":"bitcoin","symbol":"BTC","explorer":null,"priceUsd":"50000.5"}}
+                """;
+
+        assertEquals(50000.5, CoinCapResponseParser.parsePrice(body(json)));
+    }
+
+    @Test
+    void parsePrice_NullPrice_ShouldBeRejected() {
+        String json = """
+                {"data":{"id":"bitcoin","symbol":"BTC","priceUsd":null}}
+                """;
+
+        assertThrows(IllegalArgumentException.class, () -> CoinCapResponseParser.parsePrice(body(json)));
+    }
+
+    @Test
+    void parseSymbolToIds_SharedSymbol_ShouldMapToTheHighestRankedAsset() {
+        String json = """
+                {"data":[
+                  {"id":"bitcoin","symbol":"btc","priceUsd":"50000.5","extra":[1,2,3]},
+                  {"id":"bitcoin-bep2","symbol":"BTC","priceUsd":null},
+                  {"id":"no-symbol","priceUsd":"1"}
+                ]}
+                """;
+
+        assertEquals(Map.of("BTC", "bitcoin"), CoinCapResponseParser.parseSymbolToIds(body(json)));
+    }
+
+    @Test
+    void readAssets_NonObjectResponse_ShouldBeRejected() {
+        assertThrows(IllegalArgumentException.class, () -> CoinCapResponseParser.parsePrices(body("[]")));
+    }
+}
@@ -1,45 +1,54 @@
 package com.swisspost.service;
 
+import com.swisspost.config.SchedulerProperties;
+import com.swisspost.dto.PriceQuote;
 import com.swisspost.exception.InvalidSymbolException;
-import com.swisspost.repository.AssetRepository;
+import com.swisspost.exception.PriceSourceUnavailableException;
+import com.swisspost.repository.TrackedSymbolRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
-import org.springframework.test.util.ReflectionTestUtils;
-import org.springframework.web.client.RestTemplate;
+import org.mockito.stubbing.Answer;
 
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
 
 class PriceFetcherTest {
 
-    @InjectMocks
     private PriceFetcher priceFetcher;
 
     @Mock
-    private AssetRepository assetRepository;
+    private TrackedSymbolRepository trackedSymbolRepository;
 
     @Mock
-    private RestTemplate restTemplate;
+    private PriceSourceClient priceSourceClient;
 
-    private final String COIN_CAP_API_URL = "https://api.coincap.io/v2/assets";
+    private final String ASSETS_PATH = "/assets";
+
+    private final String CATALOG_PAGE = ASSETS_PATH + "?limit=2000&offset=0";
 
     @BeforeEach
     void setUp() throws Exception {
         MockitoAnnotations.openMocks(this);
-        ReflectionTestUtils.setField(priceFetcher, "restTemplate", restTemplate);
-        //priceFetcher.getAssetSymbols();
+        priceFetcher = new PriceFetcher(trackedSymbolRepository, new SchedulerProperties(), priceSourceClient, new SimpleMeterRegistry());
+    }
+
+    private static Answer<CompletableFuture<InputStream>> respondWith(String body) {
+        return invocation -> CompletableFuture.completedFuture(
+                new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)));
     }
 
     @Test
     void testUpdatePrices_SuccessfulUpdate() {
-        String COIN_CAP_API_URL = "https://api.coincap.io/v2/assets";
-
         String initialResponse = "{\"data\":[" +
                 "{\"id\":\"bitcoin\",\"symbol\":\"BTC\",\"priceUsd\":\"50000.0\"}," +
                 "{\"id\":\"ethereum\",\"symbol\":\"ETH\",\"priceUsd\":\"3000.0\"}," +
@@ -49,12 +58,12 @@ class PriceFetcherTest {
                 "{\"id\":\"dogecoin\",\"symbol\":\"DOGE\",\"priceUsd\":\"0.1\"}" +
                 "]}";
 
-        when(restTemplate.getForObject(eq(COIN_CAP_API_URL), eq(String.class)))
-                .thenReturn(initialResponse);
+        when(priceSourceClient.get(eq(CATALOG_PAGE)))
+                .thenAnswer(respondWith(initialResponse));
 
         priceFetcher.updatePrices();
 
-        verify(restTemplate).getForObject(eq(COIN_CAP_API_URL), eq(String.class));
+        verify(priceSourceClient).get(eq(CATALOG_PAGE));
     }
 
     @Test
@@ -67,8 +76,8 @@ class PriceFetcherTest {
                     ]
                 }
                 """;
-        when(restTemplate.getForObject(eq(COIN_CAP_API_URL), eq(String.class)))
-                .thenReturn(initialResponse);
+        when(priceSourceClient.get(eq(CATALOG_PAGE)))
+                .thenAnswer(respondWith(initialResponse));
 
         String btcResponse = """
                 {
@@ -85,23 +94,171 @@ class PriceFetcherTest {
                 }
                 """;
 
-        when(restTemplate.getForObject(eq(COIN_CAP_API_URL + "/bitcoin"), eq(String.class)))
-                .thenReturn(btcResponse);
-        when(restTemplate.getForObject(eq(COIN_CAP_API_URL + "/ethereum"), eq(String.class)))
-                .thenReturn(ethResponse);
+        when(priceSourceClient.get(eq(ASSETS_PATH + "/bitcoin")))
+                .thenAnswer(respondWith(btcResponse));
+        when(priceSourceClient.get(eq(ASSETS_PATH + "/ethereum")))
+                .thenAnswer(respondWith(ethResponse));
 
-        when(assetRepository.findAllAssetSymbols()).thenReturn(List.of("BTC", "ETH"));
+        when(trackedSymbolRepository.findHeldSymbols()).thenReturn(List.of("BTC", "ETH"));
 
         priceFetcher.updatePrices();
 
-        verify(restTemplate, times(1)).getForObject(eq(COIN_CAP_API_URL), eq(String.class));
+        verify(priceSourceClient, times(1)).get(eq(CATALOG_PAGE));
+    }
+
+    @Test
+    void testUpdatePrices_BatchedRefresh() {
+        when(trackedSymbolRepository.findHeldSymbols()).thenReturn(List.of("BTC", "ETH"));
+        priceFetcher = new PriceFetcher(trackedSymbolRepository, new SchedulerProperties(), priceSourceClient, new SimpleMeterRegistry());
+
+        String initialResponse = """
+                {
+                    "data": [
+                        { "id": "bitcoin", "symbol": "BTC", "priceUsd": "50000.0" },
+                        { "id": "ethereum", "symbol": "ETH", "priceUsd": "3000.0" },
+                        { "id": "solana", "symbol": "SOL", "priceUsd": "100.0" }
+                    ]
+                }
+                """;
+        String batchResponse = """
+                {
+                    "data": [
+                        { "id": "bitcoin", "symbol": "BTC", "priceUsd": "51000.0" },
+                        { "id": "ethereum", "symbol": "ETH", "priceUsd": "3100.0" }
+                    ]
+                }
+                """;
+        when(priceSourceClient.get(eq(CATALOG_PAGE)))
+                .thenAnswer(respondWith(initialResponse));
+        when(priceSourceClient.get(startsWith(ASSETS_PATH + "?ids=")))
+                .thenAnswer(respondWith(batchResponse));
+
+        priceFetcher.updatePrices();
+
+        assertEquals(51000.0, priceFetcher.fetchLatestPrice("BTC"));
+        assertEquals(3100.0, priceFetcher.fetchLatestPrice("eth"));
+        assertThrows(InvalidSymbolException.class, () -> priceFetcher.fetchLatestPrice("SOL"));
+        // Only the catalog request and a single batched price request are sent
+        verify(priceSourceClient, times(1)).get(startsWith(ASSETS_PATH + "?ids="));
+        verify(priceSourceClient, never()).get(eq(ASSETS_PATH + "/bitcoin"));
+    }
+
+    @Test
+    void testUpdatePrices_PublishesImmutableSnapshotPerTick() {
+        when(trackedSymbolRepository.findHeldSymbols()).thenReturn(List.of("BTC"));
+        priceFetcher = new PriceFetcher(trackedSymbolRepository, new SchedulerProperties(), priceSourceClient, new SimpleMeterRegistry());
+
+        when(priceSourceClient.get(eq(CATALOG_PAGE)))
+                .thenAnswer(respondWith("{\"data\":[{\"id\":\"bitcoin\",\"symbol\":\"BTC\",\"priceUsd\":\"50000.0\"}]}"));
+        when(priceSourceClient.get(eq(ASSETS_PATH + "?ids=bitcoin")))
+                .thenAnswer(respondWith("{\"data\":[{\"id\":\"bitcoin\",\"priceUsd\":\"51000.0\"}]}"))
+                .thenAnswer(respondWith("{\"data\":[{\"id\":\"bitcoin\",\"priceUsd\":\"52000.0\"}]}"));
+
+        PriceSnapshot empty = priceFetcher.getLatestSnapshot();
+        priceFetcher.updatePrices();
+        PriceSnapshot first = priceFetcher.getLatestSnapshot();
+        priceFetcher.updatePrices();
+        PriceSnapshot second = priceFetcher.getLatestSnapshot();
+
+        assertFalse(empty.hasPrice("BTC"));
+        assertEquals(51000.0, first.priceOf("BTC"));
+        assertEquals(52000.0, second.priceOf("btc"));
+        assertTrue(second.getVersion() > first.getVersion());
+        assertThrows(InvalidSymbolException.class, () -> second.priceOf("ETH"));
+    }
+
+    @Test
+    void testUpdatePrices_PublishesOnlyPricesThatMovedPastTheThreshold() {
+        when(trackedSymbolRepository.findHeldSymbols()).thenReturn(List.of("BTC", "ETH"));
+        SchedulerProperties schedulerProperties = new SchedulerProperties();
+        schedulerProperties.setPriceChangeThreshold(0.01);
+        priceFetcher = new PriceFetcher(trackedSymbolRepository, schedulerProperties, priceSourceClient, new SimpleMeterRegistry());
+        List<PriceDelta> deltas = new ArrayList<>();
+        priceFetcher.addDeltaListener(deltas::add);
+        List<PriceRefresh> refreshes = new ArrayList<>();
+        priceFetcher.addRefreshListener(refreshes::add);
+
+        when(priceSourceClient.get(eq(CATALOG_PAGE)))
+                .thenAnswer(respondWith("{\"data\":[{\"id\":\"bitcoin\",\"symbol\":\"BTC\"}," +
+                        "{\"id\":\"ethereum\",\"symbol\":\"ETH\"}]}"));
+        when(priceSourceClient.get(startsWith(ASSETS_PATH + "?ids=")))
+                .thenAnswer(respondWith("{\"data\":[{\"id\":\"bitcoin\",\"priceUsd\":\"50000.0\"}," +
+                        "{\"id\":\"ethereum\",\"priceUsd\":\"3000.0\"}]}"))
+                // BTC moves by 0.2%, ETH by 2%
+                .thenAnswer(respondWith("{\"data\":[{\"id\":\"bitcoin\",\"priceUsd\":\"50100.0\"}," +
+                        "{\"id\":\"ethereum\",\"priceUsd\":\"3060.0\"}]}"))
+                // Nothing moves past the threshold
+                .thenAnswer(respondWith("{\"data\":[{\"id\":\"bitcoin\",\"priceUsd\":\"50200.0\"}," +
+                        "{\"id\":\"ethereum\",\"priceUsd\":\"3061.0\"}]}"));
+
+        priceFetcher.updatePrices();
+        priceFetcher.updatePrices();
+        priceFetcher.updatePrices();
+
+        assertEquals(2, deltas.size());
+        assertEquals(Set.of("BTC", "ETH"), Set.copyOf(deltas.get(0).changedSymbols()));
+        assertEquals(List.of("ETH"), deltas.get(1).changedSymbols());
+        assertEquals(List.of(1L, 2L), deltas.stream().map(PriceDelta::sequence).toList());
+        assertEquals(50000.0, priceFetcher.getLatestSnapshot().priceOf("BTC"));
+        assertEquals(3060.0, priceFetcher.getLatestSnapshot().priceOf("ETH"));
+        // Every refresh is handed out whole, the moves below the threshold included
+        assertEquals(3, refreshes.size());
+        assertEquals(Map.of("BTC", 50200.0, "ETH", 3061.0), refreshes.get(2).prices());
+    }
+
+    @Test
+    void testUpdatePrices_BatchSizeSplitsRequests() {
+        when(trackedSymbolRepository.findHeldSymbols()).thenReturn(List.of("BTC", "ETH"));
+        SchedulerProperties properties = new SchedulerProperties();
+        properties.setBatchSize(1);
+        priceFetcher = new PriceFetcher(trackedSymbolRepository, properties, priceSourceClient, new SimpleMeterRegistry());
+
+        String initialResponse = """
+                {
+                    "data": [
+                        { "id": "bitcoin", "symbol": "BTC", "priceUsd": "50000.0" },
+                        { "id": "ethereum", "symbol": "ETH", "priceUsd": "3000.0" }
+                    ]
+                }
+                """;
+        when(priceSourceClient.get(eq(CATALOG_PAGE)))
+                .thenAnswer(respondWith(initialResponse));
+        when(priceSourceClient.get(eq(ASSETS_PATH + "?ids=bitcoin")))
+                .thenAnswer(respondWith("{\"data\":[{\"id\":\"bitcoin\",\"priceUsd\":\"51000.0\"}]}"));
+        when(priceSourceClient.get(eq(ASSETS_PATH + "?ids=ethereum")))
+                .thenAnswer(respondWith("{\"data\":[{\"id\":\"ethereum\",\"priceUsd\":\"3100.0\"}]}"));
+
+        priceFetcher.updatePrices();
+
+        assertEquals(51000.0, priceFetcher.fetchLatestPrice("BTC"));
+        assertEquals(3100.0, priceFetcher.fetchLatestPrice("ETH"));
+    }
+
+    @Test
+    void testUpdatePrices_SlowBatchIsCancelledAfterTaskTimeout() {
+        when(trackedSymbolRepository.findHeldSymbols()).thenReturn(List.of("BTC"));
+        SchedulerProperties properties = new SchedulerProperties();
+        properties.setTaskTimeout(100);
+        priceFetcher = new PriceFetcher(trackedSymbolRepository, properties, priceSourceClient, new SimpleMeterRegistry());
+
+        when(priceSourceClient.get(eq(CATALOG_PAGE)))
+                .thenAnswer(respondWith("{\"data\":[{\"id\":\"bitcoin\",\"symbol\":\"BTC\",\"priceUsd\":\"50000.0\"}]}"));
+        // A response that never arrives
+        when(priceSourceClient.get(startsWith(ASSETS_PATH + "?ids=")))
+                .thenReturn(new CompletableFuture<>());
+
+        long start = System.currentTimeMillis();
+        priceFetcher.updatePrices();
+
+        assertTrue(System.currentTimeMillis() - start < 2000, "A slow upstream must not block the tick");
+        assertThrows(InvalidSymbolException.class, () -> priceFetcher.fetchLatestPrice("BTC"));
     }
 
     @Test
     void testGetAssetSymbols_ReturnsSameInstanceOnMultipleCalls() {
         // When
-        List<String> firstCall = priceFetcher.getAssetSymbols();
-        List<String> secondCall = priceFetcher.getAssetSymbols();
+        Set<String> firstCall = priceFetcher.getAssetSymbols();
+        Set<String> secondCall = priceFetcher.getAssetSymbols();
 
         // Then
         assertNotNull(firstCall);
@@ -130,8 +287,8 @@ class PriceFetcherTest {
 
     @Test
     void testUpdatePrices_ErrorFetchingData() {
-        Map<String, Double> symbolPriceCache = new ConcurrentHashMap<>();
-        ReflectionTestUtils.setField(priceFetcher, "symbolPriceCache", symbolPriceCache);
+        when(trackedSymbolRepository.findHeldSymbols()).thenReturn(List.of("BTC"));
+        priceFetcher = new PriceFetcher(trackedSymbolRepository, new SchedulerProperties(), priceSourceClient, new SimpleMeterRegistry());
 
         // Setup initial cache state
         String initialResponse = """
@@ -141,18 +298,15 @@ class PriceFetcherTest {
                     ]
                 }
                 """;
-        when(restTemplate.getForObject(eq(COIN_CAP_API_URL), eq(String.class)))
-                .thenReturn(initialResponse)
-                .thenThrow(new RuntimeException("Failed to fetch data"));
-
-        when(assetRepository.findAllAssetSymbols()).thenReturn(List.of("BTC"));
+        when(priceSourceClient.get(eq(CATALOG_PAGE)))
+                .thenAnswer(respondWith(initialResponse));
+        when(priceSourceClient.get(eq(ASSETS_PATH + "?ids=bitcoin")))
+                .thenAnswer(respondWith(initialResponse))
+                .thenReturn(CompletableFuture.failedFuture(new RuntimeException("Failed to fetch data")));
 
         // First update to populate cache
         priceFetcher.updatePrices();
 
-        // Manually add price to cache as the updatePrices would
-        symbolPriceCache.put("BTC", 50000.0);
-
         // Verify initial price is cached
         double initialPrice = priceFetcher.fetchLatestPrice("BTC");
         assertEquals(50000.0, initialPrice);
@@ -164,8 +318,139 @@ class PriceFetcherTest {
         double priceAfterError = priceFetcher.fetchLatestPrice("BTC");
         assertEquals(50000.0, priceAfterError);
 
-        // Verify the API was called twice
-        verify(restTemplate, times(1)).getForObject(eq(COIN_CAP_API_URL), eq(String.class));
+        // Verify the catalog was loaded once and the prices were requested twice
+        verify(priceSourceClient, times(1)).get(eq(CATALOG_PAGE));
+        verify(priceSourceClient, times(2)).get(eq(ASSETS_PATH + "?ids=bitcoin"));
+    }
+
+    @Test
+    void quote_SourceUnavailable_ShouldServeTheLastPriceWithItsAge() throws Exception {
+        when(trackedSymbolRepository.findHeldSymbols()).thenReturn(List.of("BTC"));
+        SchedulerProperties schedulerProperties = new SchedulerProperties();
+        priceFetcher = new PriceFetcher(trackedSymbolRepository, schedulerProperties, priceSourceClient, new SimpleMeterRegistry());
+
+        String response = "{\"data\":[{\"id\":\"bitcoin\",\"symbol\":\"BTC\",\"priceUsd\":\"50000.0\"}]}";
+        when(priceSourceClient.get(eq(CATALOG_PAGE))).thenAnswer(respondWith(response));
+        when(priceSourceClient.get(eq(ASSETS_PATH + "?ids=bitcoin")))
+                .thenAnswer(respondWith(response))
+                .thenReturn(CompletableFuture.failedFuture(new PriceSourceUnavailableException("Circuit is open")));
+
+        priceFetcher.updatePrices();
+        PriceQuote fresh = priceFetcher.quote("BTC");
+        assertEquals(50000.0, fresh.price());
+        assertFalse(fresh.stale());
+
+        Thread.sleep(5);
+        schedulerProperties.setPriceStaleAfter(1);
+        priceFetcher.updatePrices();
+
+        PriceQuote stale = priceFetcher.quote("BTC");
+        assertEquals(50000.0, stale.price());
+        assertEquals(fresh.refreshedAt(), stale.refreshedAt());
+        assertTrue(stale.ageMillis() >= 5);
+        assertTrue(stale.stale());
+    }
+
+    @Test
+    void testUpdatePrices_CatalogUnavailable_ShouldSkipTheTick() {
+        when(trackedSymbolRepository.findHeldSymbols()).thenReturn(List.of("BTC"));
+        priceFetcher = new PriceFetcher(trackedSymbolRepository, new SchedulerProperties(), priceSourceClient, new SimpleMeterRegistry());
+        when(priceSourceClient.get(eq(CATALOG_PAGE)))
+                .thenReturn(CompletableFuture.failedFuture(new PriceSourceUnavailableException("Circuit is open")));
+
+        assertDoesNotThrow(() -> priceFetcher.updatePrices());
+
+        verify(priceSourceClient, never()).get(startsWith(ASSETS_PATH + "?ids="));
+        assertThrows(InvalidSymbolException.class, () -> priceFetcher.quote("BTC"));
+    }
+
+    @Test
+    void priceSymbols_NewSymbol_ShouldBePricedRightAwayAndRefreshedByTicksOnceTracked() {
+        String catalog = "{\"data\":[" +
+                "{\"id\":\"bitcoin\",\"symbol\":\"BTC\",\"priceUsd\":\"50000.0\"}," +
+                "{\"id\":\"solana\",\"symbol\":\"SOL\",\"priceUsd\":\"100.0\"}" +
+                "]}";
+        when(priceSourceClient.get(eq(CATALOG_PAGE))).thenAnswer(respondWith(catalog));
+        when(priceSourceClient.get(eq(ASSETS_PATH + "?ids=solana")))
+                .thenAnswer(respondWith("{\"data\":[{\"id\":\"solana\",\"symbol\":\"SOL\",\"priceUsd\":\"100.0\"}]}"))
+                .thenAnswer(respondWith("{\"data\":[{\"id\":\"solana\",\"symbol\":\"SOL\",\"priceUsd\":\"110.0\"}]}"));
+
+        when(priceSourceClient.get(eq(ASSETS_PATH + "?search=UNLISTED&limit=20")))
+                .thenAnswer(respondWith("{\"data\":[]}"));
+
+        priceFetcher.priceSymbols(List.of("SOL", "UNLISTED"));
+        priceFetcher.priceSymbols(List.of("UNLISTED"));
+
+        // Priced, but only refreshed once a committed position holds it
+        assertEquals(Set.of(), priceFetcher.getAssetSymbols());
+        assertEquals(100.0, priceFetcher.fetchLatestPrice("SOL"));
+        assertEquals(100.0, priceFetcher.getLatestSnapshot().priceOf("SOL"));
+
+        // Tracked and priced already, pricing it again costs no request
+        priceFetcher.trackSymbols(List.of("SOL"));
+        priceFetcher.priceSymbols(List.of("SOL"));
+        priceFetcher.updatePrices();
+
+        assertEquals(Set.of("SOL"), priceFetcher.getAssetSymbols());
+        assertEquals(110.0, priceFetcher.fetchLatestPrice("SOL"));
+        verify(priceSourceClient, times(1)).get(eq(CATALOG_PAGE));
+        verify(priceSourceClient, times(2)).get(eq(ASSETS_PATH + "?ids=solana"));
+        // Unlisted symbols are searched for once per catalog reload
+        verify(priceSourceClient, times(1)).get(eq(ASSETS_PATH + "?search=UNLISTED&limit=20"));
+    }
+
+    @Test
+    void refreshTrackedSymbols_ShouldStopRefreshingSymbolsNoWalletHolds() {
+        when(trackedSymbolRepository.findHeldSymbols()).thenReturn(List.of("BTC", "ETH"));
+        priceFetcher = new PriceFetcher(trackedSymbolRepository, new SchedulerProperties(), priceSourceClient, new SimpleMeterRegistry());
+        when(trackedSymbolRepository.findHeldSymbols()).thenReturn(List.of("BTC"));
+
+        priceFetcher.refreshTrackedSymbols();
+
+        assertEquals(Set.of("BTC"), priceFetcher.getAssetSymbols());
+    }
+
+    @Test
+    void priceSymbols_SymbolsMissingFromTheCatalog_ShouldResolveTheHighestRankedAssetWithinTheSearchLimit() {
+        SchedulerProperties schedulerProperties = new SchedulerProperties();
+        schedulerProperties.setMaxCatalogSearches(1);
+        priceFetcher = new PriceFetcher(trackedSymbolRepository, schedulerProperties, priceSourceClient, new SimpleMeterRegistry());
+        when(priceSourceClient.get(eq(CATALOG_PAGE)))
+                .thenAnswer(respondWith("{\"data\":[{\"id\":\"bitcoin\",\"symbol\":\"BTC\"}]}"));
+        when(priceSourceClient.get(eq(ASSETS_PATH + "?search=NEW&limit=20"))).thenAnswer(respondWith("{\"data\":[" +
+                "{\"id\":\"new-coin\",\"symbol\":\"NEW\"},{\"id\":\"new-coin-fork\",\"symbol\":\"NEW\"}]}"));
+        when(priceSourceClient.get(eq(ASSETS_PATH + "?ids=new-coin")))
+                .thenAnswer(respondWith("{\"data\":[{\"id\":\"new-coin\",\"symbol\":\"NEW\",\"priceUsd\":\"3.0\"}]}"));
+
+        priceFetcher.priceSymbols(List.of("NEW"));
+        priceFetcher.priceSymbols(List.of("MADEUP1", "MADEUP2"));
+
+        assertEquals(3.0, priceFetcher.fetchLatestPrice("NEW"));
+        // The only search allowed until the next reload went to NEW
+        verify(priceSourceClient, never()).get(startsWith(ASSETS_PATH + "?search=MADEUP"));
+    }
+
+    @Test
+    void reloadCatalog_ShouldPageThroughTheCatalogAndSwapInTheDifferences() throws Exception {
+        SchedulerProperties schedulerProperties = new SchedulerProperties();
+        schedulerProperties.setCatalogPageSize(2);
+        priceFetcher = new PriceFetcher(trackedSymbolRepository, schedulerProperties, priceSourceClient, new SimpleMeterRegistry());
+
+        when(priceSourceClient.get(eq(ASSETS_PATH + "?limit=2&offset=0"))).thenAnswer(respondWith("{\"data\":[" +
+                "{\"id\":\"bitcoin\",\"symbol\":\"BTC\"},{\"id\":\"ethereum\",\"symbol\":\"ETH\"}]}"));
+        when(priceSourceClient.get(eq(ASSETS_PATH + "?limit=2&offset=2")))
+                .thenAnswer(respondWith("{\"data\":[{\"id\":\"solana\",\"symbol\":\"SOL\"}]}"))
+                .thenAnswer(respondWith("{\"data\":[{\"id\":\"solana-v2\",\"symbol\":\"SOL\"}," +
+                        "{\"id\":\"dogecoin\",\"symbol\":\"DOGE\"}]}"));
+        when(priceSourceClient.get(eq(ASSETS_PATH + "?limit=2&offset=4")))
+                .thenAnswer(respondWith("{\"data\":[]}"));
+
+        AssetCatalog.Diff first = priceFetcher.reloadCatalog().get(5, TimeUnit.SECONDS);
+        assertEquals(new AssetCatalog.Diff(3, 0, 0), first);
+
+        AssetCatalog.Diff second = priceFetcher.reloadCatalog().get(5, TimeUnit.SECONDS);
+        assertEquals(new AssetCatalog.Diff(1, 0, 1), second);
+        verify(priceSourceClient, times(1)).get(eq(ASSETS_PATH + "?limit=2&offset=4"));
     }
 
     @Test
@@ -0,0 +1,115 @@
+package com.swisspost.service;
+
+import com.swisspost.config.PriceHistoryProperties;
+import com.swisspost.model.PriceCandle;
+import com.swisspost.model.PriceResolution;
+import com.swisspost.repository.PriceCandleRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalDouble;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class PriceHistoryServiceTest {
+
+    @Mock
+    private PriceFetcher priceFetcher;
+
+    @Mock
+    private PriceCandleRepository priceCandleRepository;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private PriceHistoryService priceHistoryService;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        priceHistoryService = new PriceHistoryService(priceFetcher, priceCandleRepository,
+                new PriceHistoryProperties(), transactionManager, new SimpleMeterRegistry());
+    }
+
+    @AfterEach
+    void tearDown() {
+        priceHistoryService.shutdown();
+    }
+
+    private static PriceRefresh refresh(LocalDateTime time, Map<String, Double> prices) {
+        return new PriceRefresh(time.atZone(ZoneId.systemDefault()).toInstant(), prices);
+    }
+
+    @Test
+    void constructor_ShouldListenToEveryRefresh() {
+        verify(priceFetcher).addRefreshListener(any());
+    }
+
+    @Test
+    void record_ShouldRollEveryRefreshedSymbolIntoEachResolution() {
+        LocalDateTime time = LocalDateTime.of(2024, 5, 1, 13, 45, 30);
+
+        priceHistoryService.record(refresh(time, Map.of("BTC", 50000.0, "ETH", 3000.0)));
+
+        verify(priceCandleRepository).record("BTC", "MINUTE", LocalDateTime.of(2024, 5, 1, 13, 45), 50000.0);
+        verify(priceCandleRepository).record("BTC", "HOUR", LocalDateTime.of(2024, 5, 1, 13, 0), 50000.0);
+        verify(priceCandleRepository).record("BTC", "DAY", LocalDateTime.of(2024, 5, 1, 0, 0), 50000.0);
+        verify(priceCandleRepository, times(3)).record(eq("ETH"), anyString(), any(), eq(3000.0));
+    }
+
+    @Test
+    void record_ShouldOnlyRollPricesThatChangedSinceTheLastRecordedOne() {
+        LocalDateTime time = LocalDateTime.of(2024, 5, 1, 13, 45, 30);
+
+        priceHistoryService.record(refresh(time, Map.of("BTC", 50000.0, "ETH", 3000.0)));
+        // A move too small to be published is still a move of the history
+        priceHistoryService.record(refresh(time.plusSeconds(10), Map.of("BTC", 50001.0, "ETH", 3000.0)));
+        // Refreshed before the last recorded price, by a concurrent refresh
+        priceHistoryService.record(refresh(time.plusSeconds(5), Map.of("BTC", 49000.0)));
+
+        verify(priceCandleRepository, times(3)).record(eq("BTC"), anyString(), any(), eq(50001.0));
+        verify(priceCandleRepository, never()).record(eq("BTC"), anyString(), any(), eq(49000.0));
+        verify(priceCandleRepository, times(3)).record(eq("ETH"), anyString(), any(), anyDouble());
+    }
+
+    @Test
+    void priceAt_ShouldReturnTheCloseOfTheLatestMinuteCandle() {
+        LocalDateTime time = LocalDateTime.of(2024, 5, 1, 13, 45, 30);
+        when(priceCandleRepository.findFirstBySymbolAndResolutionAndBucketStartLessThanEqualOrderByBucketStartDesc(
+                "BTC", PriceResolution.MINUTE, time))
+                .thenReturn(Optional.of(new PriceCandle("BTC", PriceResolution.MINUTE,
+                        LocalDateTime.of(2024, 5, 1, 13, 45), 1.0, 3.0, 0.5, 2.0, 4)));
+
+        assertEquals(OptionalDouble.of(2.0), priceHistoryService.priceAt("btc", time));
+        assertEquals(OptionalDouble.empty(), priceHistoryService.priceAt("ETH", time));
+    }
+
+    @Test
+    void priceAt_BeyondTheMinuteRetention_ShouldFallBackToHourAndDayCandles() {
+        LocalDateTime time = LocalDateTime.of(2024, 5, 1, 13, 45, 30);
+        when(priceCandleRepository.findFirstBySymbolAndResolutionAndBucketStartLessThanEqualOrderByBucketStartDesc(
+                "BTC", PriceResolution.HOUR, time))
+                .thenReturn(Optional.of(new PriceCandle("BTC", PriceResolution.HOUR,
+                        LocalDateTime.of(2024, 5, 1, 13, 0), 1.0, 3.0, 0.5, 2.5, 40)));
+        when(priceCandleRepository.findFirstBySymbolAndResolutionAndBucketStartLessThanEqualOrderByBucketStartDesc(
+                "ETH", PriceResolution.DAY, time))
+                .thenReturn(Optional.of(new PriceCandle("ETH", PriceResolution.DAY,
+                        LocalDateTime.of(2024, 5, 1, 0, 0), 1.0, 3.0, 0.5, 1.5, 400)));
+
+        assertEquals(OptionalDouble.of(2.5), priceHistoryService.priceAt("BTC", time));
+        assertEquals(OptionalDouble.of(1.5), priceHistoryService.priceAt("ETH", time));
+        verify(priceCandleRepository).findFirstBySymbolAndResolutionAndBucketStartLessThanEqualOrderByBucketStartDesc(
+                "ETH", PriceResolution.HOUR, time);
+    }
+}
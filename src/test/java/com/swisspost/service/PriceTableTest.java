@@ -0,0 +1,65 @@
+package com.swisspost.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PriceTableTest {
+
+    @Test
+    void register_SameSymbolInAnyCase_ShouldReturnSameId() {
+        SymbolRegistry registry = new SymbolRegistry();
+
+        int btc = registry.register("BTC");
+        int eth = registry.register("eth");
+
+        assertEquals(btc, registry.register("btc"));
+        assertEquals(eth, registry.idOf("ETH"));
+        assertEquals("ETH", registry.symbolOf(eth));
+        assertEquals(-1, registry.idOf("SOL"));
+        assertEquals(2, registry.size());
+    }
+
+    @Test
+    void get_UnknownOrMissingId_ShouldReturnNaN() {
+        PriceTable table = new PriceTable();
+        table.update(3, 10.0);
+
+        assertEquals(10.0, table.get(3));
+        assertTrue(Double.isNaN(table.get(0)));
+        assertTrue(Double.isNaN(table.get(42)));
+        assertTrue(Double.isNaN(table.get(-1)));
+    }
+
+    @Test
+    void read_ConcurrentUpdates_ShouldAlwaysSeeOneVersion() throws InterruptedException {
+        PriceTable table = new PriceTable();
+        int[] ids = {0, 1, 2, 3};
+        table.update(ids, new double[]{0, 0, 0, 0}, ids.length);
+
+        AtomicBoolean running = new AtomicBoolean(true);
+        Thread writer = new Thread(() -> {
+            double value = 1;
+            while (running.get()) {
+                table.update(ids, new double[]{value, value, value, value}, ids.length);
+                value++;
+            }
+        });
+        writer.start();
+
+        double[] prices = new double[ids.length];
+        try {
+            for (int i = 0; i < 100_000; i++) {
+                table.read(ids, prices);
+                for (double price : prices) {
+                    assertEquals(prices[0], price, "A read mixed two versions of the table");
+                }
+            }
+        } finally {
+            running.set(false);
+            writer.join();
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package com.swisspost.service;
+
+import com.swisspost.config.CoinCapProperties;
+import com.swisspost.exception.PriceSourceException;
+import com.swisspost.exception.PriceSourceUnavailableException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ResilientPriceSourceClientTest {
+
+    private static final String PRICES = "/assets?ids=bitcoin";
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final AtomicLong clock = new AtomicLong(1_000_000);
+
+    private final CoinCapProperties coinCapProperties = new CoinCapProperties();
+
+    // Responses of the stubbed price source, in order; the last one repeats
+    private final Deque<CompletableFuture<InputStream>> responses = new ArrayDeque<>();
+
+    private final AtomicInteger requests = new AtomicInteger();
+
+    private ResilientPriceSourceClient client;
+
+    @BeforeEach
+    void setUp() {
+        coinCapProperties.setCircuitFailureThreshold(2);
+        coinCapProperties.setCircuitOpenDuration(30_000);
+        coinCapProperties.setMaxRetries(2);
+        coinCapProperties.setRetryBackoff(1);
+        coinCapProperties.setRetryBudgetRatio(0.1);
+        coinCapProperties.setRetryBudgetBurst(10);
+        coinCapProperties.setDefaultRetryAfter(10_000);
+        client = new ResilientPriceSourceClient(path -> {
+            requests.incrementAndGet();
+            return responses.size() > 1 ? responses.poll() : responses.peek();
+        }, coinCapProperties, meterRegistry, clock::get);
+    }
+
+    private static CompletableFuture<InputStream> ok() {
+        return CompletableFuture.completedFuture(new ByteArrayInputStream(new byte[0]));
+    }
+
+    private static CompletableFuture<InputStream> status(int statusCode, long retryAfterMillis) {
+        return CompletableFuture.failedFuture(new PriceSourceException(statusCode, "HTTP " + statusCode, retryAfterMillis));
+    }
+
+    private static Throwable failure(CompletableFuture<InputStream> result) throws Exception {
+        ExecutionException e = assertThrows(ExecutionException.class, () -> result.get(5, TimeUnit.SECONDS));
+        return e.getCause();
+    }
+
+    @Test
+    void get_ServerError_ShouldBeRetriedUntilItSucceeds() throws Exception {
+        coinCapProperties.setCircuitFailureThreshold(5);
+        responses.add(status(503, -1));
+        responses.add(status(502, -1));
+        responses.add(ok());
+
+        assertNotNull(client.get(PRICES).get(5, TimeUnit.SECONDS));
+
+        assertEquals(3, requests.get());
+        assertEquals(2.0, meterRegistry.get("price.source.retries").counter().count());
+        assertEquals(ResilientPriceSourceClient.CircuitState.CLOSED, client.circuitState(PRICES));
+    }
+
+    @Test
+    void get_ClientError_ShouldNeitherBeRetriedNorOpenTheCircuit() throws Exception {
+        responses.add(status(404, -1));
+
+        for (int i = 0; i < 3; i++) {
+            assertInstanceOf(PriceSourceException.class, failure(client.get(PRICES)));
+        }
+
+        assertEquals(3, requests.get());
+        assertEquals(ResilientPriceSourceClient.CircuitState.CLOSED, client.circuitState(PRICES));
+    }
+
+    @Test
+    void get_ConsecutiveFailures_ShouldOpenTheCircuitOfTheEndpointOnly() throws Exception {
+        coinCapProperties.setMaxRetries(0);
+        responses.add(status(500, -1));
+
+        failure(client.get(PRICES));
+        failure(client.get("/assets?ids=ethereum"));
+        assertEquals(ResilientPriceSourceClient.CircuitState.OPEN, client.circuitState(PRICES));
+
+        // Refused without a request, the other endpoints still reach the source
+        assertInstanceOf(PriceSourceUnavailableException.class, failure(client.get(PRICES)));
+        assertEquals(2, requests.get());
+        failure(client.get("/assets/bitcoin"));
+        assertEquals(3, requests.get());
+        assertEquals(1.0, meterRegistry.get("price.source.requests").tag("result", "refused").counter().count());
+    }
+
+    @Test
+    void get_OpenCircuitAfterItsDuration_ShouldCloseOnASuccessfulTrial() throws Exception {
+        coinCapProperties.setMaxRetries(0);
+        responses.add(status(500, -1));
+        failure(client.get(PRICES));
+        failure(client.get(PRICES));
+        assertEquals(ResilientPriceSourceClient.CircuitState.OPEN, client.circuitState(PRICES));
+
+        clock.addAndGet(30_000);
+        responses.clear();
+        responses.add(ok());
+
+        assertNotNull(client.get(PRICES).get(5, TimeUnit.SECONDS));
+        assertEquals(ResilientPriceSourceClient.CircuitState.CLOSED, client.circuitState(PRICES));
+    }
+
+    @Test
+    void get_FailedTrial_ShouldOpenTheCircuitAgain() throws Exception {
+        coinCapProperties.setMaxRetries(0);
+        responses.add(status(500, -1));
+        failure(client.get(PRICES));
+        failure(client.get(PRICES));
+
+        clock.addAndGet(30_000);
+        failure(client.get(PRICES));
+
+        assertEquals(ResilientPriceSourceClient.CircuitState.OPEN, client.circuitState(PRICES));
+        assertInstanceOf(PriceSourceUnavailableException.class, failure(client.get(PRICES)));
+        assertEquals(3, requests.get());
+    }
+
+    @Test
+    void get_RateLimited_ShouldPauseAllRequestsUntilRetryAfter() throws Exception {
+        responses.add(status(429, 5_000));
+        responses.add(ok());
+
+        assertInstanceOf(PriceSourceException.class, failure(client.get(PRICES)));
+        assertInstanceOf(PriceSourceUnavailableException.class, failure(client.get("/assets/bitcoin")));
+        assertEquals(1, requests.get());
+
+        clock.addAndGet(5_000);
+        assertNotNull(client.get("/assets/bitcoin").get(5, TimeUnit.SECONDS));
+        assertEquals(2, requests.get());
+    }
+
+    @Test
+    void get_RetryBudgetExhausted_ShouldFailWithoutRetrying() throws Exception {
+        coinCapProperties.setCircuitFailureThreshold(100);
+        coinCapProperties.setMaxRetries(1);
+        coinCapProperties.setRetryBudgetRatio(0);
+        coinCapProperties.setRetryBudgetBurst(2);
+        client = new ResilientPriceSourceClient(path -> {
+            requests.incrementAndGet();
+            return status(503, -1);
+        }, coinCapProperties, meterRegistry, clock::get);
+
+        for (int i = 0; i < 4; i++) {
+            failure(client.get(PRICES));
+        }
+
+        // Two requests retried once with the initial budget, the other two sent once
+        assertEquals(6, requests.get());
+    }
+
+    @Test
+    void endpointOf_ShouldGroupPathsByEndpoint() {
+        assertEquals("/assets?ids", ResilientPriceSourceClient.endpointOf("/assets?ids=bitcoin,ethereum"));
+        assertEquals("/assets?limit", ResilientPriceSourceClient.endpointOf("/assets?limit=2000&offset=0"));
+        assertEquals("/assets/{id}", ResilientPriceSourceClient.endpointOf("/assets/bitcoin"));
+        assertEquals("/assets", ResilientPriceSourceClient.endpointOf("/assets"));
+    }
+}
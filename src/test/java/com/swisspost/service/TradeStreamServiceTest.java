@@ -0,0 +1,230 @@
+package com.swisspost.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.swisspost.dto.TradeImportResult;
+import com.swisspost.dto.TradeRow;
+import com.swisspost.exception.InvalidSymbolException;
+import com.swisspost.model.AssetStatus;
+import com.swisspost.repository.TradeRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class TradeStreamServiceTest {
+
+    @Mock
+    private WalletService walletService;
+
+    @Mock
+    private TradeRepository tradeRepository;
+
+    @Mock
+    private EntityManager entityManager;
+
+    private TradeStreamService tradeStreamService;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        ObjectMapper objectMapper = new ObjectMapper()
+                .findAndRegisterModules()
+                .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+        tradeStreamService = new TradeStreamService(walletService, tradeRepository, objectMapper, entityManager,
+                new SimpleMeterRegistry());
+    }
+
+    private static ByteArrayInputStream body(String lines) {
+        return new ByteArrayInputStream(lines.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void importTrades_Csv_ShouldCommitInChunks() {
+        String csv = """
+                symbol,side,quantity,price,createdAt
+                BTC,BUY,1.0,40000.0,2024-01-01T10:00:00
+                ETH,buy,2.0,,
+                BTC,SELL,0.5,45000.0,2024-01-02T10:00:00
+
+                SOL,BUY,10.0,100.0,
+                SOL,,1.0,100.0,
+                """;
+
+        TradeImportResult result = tradeStreamService.importTrades(1L, body(csv), TradeFormat.CSV, 2);
+
+        assertEquals(5, result.importedRows());
+        assertEquals(3, result.committedChunks());
+        assertNull(result.error());
+
+        ArgumentCaptor<List<TradeRow>> chunks = ArgumentCaptor.forClass(List.class);
+        verify(walletService, times(3)).importTrades(eq(1L), chunks.capture());
+        TradeRow first = chunks.getAllValues().get(0).get(0);
+        assertEquals("BTC", first.symbol());
+        assertEquals(AssetStatus.BUY, first.side());
+        assertEquals(40000.0, first.price());
+        assertEquals(LocalDateTime.of(2024, 1, 1, 10, 0), first.createdAt());
+        assertEquals(0.0, chunks.getAllValues().get(0).get(1).price());
+        assertEquals(AssetStatus.SELL, chunks.getAllValues().get(1).get(0).side());
+        assertNull(chunks.getAllValues().get(2).get(0).side());
+        verify(entityManager, times(3)).clear();
+    }
+
+    @Test
+    void importTrades_MalformedNdjsonLine_ShouldStopAfterTheCommittedChunks() {
+        String ndjson = """
+                {"symbol":"BTC","side":"BUY","quantity":1.0}
+                {"symbol":"ETH","side":"BUY","quantity":2.0}
+                {"symbol":"ETH","quantity":
+                """;
+
+        TradeImportResult result = tradeStreamService.importTrades(1L, body(ndjson), TradeFormat.NDJSON, 2);
+
+        assertEquals(2, result.importedRows());
+        assertEquals(1, result.committedChunks());
+        assertEquals(3L, result.failedLine());
+        assertNotNull(result.error());
+    }
+
+    @Test
+    void importTrades_RejectedChunk_ShouldReportTheLineItStartedAt() {
+        String ndjson = """
+                {"symbol":"BTC","quantity":1.0}
+                {"symbol":"XYZ","quantity":1.0}
+                """;
+        when(walletService.importTrades(eq(1L), anyList()))
+                .thenThrow(new InvalidSymbolException("Price not available for symbol: XYZ"));
+
+        TradeImportResult result = tradeStreamService.importTrades(1L, body(ndjson), TradeFormat.NDJSON, 10);
+
+        assertEquals(0, result.importedRows());
+        assertEquals(1L, result.failedLine());
+        assertEquals("Price not available for symbol: XYZ", result.error());
+    }
+
+    @Test
+    void importTrades_QuotedCsvFields_ShouldBeUnquoted() {
+        String csv = "\"symbol\",\"quantity\",note\n\"BTC\",1.0,\"bought, \"\"finally\"\"\"\n";
+
+        TradeImportResult result = tradeStreamService.importTrades(1L, body(csv), TradeFormat.CSV, 10);
+
+        assertEquals(1, result.importedRows());
+        assertNull(result.error());
+        verify(walletService).importTrades(1L, List.of(new TradeRow(null, null, "BTC", null, 1.0, 0)));
+    }
+
+    @Test
+    void importTrades_MalformedCsvRow_ShouldReportItsLine() {
+        String csv = """
+                symbol,quantity
+                BTC,1.0
+                ETH,2.0,3.0
+                """;
+
+        TradeImportResult result = tradeStreamService.importTrades(1L, body(csv), TradeFormat.CSV, 1);
+
+        assertEquals(1, result.importedRows());
+        assertEquals(3L, result.failedLine());
+        assertEquals("Cannot parse line 3: expected 2 fields but found 3", result.error());
+    }
+
+    @Test
+    void importTrades_MalformedRowInTheMiddleOfAChunk_ShouldReportTheLineTheChunkStartedAt() {
+        String csv = """
+                symbol,quantity
+                BTC,1.0
+                ETH,2.0
+                SOL,10.0
+                XRP,"5.0
+                """;
+
+        TradeImportResult result = tradeStreamService.importTrades(1L, body(csv), TradeFormat.CSV, 2);
+
+        assertEquals(2, result.importedRows());
+        assertEquals(1, result.committedChunks());
+        assertEquals(4L, result.failedLine());
+        assertEquals("Cannot parse line 5: unterminated quoted field", result.error());
+        verify(walletService, times(1)).importTrades(eq(1L), anyList());
+    }
+
+    @Test
+    void importTrades_TradeBefore1970_ShouldBeRejected() {
+        String ndjson = """
+                {"symbol":"BTC","quantity":1.0,"createdAt":"1970-01-01T00:00:00"}
+                {"symbol":"BTC","quantity":1.0,"createdAt":"1969-12-31T23:59:59"}
+                """;
+
+        TradeImportResult result = tradeStreamService.importTrades(1L, body(ndjson), TradeFormat.NDJSON, 10);
+
+        assertEquals(0, result.importedRows());
+        assertEquals(1L, result.failedLine());
+        assertEquals("Cannot parse line 2: createdAt 1969-12-31T23:59:59 is before 1970 or after 9999", result.error());
+        verify(walletService, never()).importTrades(anyLong(), anyList());
+    }
+
+    @Test
+    void parseCsvLine_ShouldRejectUnbalancedQuotes() {
+        assertEquals(List.of("", "a,b", "c\"d", ""), TradeStreamService.parseCsvLine(",\"a,b\",\"c\"\"d\","));
+        assertThrows(IllegalArgumentException.class, () -> TradeStreamService.parseCsvLine("\"BTC,1.0"));
+        assertThrows(IllegalArgumentException.class, () -> TradeStreamService.parseCsvLine("\"BTC\"x,1.0"));
+        assertThrows(IllegalArgumentException.class, () -> TradeStreamService.parseCsvLine("B\"TC,1.0"));
+    }
+
+    @Test
+    void exportTrades_CsvFieldsWithSeparators_ShouldBeQuoted() throws Exception {
+        when(tradeRepository.findTradeRowsAfter(eq(1L), eq(0L), any())).thenReturn(List.of(
+                new TradeRow(1L, LocalDateTime.of(2024, 1, 1, 10, 0), "B,\"TC", AssetStatus.BUY, 1.0, 40000.0)));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        tradeStreamService.exportTrades(1L, TradeFormat.CSV, out);
+
+        String[] lines = out.toString(StandardCharsets.UTF_8).split("\n");
+        assertEquals("1,2024-01-01T10:00,\"B,\"\"TC\",BUY,1.0,40000.0", lines[1]);
+        assertEquals("B,\"TC", TradeStreamService.parseCsvLine(lines[1]).get(2));
+    }
+
+    @Test
+    void exportTrades_Csv_ShouldWriteHeaderAndOneLinePerTrade() throws Exception {
+        List<TradeRow> page = List.of(
+                new TradeRow(1L, LocalDateTime.of(2024, 1, 1, 10, 0), "BTC", AssetStatus.BUY, 1.0, 40000.0),
+                new TradeRow(2L, LocalDateTime.of(2024, 1, 2, 10, 0), "BTC", AssetStatus.SELL, 0.5, 45000.0));
+        when(tradeRepository.findTradeRowsAfter(eq(1L), eq(0L), any())).thenReturn(page);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        tradeStreamService.exportTrades(1L, TradeFormat.CSV, out);
+
+        String[] lines = out.toString(StandardCharsets.UTF_8).split("\n");
+        assertEquals(3, lines.length);
+        assertEquals(TradeStreamService.CSV_HEADER, lines[0]);
+        assertEquals("1,2024-01-01T10:00,BTC,BUY,1.0,40000.0", lines[1]);
+        assertEquals("2,2024-01-02T10:00,BTC,SELL,0.5,45000.0", lines[2]);
+    }
+
+    @Test
+    void exportTrades_Ndjson_ShouldBeReadableByTheImport() throws Exception {
+        when(tradeRepository.findTradeRowsAfter(eq(1L), eq(0L), any())).thenReturn(List.of(
+                new TradeRow(1L, LocalDateTime.of(2024, 1, 1, 10, 0), "BTC", AssetStatus.BUY, 1.0, 40000.0)));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        tradeStreamService.exportTrades(1L, TradeFormat.NDJSON, out);
+        TradeImportResult result = tradeStreamService.importTrades(2L,
+                new ByteArrayInputStream(out.toByteArray()), TradeFormat.NDJSON, 10);
+
+        assertEquals(1, result.importedRows());
+        verify(walletService).importTrades(2L, List.of(
+                new TradeRow(1L, LocalDateTime.of(2024, 1, 1, 10, 0), "BTC", AssetStatus.BUY, 1.0, 40000.0)));
+    }
+}
@@ -0,0 +1,57 @@
+package com.swisspost.service;
+
+import com.swisspost.config.ValuationProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ValuationExecutorTest {
+
+    private ValuationExecutor valuationExecutor;
+
+    @BeforeEach
+    void setUp() {
+        ValuationProperties valuationProperties = new ValuationProperties();
+        valuationProperties.setParallelism(2);
+        valuationExecutor = new ValuationExecutor(valuationProperties, new SimpleMeterRegistry());
+    }
+
+    @AfterEach
+    void tearDown() {
+        valuationExecutor.shutdown();
+    }
+
+    @Test
+    void forEachBatch_ShouldHandEveryItemToExactlyOneBatchOnThePool() {
+        List<Integer> items = IntStream.range(0, 1000).boxed().toList();
+        List<Integer> seen = Collections.synchronizedList(new ArrayList<>());
+        List<String> threads = Collections.synchronizedList(new ArrayList<>());
+
+        valuationExecutor.forEachBatch(items, 64, batch -> {
+            assertTrue(batch.size() <= 64);
+            seen.addAll(batch);
+            threads.add(Thread.currentThread().getName());
+        });
+
+        assertEquals(items, seen.stream().sorted().toList());
+        assertEquals(16, threads.size());
+        assertTrue(threads.stream().allMatch(name -> name.startsWith("wallet-valuation-")));
+    }
+
+    @Test
+    void forEachBatch_SingleBatch_ShouldRunOnTheCallingThread() {
+        List<String> threads = new ArrayList<>();
+
+        valuationExecutor.forEachBatch(List.of(1, 2, 3), 64, batch -> threads.add(Thread.currentThread().getName()));
+
+        assertEquals(List.of(Thread.currentThread().getName()), threads);
+    }
+}
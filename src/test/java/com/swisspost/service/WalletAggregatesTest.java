@@ -0,0 +1,121 @@
+package com.swisspost.service;
+
+import com.swisspost.config.ValuationProperties;
+import com.swisspost.model.Asset;
+import com.swisspost.model.Wallet;
+import com.swisspost.repository.WalletRepository;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class WalletAggregatesTest {
+
+    private final SymbolRegistry symbolRegistry = new SymbolRegistry();
+
+    private PriceSnapshot snapshot(long version, double btcPrice, double ethPrice) {
+        int btc = symbolRegistry.register("BTC");
+        int eth = symbolRegistry.register("ETH");
+        double[] prices = new double[Math.max(btc, eth) + 1];
+        prices[btc] = btcPrice;
+        prices[eth] = ethPrice;
+        return new PriceSnapshot(version, Instant.now(), symbolRegistry, prices);
+    }
+
+    @Test
+    void of_WalletAssets_ShouldAggregateQuantityAndCostBasisPerSymbol() {
+        WalletAggregates aggregates = WalletAggregates.of(0, List.of(
+                new Asset("BTC", 1.0, 40000.0),
+                new Asset("ETH", 2.0, 2000.0)));
+
+        Map<String, PositionValuation> valuations = aggregates.valuations(snapshot(1, 50000.0, 1000.0))
+                .stream()
+                .collect(Collectors.toMap(PositionValuation::symbol, v -> v));
+
+        assertEquals(40000.0, valuations.get("BTC").costBasis());
+        assertEquals(50000.0, valuations.get("BTC").currentValue());
+        assertEquals(25.0, valuations.get("BTC").growthRate());
+        assertEquals(-50.0, valuations.get("ETH").growthRate());
+        assertEquals(52000.0, aggregates.totalValue(snapshot(1, 50000.0, 1000.0)));
+    }
+
+    @Test
+    void buyAndSell_ShouldUpdateAggregatesInPlace() {
+        WalletAggregates aggregates = WalletAggregates.of(0, List.of(new Asset("BTC", 1.0, 40000.0)));
+        PriceSnapshot prices = snapshot(1, 50000.0, 3000.0);
+        assertEquals(50000.0, aggregates.totalValue(prices));
+
+        aggregates.buy(1, "BTC", 1.0, 60000.0);
+        aggregates.buy(2, "ETH", 1.0, 3000.0);
+        assertEquals(103000.0, aggregates.totalValue(prices));
+
+        // Selling keeps the average cost of the remaining quantity
+        aggregates.sell(3, "BTC", 1.5);
+        PositionValuation btc = aggregates.valuations(prices).stream()
+                .filter(v -> v.symbol().equals("BTC"))
+                .findFirst()
+                .orElseThrow();
+        assertEquals(0.5, btc.quantity());
+        assertEquals(25000.0, btc.costBasis());
+        assertEquals(3, aggregates.getWalletVersion());
+
+        aggregates.sell(4, "ETH", 1.0);
+        assertEquals(1, aggregates.valuations(prices).size());
+    }
+
+    @Test
+    void aggregatesFor_OverTheBound_ShouldDropTheLeastRecentlyUsedWallet() {
+        ValuationProperties valuationProperties = new ValuationProperties();
+        valuationProperties.setAggregatesMaxEntries(2);
+        WalletAggregateService walletAggregateService = new WalletAggregateService(valuationProperties,
+                mock(WalletRepository.class));
+        Wallet first = new Wallet("owner-1");
+        first.setId(1L);
+        Wallet second = new Wallet("owner-2");
+        second.setId(2L);
+        Wallet third = new Wallet("owner-3");
+        third.setId(3L);
+
+        WalletAggregates firstAggregates = walletAggregateService.aggregatesFor(first);
+        walletAggregateService.aggregatesFor(second);
+        assertSame(firstAggregates, walletAggregateService.aggregatesFor(first));
+        walletAggregateService.aggregatesFor(third);
+
+        assertEquals(2, walletAggregateService.size());
+        assertSame(firstAggregates, walletAggregateService.cachedAggregates(1L));
+        assertNull(walletAggregateService.cachedAggregates(2L));
+    }
+
+    @Test
+    void aggregatesFor_TradeCommittedDuringTheRebuild_ShouldNotBeCountedTwice() {
+        WalletRepository walletRepository = mock(WalletRepository.class);
+        WalletAggregateService walletAggregateService = new WalletAggregateService(new ValuationProperties(),
+                walletRepository);
+        Wallet wallet = spy(new Wallet("owner-1"));
+        wallet.setId(1L);
+        doReturn(1L).when(wallet).getVersion();
+        // The buy of version 2 commits after the version was read but before the assets are loaded
+        doAnswer(invocation -> {
+            when(walletRepository.findVersionById(1L)).thenReturn(Optional.of(2L));
+            return Set.of(new Asset("BTC", 1.0, 40000.0), new Asset("ETH", 1.0, 2000.0));
+        }).when(wallet).getCryptoAssets();
+        PriceSnapshot prices = snapshot(1, 50000.0, 3000.0);
+
+        assertEquals(53000.0, walletAggregateService.aggregatesFor(wallet).totalValue(prices));
+        walletAggregateService.recordBuy(1L, 2L, "ETH", 1.0, 2000.0);
+
+        assertNull(walletAggregateService.cachedAggregates(1L));
+        doReturn(2L).when(wallet).getVersion();
+        WalletAggregates rebuilt = walletAggregateService.aggregatesFor(wallet);
+        assertEquals(53000.0, rebuilt.totalValue(prices));
+        assertEquals(2, rebuilt.getWalletVersion());
+        assertSame(rebuilt, walletAggregateService.cachedAggregates(1L));
+    }
+}
@@ -0,0 +1,137 @@
+package com.swisspost.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.swisspost.config.PriceHistoryProperties;
+import com.swisspost.dto.PriceCandleRow;
+import com.swisspost.dto.TradeRow;
+import com.swisspost.model.AssetStatus;
+import com.swisspost.model.PriceCandle;
+import com.swisspost.model.PriceResolution;
+import com.swisspost.repository.PriceCandleRepository;
+import com.swisspost.repository.TradeRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class WalletHistoryServiceTest {
+
+    @Mock
+    private TradeRepository tradeRepository;
+
+    @Mock
+    private PriceCandleRepository priceCandleRepository;
+
+    private final ObjectMapper objectMapper = new ObjectMapper()
+            .findAndRegisterModules()
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+
+    private WalletHistoryService walletHistoryService;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        ZoneId zone = ZoneId.systemDefault();
+        walletHistoryService = new WalletHistoryService(tradeRepository, priceCandleRepository, objectMapper,
+                new PriceHistoryProperties(), Clock.fixed(at(13, 0).atZone(zone).toInstant(), zone));
+    }
+
+    private static LocalDateTime at(int hour, int minute) {
+        return LocalDateTime.of(2024, 5, 1, hour, minute);
+    }
+
+    private static PriceCandleRow candle(LocalDateTime bucketStart, double close) {
+        return new PriceCandleRow("BTC", PriceResolution.HOUR, bucketStart, close, close, close, close);
+    }
+
+    @Test
+    void writeValueSeries_ShouldReplayTradesAgainstTheCloses() throws Exception {
+        when(tradeRepository.findSymbolsTradedBefore(1L, at(13, 0))).thenReturn(List.of("btc"));
+        when(priceCandleRepository.findFirstBySymbolAndResolutionAndBucketStartLessThanEqualOrderByBucketStartDesc(
+                eq("BTC"), eq(PriceResolution.HOUR), any()))
+                .thenReturn(Optional.of(new PriceCandle("BTC", PriceResolution.HOUR, at(9, 0), 100, 100, 100, 100, 1)));
+        when(tradeRepository.findTradeRowsAfterCreatedAt(eq(1L), any(), anyLong(), any())).thenReturn(List.of(
+                new TradeRow(1L, at(9, 30), "btc", AssetStatus.BUY, 1.0, 90.0),
+                new TradeRow(2L, at(11, 20), "btc", AssetStatus.BUY, 1.0, 115.0)));
+        when(priceCandleRepository.findCandleRows(List.of("BTC"), PriceResolution.HOUR, at(10, 0), at(10, 0).plusHours(1000)))
+                .thenReturn(List.of(candle(at(11, 0), 110.0), candle(at(12, 0), 120.0)));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        walletHistoryService.writeValueSeries(1L, PriceResolution.HOUR, at(10, 15), at(12, 0), true, out);
+
+        String[] lines = out.toString(StandardCharsets.UTF_8).split("\n");
+        assertEquals(3, lines.length);
+
+        JsonNode first = objectMapper.readTree(lines[0]);
+        assertEquals("2024-05-01T10:00:00", first.get("time").asText());
+        assertEquals(100.0, first.get("totalValue").asDouble(), 1e-9);
+        assertEquals(10.0, first.get("profitAndLoss").asDouble(), 1e-9);
+
+        JsonNode second = objectMapper.readTree(lines[1]);
+        assertEquals(220.0, second.get("totalValue").asDouble(), 1e-9);
+        assertEquals(205.0, second.get("costBasis").asDouble(), 1e-9);
+        assertEquals(2.0, second.get("positions").get(0).get("quantity").asDouble(), 1e-9);
+
+        JsonNode third = objectMapper.readTree(lines[2]);
+        assertEquals(35.0, third.get("profitAndLoss").asDouble(), 1e-9);
+
+        // The whole ledger fit in one page and the candles in one window
+        verify(tradeRepository, times(1)).findTradeRowsAfterCreatedAt(eq(1L), any(), anyLong(), any());
+        verify(priceCandleRepository, times(1)).findCandleRows(any(), any(), any(), any());
+    }
+
+    @Test
+    void writeValueSeries_SymbolWithoutRecordedPrice_ShouldHaveNoValue() throws Exception {
+        when(tradeRepository.findSymbolsTradedBefore(1L, at(11, 0))).thenReturn(List.of("BTC"));
+        when(priceCandleRepository.findFirstBySymbolAndResolutionAndBucketStartLessThanEqualOrderByBucketStartDesc(
+                any(), any(), any())).thenReturn(Optional.empty());
+        when(tradeRepository.findTradeRowsAfterCreatedAt(eq(1L), any(), anyLong(), any())).thenReturn(List.of(
+                new TradeRow(1L, at(9, 30), "BTC", AssetStatus.BUY, 1.0, 90.0)));
+        when(priceCandleRepository.findCandleRows(any(), any(), any(), any())).thenReturn(List.of());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        walletHistoryService.writeValueSeries(1L, PriceResolution.HOUR, at(10, 0), at(10, 0), true, out);
+
+        JsonNode point = objectMapper.readTree(out.toString(StandardCharsets.UTF_8).trim());
+        assertTrue(point.get("totalValue").isNull());
+        assertTrue(point.get("profitAndLoss").isNull());
+        assertEquals(90.0, point.get("costBasis").asDouble(), 1e-9);
+        assertTrue(point.get("positions").get(0).get("value").isNull());
+    }
+
+    @Test
+    void validateRange_ShouldRejectTooManyPoints() {
+        assertThrows(IllegalArgumentException.class, () -> walletHistoryService.validateRange(
+                PriceResolution.DAY, at(0, 0).minusYears(20_000), at(0, 0)));
+        assertThrows(IllegalArgumentException.class, () -> walletHistoryService.validateRange(
+                PriceResolution.DAY, at(12, 0), at(10, 0)));
+        assertDoesNotThrow(() -> walletHistoryService.validateRange(
+                PriceResolution.DAY, at(0, 0).minusYears(5), at(0, 0)));
+    }
+
+    @Test
+    void validateRange_BeyondTheRetentionOfTheResolution_ShouldBeRejected() {
+        assertThrows(IllegalArgumentException.class, () -> walletHistoryService.validateRange(
+                PriceResolution.MINUTE, at(13, 0).minusDays(8), at(13, 0)));
+        assertDoesNotThrow(() -> walletHistoryService.validateRange(
+                PriceResolution.MINUTE, at(13, 0).minusDays(6), at(13, 0)));
+        assertThrows(IllegalArgumentException.class, () -> walletHistoryService.validateRange(
+                PriceResolution.HOUR, at(13, 0).minusDays(181), at(13, 0)));
+        assertDoesNotThrow(() -> walletHistoryService.validateRange(
+                PriceResolution.HOUR, at(13, 0).minusDays(179), at(13, 0)));
+    }
+}
@@ -0,0 +1,127 @@
+package com.swisspost.service;
+
+import com.swisspost.dto.HoldingSummary;
+import com.swisspost.dto.KeysetPage;
+import com.swisspost.dto.PositionRow;
+import com.swisspost.dto.TradeRow;
+import com.swisspost.dto.WalletSummary;
+import com.swisspost.exception.WalletNotFoundException;
+import com.swisspost.model.AssetStatus;
+import com.swisspost.model.Wallet;
+import com.swisspost.repository.AssetRepository;
+import com.swisspost.repository.TradeRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.data.domain.PageRequest;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class WalletReadServiceTest {
+
+    @Mock
+    private WalletService walletService;
+
+    @Mock
+    private AssetRepository assetRepository;
+
+    @Mock
+    private TradeRepository tradeRepository;
+
+    @Mock
+    private AssetService assetService;
+
+    private WalletReadService walletReadService;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        walletReadService = new WalletReadService(walletService, assetRepository, tradeRepository, assetService);
+    }
+
+    private static PositionRow position(long id, LocalDateTime createdAt) {
+        return new PositionRow(id, createdAt, "BTC", AssetStatus.BUY, 1.0, 100.0);
+    }
+
+    @Test
+    void keysetCursor_ShouldRoundTrip() {
+        KeysetCursor cursor = new KeysetCursor(LocalDateTime.of(2024, 3, 1, 12, 30, 15), 42);
+        assertEquals(cursor, KeysetCursor.decode(cursor.encode()));
+        assertThrows(IllegalArgumentException.class, () -> KeysetCursor.decode("not-a-cursor"));
+    }
+
+    @Test
+    void positions_ShouldFetchOneExtraRowAndReturnTheNextCursor() {
+        LocalDateTime now = LocalDateTime.of(2024, 1, 1, 0, 0);
+        when(assetRepository.findPositionRowsAfter(1L, 0L, PageRequest.of(0, 3)))
+                .thenReturn(List.of(position(5, now), position(7, now), position(9, now)));
+
+        KeysetPage<PositionRow> page = walletReadService.positions(1L, KeysetSort.ID, true, null, 2);
+
+        assertEquals(2, page.items().size());
+        assertEquals(new KeysetCursor(now, 7), KeysetCursor.decode(page.nextCursor()));
+
+        when(assetRepository.findPositionRowsAfter(1L, 7L, PageRequest.of(0, 3)))
+                .thenReturn(List.of(position(9, now)));
+
+        KeysetPage<PositionRow> last = walletReadService.positions(1L, KeysetSort.ID, true, page.nextCursor(), 2);
+
+        assertEquals(1, last.items().size());
+        assertNull(last.nextCursor());
+    }
+
+    @Test
+    void trades_ByCreatedAtDescending_ShouldStartAfterTheLatestRow() {
+        when(tradeRepository.findTradeRowsBeforeCreatedAt(eq(1L), any(), anyLong(), any())).thenReturn(List.of(
+                new TradeRow(3L, LocalDateTime.now(), "ETH", AssetStatus.SELL, 1.0, 10.0)));
+
+        KeysetPage<TradeRow> page = walletReadService.trades(1L, KeysetSort.CREATED_AT, false, null, 0);
+
+        assertEquals(1, page.items().size());
+        assertNull(page.nextCursor());
+        KeysetCursor first = KeysetCursor.first(false);
+        verify(tradeRepository).findTradeRowsBeforeCreatedAt(1L, first.createdAt(), first.id(),
+                PageRequest.of(0, WalletReadService.DEFAULT_PAGE_SIZE + 1));
+    }
+
+    @Test
+    void positions_UnknownWallet_ShouldNotQuery() {
+        when(walletService.getWallet(2L)).thenThrow(new WalletNotFoundException("Wallet 2 not found"));
+
+        assertThrows(WalletNotFoundException.class,
+                () -> walletReadService.positions(2L, KeysetSort.ID, true, null, 10));
+        verifyNoInteractions(assetRepository);
+    }
+
+    @Test
+    void summary_UnpricedSymbol_ShouldListItWithoutAValue() {
+        Wallet wallet = new Wallet("owner-1");
+        wallet.setId(1L);
+        when(walletService.getWallet(1L)).thenReturn(wallet);
+        SymbolRegistry symbolRegistry = new SymbolRegistry();
+        double[] prices = new double[1];
+        prices[symbolRegistry.register("BTC")] = 150.0;
+        when(assetService.getPriceSnapshot()).thenReturn(new PriceSnapshot(3, Instant.now(), symbolRegistry, prices));
+        LocalDateTime now = LocalDateTime.of(2024, 1, 1, 0, 0);
+        when(assetRepository.findPositionRows(1L)).thenReturn(List.of(
+                new PositionRow(1L, now, "BTC", AssetStatus.BUY, 2.0, 100.0),
+                new PositionRow(2L, now, "NEWCOIN", AssetStatus.BUY, 10.0, 2.0)));
+
+        WalletSummary summary = walletReadService.summary(1L);
+
+        assertEquals(3, summary.priceVersion());
+        assertNull(summary.totalValue());
+        assertEquals(List.of(
+                new HoldingSummary("BTC", 2.0, 200.0, 300.0, 100.0, 50.0),
+                new HoldingSummary("NEWCOIN", 10.0, 20.0, null, null, null)), summary.positions());
+    }
+}
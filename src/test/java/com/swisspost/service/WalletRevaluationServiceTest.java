@@ -0,0 +1,103 @@
+package com.swisspost.service;
+
+import com.swisspost.config.ValuationProperties;
+import com.swisspost.dto.WalletAnalytics;
+import com.swisspost.model.Asset;
+import com.swisspost.model.Wallet;
+import com.swisspost.repository.WalletRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class WalletRevaluationServiceTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final PriceFetcher priceFetcher = mock(PriceFetcher.class);
+
+    private final SymbolRegistry symbolRegistry = new SymbolRegistry();
+
+    private ValuationExecutor valuationExecutor;
+
+    private WalletValueCalculator walletValueCalculator;
+
+    private WalletRevaluationService walletRevaluationService;
+
+    @BeforeEach
+    void setUp() {
+        symbolRegistry.register("BTC");
+        symbolRegistry.register("ETH");
+
+        ValuationProperties valuationProperties = new ValuationProperties();
+        valuationExecutor = new ValuationExecutor(valuationProperties, meterRegistry);
+        WalletAggregateService walletAggregateService = new WalletAggregateService(valuationProperties,
+                mock(WalletRepository.class));
+        WalletValuationCache walletValuationCache = new WalletValuationCache(valuationProperties, meterRegistry);
+        walletValueCalculator = new WalletValueCalculator(priceFetcher, walletAggregateService, walletValuationCache);
+        walletRevaluationService = new WalletRevaluationService(priceFetcher, walletAggregateService,
+                walletValueCalculator, walletValuationCache, valuationExecutor, valuationProperties, meterRegistry);
+    }
+
+    @AfterEach
+    void tearDown() {
+        walletRevaluationService.shutdown();
+        valuationExecutor.shutdown();
+    }
+
+    private PriceSnapshot snapshot(long version, double btcPrice, double ethPrice) {
+        return new PriceSnapshot(version, Instant.now(), symbolRegistry, new double[]{btcPrice, ethPrice});
+    }
+
+    private static Wallet wallet(long id, String symbol) {
+        Wallet wallet = new Wallet("owner-" + id);
+        wallet.setId(id);
+        wallet.setCryptoAssets(Set.of(new Asset(symbol, 2.0, 10.0)));
+        return wallet;
+    }
+
+    private double revaluedWallets() {
+        return meterRegistry.get("wallet.revaluation.wallets").counter().count();
+    }
+
+    @Test
+    void revalue_ShouldOnlyRepriceWalletsHoldingAChangedSymbol() {
+        Wallet btcWallet = wallet(1, "BTC");
+        Wallet ethWallet = wallet(2, "ETH");
+        PriceSnapshot first = snapshot(1, 20.0, 5.0);
+        walletRevaluationService.revalue(new PriceDelta(1, first, first.changedSymbols(null)));
+        when(priceFetcher.getLatestSnapshot()).thenReturn(first);
+        walletValueCalculator.analyze(btcWallet);
+        WalletAnalytics ethAnalytics = walletValueCalculator.analyze(ethWallet);
+
+        PriceSnapshot second = snapshot(2, 30.0, 5.0);
+        walletRevaluationService.revalue(new PriceDelta(2, second, List.of("BTC")));
+        when(priceFetcher.getLatestSnapshot()).thenReturn(second);
+
+        assertEquals(1.0, revaluedWallets());
+        assertEquals(60.0, walletValueCalculator.analyze(btcWallet).totalValue(), 1e-9);
+        assertSame(ethAnalytics, walletValueCalculator.analyze(ethWallet));
+        assertEquals(2.0, meterRegistry.get("wallet.valuation.cache").tag("result", "hit").counter().count());
+    }
+
+    @Test
+    void revalue_ShouldNotifyListenersAfterRepricing() {
+        List<PriceSnapshot> notified = new ArrayList<>();
+        walletRevaluationService.addRevaluationListener(notified::add);
+        PriceSnapshot snapshot = snapshot(1, 20.0, 5.0);
+        PriceDelta delta = new PriceDelta(1, snapshot, snapshot.changedSymbols(null));
+
+        walletRevaluationService.revalue(delta);
+        walletRevaluationService.revalue(delta);
+
+        assertEquals(List.of(snapshot), notified);
+    }
+}
@@ -3,19 +3,29 @@ package com.swisspost.service;
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
 
+import java.time.Instant;
 import java.util.*;
 
+import com.swisspost.dto.BulkTradeResult;
+import com.swisspost.exception.AssetNotFoundException;
 import com.swisspost.exception.InvalidAssetQuantityException;
 import com.swisspost.exception.WalletNotFoundException;
 import com.swisspost.model.Asset;
 import com.swisspost.model.AssetStatus;
+import com.swisspost.model.Trade;
 import com.swisspost.repository.AssetRepository;
+import com.swisspost.repository.TradeRepository;
+import com.swisspost.repository.TrackedSymbolRepository;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.transaction.PlatformTransactionManager;
 
 import com.swisspost.model.Wallet;
 import com.swisspost.repository.WalletRepository;
@@ -29,9 +39,30 @@ public class WalletServiceTest {
     @Mock
     private AssetRepository assetRepository;
 
+    @Mock
+    private TradeRepository tradeRepository;
+
+    @Mock
+    private TrackedSymbolRepository trackedSymbolRepository;
+
     @Mock
     private AssetService assetService;
 
+    @Mock
+    private WalletAggregateService walletAggregateService;
+
+    @Mock
+    private WalletValuationCache walletValuationCache;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @Captor
+    private ArgumentCaptor<List<Trade>> trades;
+
+    @Captor
+    private ArgumentCaptor<List<Asset>> newPositions;
+
     @InjectMocks
     private WalletService walletService;
 
@@ -39,56 +70,97 @@ public class WalletServiceTest {
 
     @BeforeEach
     void setUp() {
-        testWallet = Wallet.getWalletInstance();
+        testWallet = new Wallet(WalletService.DEFAULT_OWNER_KEY);
         testWallet.setId(1L);
     }
 
     @Test
     void createWallet_ValidWallet_ReturnsCreatedWallet() {
         // Given & When
+        when(walletRepository.findByOwnerKey(WalletService.DEFAULT_OWNER_KEY)).thenReturn(Optional.empty());
         when(walletRepository.save(any(Wallet.class))).thenReturn(testWallet);
 
         Wallet result = walletService.createWallet();
 
         // Then
         assertEquals(testWallet, result);
-        verify(walletRepository, times(1)).save(testWallet);
-        verify(walletRepository).save(testWallet);
+        verify(walletRepository, times(1)).save(any(Wallet.class));
     }
 
     @Test
-    void createAWallet_WhenNoWalletExists_ShouldCreateNewWallet() {
+    void createAWallet_WhenOwnerHasNoWallet_ShouldCreateNewWallet() {
         // Given
-        when(walletRepository.findAll()).thenReturn(new ArrayList<>());
-        Wallet newWallet = Wallet.getWalletInstance();
-        when(walletRepository.save(any(Wallet.class))).thenReturn(newWallet);
+        when(walletRepository.findByOwnerKey("alice")).thenReturn(Optional.empty());
+        when(walletRepository.save(any(Wallet.class))).thenAnswer(invocation -> invocation.getArgument(0));
 
         // When
-        Wallet result = walletService.createWallet();
+        Wallet result = walletService.createWallet("alice");
 
         // Then
         assertNotNull(result);
-        verify(walletRepository).findAll();
+        assertEquals("alice", result.getOwnerKey());
+        verify(walletRepository).findByOwnerKey("alice");
         verify(walletRepository).save(any(Wallet.class));
+        verify(walletRepository, never()).findAll();
     }
 
     @Test
-    void createAWallet_WhenWalletExists_ShouldReturnExistingWallet() {
+    void createAWallet_WhenOwnerHasWallet_ShouldReturnExistingWallet() {
         // Given
-        Wallet existingWallet = Wallet.getWalletInstance();
-        List<Wallet> existingWallets = List.of(existingWallet);
-        when(walletRepository.findAll()).thenReturn(existingWallets);
+        Wallet existingWallet = new Wallet("alice");
+        when(walletRepository.findByOwnerKey("alice")).thenReturn(Optional.of(existingWallet));
 
         // When
-        Wallet result = walletService.createWallet();
+        Wallet result = walletService.createWallet("alice");
 
         // Then
         assertNotNull(result);
         assertEquals(existingWallet, result);
-        verify(walletRepository).findAll();
+        verify(walletRepository).findByOwnerKey("alice");
         verify(walletRepository, never()).save(any(Wallet.class));
     }
 
+    @Test
+    void createAWallet_WhenAConcurrentRequestCreatedItFirst_ShouldReturnThatWallet() {
+        // Given
+        Wallet concurrentWallet = new Wallet("alice");
+        when(walletRepository.findByOwnerKey("alice"))
+                .thenReturn(Optional.empty())
+                .thenReturn(Optional.of(concurrentWallet));
+        when(walletRepository.save(any(Wallet.class)))
+                .thenThrow(new DataIntegrityViolationException("duplicate key value violates idx_wallet_owner_key"));
+
+        // When
+        Wallet result = walletService.createWallet("alice");
+
+        // Then
+        assertSame(concurrentWallet, result);
+        verify(walletRepository, times(2)).findByOwnerKey("alice");
+    }
+
+    @Test
+    void getWallet_UnknownId_ShouldThrowWalletNotFoundException() {
+        // Given
+        when(walletRepository.findById(42L)).thenReturn(Optional.empty());
+
+        // When & Then
+        assertThrows(WalletNotFoundException.class, () -> walletService.getWallet(42L));
+        verify(walletRepository, never()).findAll();
+    }
+
+    @Test
+    void getWallet_WithoutId_ShouldLookUpTheDefaultOwner() {
+        // Given
+        when(walletRepository.findByOwnerKey(WalletService.DEFAULT_OWNER_KEY)).thenReturn(Optional.of(testWallet));
+
+        // When
+        Wallet result = walletService.getWallet();
+
+        // Then
+        assertEquals(testWallet, result);
+        verify(walletRepository, never()).findAll();
+    }
+
     @Test
     void addAssetToWallet_EmptyWallet_ShouldAddSuccessfully() {
         // Given
@@ -96,10 +168,10 @@ public class WalletServiceTest {
 
         Asset newAsset = new Asset("XRP", 2.3, 1.334);
 
-        when(walletRepository.findById(testWallet.getId())).thenReturn(Optional.of(testWallet));
-        when(assetService.getCurrentAssetPrice("XRP")).thenReturn(1.334); // Current BTC price
+        when(walletRepository.findWithLockById(testWallet.getId())).thenReturn(Optional.of(testWallet));
+        when(assetService.getCurrentAssetPrice("XRP")).thenReturn(1.334);
+        when(assetRepository.findByWalletIdAndSymbol(testWallet.getId(), "XRP")).thenReturn(Optional.empty());
         when(assetRepository.save(any(Asset.class))).thenAnswer(invocation -> invocation.getArgument(0));
-        when(walletRepository.save(any(Wallet.class))).thenAnswer(invocation -> invocation.getArgument(0));
 
         // When
         Wallet result = walletService.addAssetToWallet(testWallet, newAsset);
@@ -113,11 +185,16 @@ public class WalletServiceTest {
         assertEquals(2.3, resultAsset.getQuantity());
         assertEquals(1.334, resultAsset.getPrice());
         assertEquals(AssetStatus.BUY, resultAsset.getAssetStatus());
+        assertSame(testWallet, resultAsset.getWallet());
 
-        verify(walletRepository).findById(testWallet.getId());
+        verify(walletRepository).findWithLockById(testWallet.getId());
+        verify(assetService).priceSymbols(List.of("XRP"));
         verify(assetService).getCurrentAssetPrice("XRP");
+        verify(assetService).trackSymbols(List.of("XRP"));
         verify(assetRepository).save(any(Asset.class));
-        verify(walletRepository).save(any(Wallet.class));
+        verify(trackedSymbolRepository).track(eq("XRP"), any());
+        verify(tradeRepository).save(any(Trade.class));
+        verify(walletRepository, never()).save(any(Wallet.class));
     }
 
     @Test
@@ -128,20 +205,64 @@ public class WalletServiceTest {
 
         Asset newAsset = new Asset("ETH", 3.0, 3000.0);
 
-        when(walletRepository.findById(1L)).thenReturn(Optional.of(testWallet));
+        when(walletRepository.findWithLockById(1L)).thenReturn(Optional.of(testWallet));
         when(assetService.getCurrentAssetPrice("ETH")).thenReturn(3000.0);
-        when(assetRepository.save(any(Asset.class))).thenReturn(newAsset);
-        when(walletRepository.save(any(Wallet.class))).thenReturn(testWallet);
+        when(assetRepository.findByWalletIdAndSymbol(1L, "ETH")).thenReturn(Optional.of(existingAsset));
 
         // When
         Wallet result = walletService.addAssetToWallet(testWallet, newAsset);
 
         // Then
         assertNotNull(result);
+        assertEquals(1, result.getCryptoAssets().size());
         assertTrue(result.getCryptoAssets().stream()
                 .anyMatch(a -> a.getSymbol().equals("ETH") && a.getQuantity() == 5.0));
-        verify(assetRepository).save(any(Asset.class));
-        verify(walletRepository).save(any(Wallet.class));
+        verify(assetRepository, never()).save(any(Asset.class));
+        verifyNoInteractions(trackedSymbolRepository);
+        verify(tradeRepository).save(any(Trade.class));
+        verify(walletAggregateService).recordBuy(eq(1L), any(), eq("ETH"), eq(3.0), eq(3000.0));
+        verify(walletValuationCache).invalidate(1L);
+    }
+
+    @Test
+    void addAssetToWallet_ExistingAssetAtNewPrice_ShouldAverageThePurchasePrice() {
+        // Given
+        Asset existingAsset = new Asset("ETH", 1.0, 3000.0);
+        testWallet.setCryptoAssets(new HashSet<>(Collections.singletonList(existingAsset)));
+
+        when(walletRepository.findWithLockById(1L)).thenReturn(Optional.of(testWallet));
+        when(assetService.getCurrentAssetPrice("ETH")).thenReturn(4000.0);
+        when(assetRepository.findByWalletIdAndSymbol(1L, "ETH")).thenReturn(Optional.of(existingAsset));
+
+        // When
+        Wallet result = walletService.addAssetToWallet(testWallet, new Asset("ETH", 3.0, 4000.0));
+
+        // Then
+        Asset merged = result.getCryptoAssets().iterator().next();
+        assertSame(existingAsset, merged);
+        assertEquals(4.0, merged.getQuantity());
+        assertEquals(3750.0, merged.getPrice());
+    }
+
+    @Test
+    void addAssetToWallet_ShouldAppendBuyTradeAtCurrentPrice() {
+        // Given
+        when(walletRepository.findWithLockById(1L)).thenReturn(Optional.of(testWallet));
+        when(assetService.getCurrentAssetPrice("BTC")).thenReturn(50000.0);
+        when(assetRepository.findByWalletIdAndSymbol(1L, "BTC")).thenReturn(Optional.empty());
+        when(assetRepository.save(any(Asset.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        // When
+        walletService.addAssetToWallet(testWallet, new Asset("BTC", 0.5, 1.0));
+
+        // Then
+        ArgumentCaptor<Trade> trade = ArgumentCaptor.forClass(Trade.class);
+        verify(tradeRepository).save(trade.capture());
+        assertEquals(1L, trade.getValue().getWalletId());
+        assertEquals("BTC", trade.getValue().getSymbol());
+        assertEquals(0.5, trade.getValue().getQuantity());
+        assertEquals(50000.0, trade.getValue().getPrice());
+        assertEquals(AssetStatus.BUY, trade.getValue().getSide());
     }
 
     @Test
@@ -149,7 +270,7 @@ public class WalletServiceTest {
         // Given
         Asset asset = new Asset("BTC", 1.0, 50000.0);
 
-        when(walletRepository.findById(1L)).thenReturn(Optional.empty());
+        when(walletRepository.findWithLockById(1L)).thenReturn(Optional.empty());
 
         // When & Then
         assertThrows(WalletNotFoundException.class, () ->
@@ -162,8 +283,6 @@ public class WalletServiceTest {
         // Given
         Asset asset = new Asset("BTC", -1.0, 50000.0);
 
-        when(walletRepository.findById(1L)).thenReturn(Optional.of(testWallet));
-
         // When & Then
         assertThrows(InvalidAssetQuantityException.class, () ->
                 walletService.addAssetToWallet(testWallet, asset)
@@ -178,8 +297,6 @@ public class WalletServiceTest {
         // Clear testWallet of all asset
         testWallet.getCryptoAssets().clear();
 
-        when(walletRepository.findById(testWallet.getId())).thenReturn(Optional.of(testWallet));
-
         // When
         Exception exception = assertThrows(
                 InvalidAssetQuantityException.class,
@@ -189,9 +306,11 @@ public class WalletServiceTest {
         // Then
         assertEquals("Asset quantity must be greater than 0", exception.getMessage());
 
-        verify(walletRepository).findById(testWallet.getId());
+        // Rejected before pricing the symbol or locking the wallet
+        verify(walletRepository, never()).findWithLockById(any());
         verifyNoInteractions(assetService);
         verifyNoInteractions(assetRepository);
+        verifyNoInteractions(tradeRepository);
     }
 
     @Test
@@ -204,10 +323,9 @@ public class WalletServiceTest {
 
         Asset assetToRemove = new Asset("SOL", 1.0, 4.0);
 
-        when(walletRepository.findById(1L)).thenReturn(Optional.of(testWallet));
+        when(walletRepository.findWithLockById(1L)).thenReturn(Optional.of(testWallet));
+        when(assetRepository.findByWalletIdAndSymbol(1L, "SOL")).thenReturn(Optional.of(existingAsset));
         when(assetService.getCurrentAssetPrice("SOL")).thenReturn(4.0);
-        when(assetRepository.save(any(Asset.class))).thenAnswer(invocation -> invocation.getArgument(0));
-        when(walletRepository.save(any(Wallet.class))).thenAnswer(invocation -> invocation.getArgument(0));
 
         // When
         Wallet result = walletService.removeAssetFromWallet(testWallet, assetToRemove);
@@ -219,11 +337,13 @@ public class WalletServiceTest {
         assertEquals("SOL", updatedAsset.getSymbol());
         assertEquals(1.0, updatedAsset.getQuantity());
         assertEquals(4.0, updatedAsset.getPrice());
+        assertEquals(AssetStatus.SELL, updatedAsset.getAssetStatus());
 
-        verify(walletRepository).findById(1L);
+        verify(walletRepository).findWithLockById(1L);
         verify(assetService).getCurrentAssetPrice("SOL");
-        verify(assetRepository).save(any(Asset.class));
-        verify(walletRepository).save(any(Wallet.class));
+        verify(tradeRepository).save(any(Trade.class));
+        verify(assetRepository, never()).delete(any(Asset.class));
+        verify(walletRepository, never()).save(any(Wallet.class));
     }
 
     @Test
@@ -236,10 +356,9 @@ public class WalletServiceTest {
 
         Asset assetToRemove = new Asset("ETH", 1.0, 3000.0); // Remove the entire quantity
 
-        when(walletRepository.findById(1L)).thenReturn(Optional.ofNullable(testWallet));
+        when(walletRepository.findWithLockById(1L)).thenReturn(Optional.ofNullable(testWallet));
+        when(assetRepository.findByWalletIdAndSymbol(1L, "ETH")).thenReturn(Optional.of(existingAsset));
         when(assetService.getCurrentAssetPrice("ETH")).thenReturn(3000.0);
-        when(assetRepository.save(any(Asset.class))).thenAnswer(invocation -> invocation.getArgument(0));
-        when(walletRepository.save(any(Wallet.class))).thenAnswer(invocation -> invocation.getArgument(0));
 
         // When
         Wallet result = walletService.removeAssetFromWallet(testWallet, assetToRemove);
@@ -250,6 +369,20 @@ public class WalletServiceTest {
         assertTrue(result.getCryptoAssets()
                 .stream()
                 .noneMatch(asset -> asset.getSymbol().equalsIgnoreCase(assetToRemove.getSymbol())));
+        verify(assetRepository).delete(existingAsset);
+        verify(tradeRepository).save(any(Trade.class));
+    }
+
+    @Test
+    void removeAssetFromWallet_UnknownAsset_ShouldThrowAssetNotFoundException() {
+        // Given
+        when(walletRepository.findWithLockById(1L)).thenReturn(Optional.of(testWallet));
+        when(assetRepository.findByWalletIdAndSymbol(1L, "ADA")).thenReturn(Optional.empty());
+
+        // When & Then
+        assertThrows(AssetNotFoundException.class,
+                () -> walletService.removeAssetFromWallet(testWallet, new Asset("ADA", 1.0, 0.5)));
+        verifyNoInteractions(tradeRepository);
     }
 
     @Test
@@ -262,7 +395,7 @@ public class WalletServiceTest {
 
         Asset assetToRemove = new Asset("BTC", 0.0, 30000.0); // Zero quantity
 
-        when(walletRepository.findById(1L)).thenReturn(Optional.of(testWallet));
+        when(walletRepository.findWithLockById(1L)).thenReturn(Optional.of(testWallet));
 
         // When & Then
         InvalidAssetQuantityException exception = assertThrows(
@@ -272,9 +405,88 @@ public class WalletServiceTest {
 
         assertEquals("Asset quantity must be greater than 0", exception.getMessage()); // Ensure the exception message is correct
 
-        verify(walletRepository).findById(1L);
+        verify(walletRepository).findWithLockById(1L);
         verifyNoInteractions(assetService);
         verifyNoInteractions(assetRepository);
+        verifyNoInteractions(tradeRepository);
         verify(walletRepository, never()).save(any(Wallet.class));
     }
+
+    private static PriceSnapshot prices(long version, String symbol, double price, String otherSymbol, double otherPrice) {
+        SymbolRegistry symbolRegistry = new SymbolRegistry();
+        double[] prices = new double[2];
+        prices[symbolRegistry.register(symbol)] = price;
+        prices[symbolRegistry.register(otherSymbol)] = otherPrice;
+        return new PriceSnapshot(version, Instant.now(), symbolRegistry, prices);
+    }
+
+    @Test
+    void addTradesToWallet_MixedBatch_ShouldPriceFromOneSnapshotAndBatchWrites() {
+        // Given
+        Asset existingEth = new Asset("ETH", 2.0, 2000.0);
+        testWallet.setCryptoAssets(new HashSet<>(Collections.singletonList(existingEth)));
+
+        when(walletRepository.findWithLockById(1L)).thenReturn(Optional.of(testWallet));
+        when(assetService.getPriceSnapshot()).thenReturn(prices(7, "BTC", 50000.0, "ETH", 3000.0));
+        when(assetRepository.findByWalletIdAndSymbolIn(eq(1L), any())).thenReturn(List.of(existingEth));
+
+        List<Asset> batch = List.of(
+                new Asset("BTC", 1.0, 0.0),
+                new Asset("ETH", 2.0, 0.0),
+                new Asset("BTC", 0.5, 0.0, AssetStatus.SELL),
+                new Asset("ETH", 1.0, 0.0, AssetStatus.SELL));
+
+        // When
+        BulkTradeResult result = walletService.addTradesToWallet(1L, batch);
+
+        // Then
+        assertEquals(4, result.tradeCount());
+        assertEquals(2, result.positionCount());
+        assertEquals(7, result.priceVersion());
+        assertEquals(3.0, existingEth.getQuantity());
+        assertEquals(2500.0, existingEth.getPrice());
+
+        verify(tradeRepository).saveAll(trades.capture());
+        assertEquals(4, trades.getValue().size());
+        assertTrue(trades.getValue().stream()
+                .filter(trade -> trade.getSymbol().equals("BTC"))
+                .allMatch(trade -> trade.getPrice() == 50000.0));
+
+        verify(assetRepository).saveAll(newPositions.capture());
+        assertEquals(1, newPositions.getValue().size());
+        assertEquals(0.5, newPositions.getValue().get(0).getQuantity());
+        verify(assetService, never()).getCurrentAssetPrice(any());
+    }
+
+    @Test
+    void addTradesToWallet_SellingMoreThanHeld_ShouldRejectTheWholeBatch() {
+        // Given
+        when(walletRepository.findWithLockById(1L)).thenReturn(Optional.of(testWallet));
+        when(assetService.getPriceSnapshot()).thenReturn(prices(1, "BTC", 50000.0, "ETH", 3000.0));
+        when(assetRepository.findByWalletIdAndSymbolIn(eq(1L), any())).thenReturn(List.of());
+
+        List<Asset> batch = List.of(
+                new Asset("BTC", 1.0, 0.0),
+                new Asset("BTC", 2.0, 0.0, AssetStatus.SELL));
+
+        // When & Then
+        assertThrows(InvalidAssetQuantityException.class, () -> walletService.addTradesToWallet(1L, batch));
+        verifyNoInteractions(tradeRepository);
+        verify(assetRepository, never()).saveAll(any());
+    }
+
+    @Test
+    void addTradesToWallet_InvalidTrade_ShouldFailBeforeLoadingPositions() {
+        // Given
+        List<Asset> batch = List.of(new Asset("BTC", 1.0, 0.0), new Asset("ETH", 0.0, 0.0));
+
+        // When & Then
+        assertThrows(InvalidAssetQuantityException.class, () -> walletService.addTradesToWallet(1L, batch));
+        verify(assetService, never()).priceSymbols(any());
+        verify(assetService, never()).trackSymbols(any());
+        verify(assetService, never()).getPriceSnapshot();
+        verify(walletRepository, never()).findWithLockById(any());
+        verifyNoInteractions(assetRepository);
+        verifyNoInteractions(tradeRepository);
+    }
 }
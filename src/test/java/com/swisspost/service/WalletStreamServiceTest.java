@@ -0,0 +1,180 @@
+package com.swisspost.service;
+
+import com.swisspost.config.StreamProperties;
+import com.swisspost.dto.WalletAnalytics;
+import com.swisspost.exception.StreamCapacityException;
+import com.swisspost.model.Wallet;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class WalletStreamServiceTest {
+
+    @Mock
+    private WalletRevaluationService walletRevaluationService;
+
+    @Mock
+    private WalletService walletService;
+
+    @Mock
+    private WalletValueCalculator walletValueCalculator;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    // Holds the send tasks without running them, as for clients that never read
+    private final HeldExecutor senders = new HeldExecutor();
+
+    private final AtomicLong nanoClock = new AtomicLong(1_000_000);
+
+    // Run while a write is in flight, as for a client that stops reading mid-stream
+    private Runnable duringSend = () -> { };
+
+    private WalletStreamService walletStreamService;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        Wallet wallet = new Wallet("owner");
+        wallet.setId(1L);
+        when(walletService.getWallet(1L)).thenReturn(wallet);
+        when(walletValueCalculator.analyze(any(Wallet.class)))
+                .thenReturn(new WalletAnalytics(7, 100.0, "BTC", 10.0, "ETH", -5.0, List.of()));
+
+        StreamProperties streamProperties = new StreamProperties();
+        streamProperties.setMaxSubscribers(3);
+        streamProperties.setSendTimeout(5_000);
+        walletStreamService = new WalletStreamService(walletRevaluationService, walletService, walletValueCalculator,
+                transactionManager, streamProperties, meterRegistry, senders, () -> new SseEmitter() {
+                    @Override
+                    public void send(SseEventBuilder builder) throws IOException {
+                        duringSend.run();
+                        super.send(builder);
+                    }
+                }, nanoClock::get);
+    }
+
+    @AfterEach
+    void tearDown() {
+        walletStreamService.shutdown();
+    }
+
+    @Test
+    void publishTick_ShouldValueEachWalletOnceForAllItsSubscribers() {
+        walletStreamService.subscribe(1L);
+        walletStreamService.subscribe(1L);
+        walletStreamService.subscribe(1L);
+        clearInvocations(walletValueCalculator);
+
+        walletStreamService.publishTick();
+
+        verify(walletValueCalculator, times(1)).analyze(any(Wallet.class));
+        assertEquals(3, walletStreamService.subscriberCount());
+        // One drain per subscriber, still pending from the initial value
+        assertEquals(3, senders.tasks.size());
+    }
+
+    @Test
+    void subscribe_OverCapacity_ShouldBeRejected() {
+        for (int i = 0; i < 3; i++) {
+            walletStreamService.subscribe(1L);
+        }
+
+        clearInvocations(walletValueCalculator);
+
+        assertThrows(StreamCapacityException.class, () -> walletStreamService.subscribe(1L));
+        assertEquals(3, walletStreamService.subscriberCount());
+        verifyNoInteractions(walletValueCalculator);
+    }
+
+    @Test
+    void publishTick_SubscriberWaitingForASender_ShouldOnlyBeConflated() {
+        walletStreamService.subscribe(1L);
+
+        for (int i = 0; i < 5; i++) {
+            nanoClock.addAndGet(TimeUnit.SECONDS.toNanos(10));
+            walletStreamService.publishTick();
+        }
+
+        assertEquals(1, walletStreamService.subscriberCount());
+        assertEquals(5.0, meterRegistry.get("wallet.stream.events.conflated").counter().count());
+        assertEquals(0.0, meterRegistry.get("wallet.stream.subscribers.dropped").counter().count());
+    }
+
+    @Test
+    void publishTick_WriteBlockedLongerThanTheSendTimeout_ShouldDisconnectTheSubscriber() {
+        walletStreamService.subscribe(1L);
+        duringSend = () -> {
+            nanoClock.addAndGet(TimeUnit.SECONDS.toNanos(4));
+            walletStreamService.publishTick();
+            assertEquals(1, walletStreamService.subscriberCount());
+
+            nanoClock.addAndGet(TimeUnit.SECONDS.toNanos(2));
+            walletStreamService.publishTick();
+            assertEquals(0, walletStreamService.subscriberCount());
+        };
+
+        senders.tasks.remove(0).run();
+
+        assertEquals(1.0, meterRegistry.get("wallet.stream.subscribers.dropped").counter().count());
+        // The blocked write of the initial value finally returns, the value of the first tick is never sent
+        assertEquals(1.0, meterRegistry.get("wallet.stream.events.sent").counter().count());
+        assertTrue(senders.tasks.isEmpty());
+    }
+
+    private static final class HeldExecutor extends AbstractExecutorService {
+
+        private final List<Runnable> tasks = new ArrayList<>();
+
+        private boolean shutdown;
+
+        @Override
+        public void execute(Runnable command) {
+            tasks.add(command);
+        }
+
+        @Override
+        public void shutdown() {
+            shutdown = true;
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            shutdown = true;
+            return tasks;
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return shutdown;
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return shutdown;
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) {
+            return true;
+        }
+    }
+}
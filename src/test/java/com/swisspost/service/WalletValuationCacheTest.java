@@ -0,0 +1,122 @@
+package com.swisspost.service;
+
+import com.swisspost.config.ValuationProperties;
+import com.swisspost.dto.PositionSummary;
+import com.swisspost.dto.WalletAnalytics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WalletValuationCacheTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final AtomicInteger valuations = new AtomicInteger();
+
+    private ValuationProperties valuationProperties;
+
+    private WalletValuationCache cache;
+
+    @BeforeEach
+    void setUp() {
+        valuationProperties = new ValuationProperties();
+        valuationProperties.setCacheMaxEntries(2);
+        cache = new WalletValuationCache(valuationProperties, meterRegistry);
+    }
+
+    private Supplier<WalletAnalytics> valuation() {
+        return () -> new WalletAnalytics(valuations.incrementAndGet(), 0, null, null, null, null, List.of());
+    }
+
+    private Supplier<WalletAnalytics> valuation(String symbol) {
+        return () -> new WalletAnalytics(valuations.incrementAndGet(), 0, null, null, null, null,
+                List.of(new PositionSummary(symbol, 1.0, 1.0, 1.0, 0.0, 0.0)));
+    }
+
+    private double count(String result) {
+        return meterRegistry.get("wallet.valuation.cache").tag("result", result).counter().count();
+    }
+
+    @Test
+    void get_ShouldOnlyHitForTheSameWalletAndPriceVersion() {
+        WalletAnalytics first = cache.get(1L, 3, 7, valuation());
+        assertSame(first, cache.get(1L, 3, 7, valuation()));
+
+        assertNotSame(first, cache.get(1L, 4, 7, valuation()));
+        cache.get(1L, 4, 8, valuation());
+
+        assertEquals(3, valuations.get());
+        assertEquals(1.0, count("hit"));
+        assertEquals(3.0, count("miss"));
+    }
+
+    @Test
+    void get_ShouldEvictTheLeastRecentlyUsedWallet() {
+        cache.get(1L, 1, 1, valuation());
+        cache.get(2L, 1, 1, valuation());
+        cache.get(1L, 1, 1, valuation());
+        cache.get(3L, 1, 1, valuation());
+
+        assertEquals(2, cache.size());
+        cache.get(1L, 1, 1, valuation());
+        cache.get(2L, 1, 1, valuation());
+        assertEquals(4, valuations.get());
+        assertEquals(2.0, meterRegistry.get("wallet.valuation.cache.evictions").counter().count());
+    }
+
+    @Test
+    void get_ExpiredEntry_ShouldBeRecomputed() {
+        valuationProperties.setCacheTtl(0);
+
+        cache.get(1L, 1, 1, valuation());
+        cache.get(1L, 1, 1, valuation());
+
+        assertEquals(2, valuations.get());
+    }
+
+    @Test
+    void invalidate_ShouldEvictTheWalletAndItsSymbols() {
+        cache.get(1L, 1, 1, valuation("BTC"));
+        cache.get(2L, 1, 1, valuation("ETH"));
+        cache.invalidate(1L);
+
+        assertEquals(1, cache.size());
+        assertEquals(Set.of(), cache.walletsHolding(List.of("BTC")));
+        assertEquals(Set.of(2L), cache.walletsHolding(List.of("BTC", "ETH")));
+    }
+
+    @Test
+    void publishRevaluation_ShouldRepriceAffectedAndCarryUnaffectedEntries() {
+        cache.get(1L, 1, 1, valuation("BTC"));
+        WalletAnalytics ethWallet = cache.get(2L, 1, 1, valuation("ETH"));
+        WalletAnalytics repriced = new WalletAnalytics(2, 0, null, null, null, null,
+                List.of(new PositionSummary("BTC", 1.0, 1.0, 2.0, 1.0, 100.0)));
+
+        cache.publishRevaluation(2, false, List.of("BTC"),
+                Map.of(1L, new WalletValuationCache.Revaluation(1, repriced)));
+
+        assertSame(repriced, cache.get(1L, 1, 2, valuation("BTC")));
+        assertSame(ethWallet, cache.get(2L, 1, 2, valuation("ETH")));
+        assertEquals(2, valuations.get());
+    }
+
+    @Test
+    void publishRevaluation_WalletNotRepriced_ShouldBeDropped() {
+        cache.get(1L, 1, 1, valuation("BTC"));
+
+        cache.publishRevaluation(2, false, List.of("BTC"), Map.of());
+
+        assertEquals(0, cache.size());
+        // Valued at a snapshot the revaluation has moved past, never cached
+        cache.get(1L, 1, 1, valuation("BTC"));
+        assertEquals(0, cache.size());
+    }
+}